@@ -0,0 +1,530 @@
+package client.GUI;
+
+import client.network.WAMClient;
+import client.network.WAMObserver;
+import common.WAMBoard;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.input.ZoomEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+/**
+ * A board drawn on one canvas instead of a button for every hole, for boards too big for buttons
+ *
+ * the canvas is only as big as the part of the board on screen, every frame it takes the newest frame of
+ * the model and draws just the holes that differ from the board it drew last, found a word at a time,
+ * the whole view is only drawn again after a scroll, a zoom, or when most of it changed
+ *
+ * a click is turned into a hole from its position, so there is nothing on the scene graph for each hole
+ *
+ *  drag or scroll -> moves around the board
+ *  ctrl + scroll or pinch -> zooms in and out around the mouse
+ *
+ * when the view does not show the whole board it subscribes to the part it shows,
+ * so the server only sends mole events the player can see, -Dwam.subscribeViewport=false turns that off
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public final class BoardCanvas extends Region
+{
+    /**the images are drawn from this width up, smaller holes are plain rectangles*/
+    private static final double DETAIL = 16;
+    /**the smallest and largest width of a hole in pixels*/
+    private static final double MIN_CELL = 1, MAX_CELL = 144;
+    /**height of a hole for each pixel of width, the same shape as the images*/
+    private static final double ASPECT = 0.75;
+    /**milliseconds between subscriptions while the view is moving*/
+    private static final long SUBSCRIBE_DELAY = 200;
+
+    private static final Color GROUND = Color.rgb(96, 64, 32);
+    private static final Color HOLE = Color.rgb(48, 32, 16);
+    private static final Color MOLE = Color.rgb(176, 128, 80);
+    private static final Color DIM = Color.rgb(242, 242, 242, 0.5);
+
+    /**amount of rows and cols on the board*/
+    private final int rows, cols;
+    /**the model the moles are read from*/
+    private final WAMObserver model;
+    /**where the whacks are sent*/
+    private final WAMClient controller;
+
+    private final Canvas canvas;
+    private final Image hole, mole;
+
+    /**the width of a hole in pixels*/
+    private double cell;
+    /**how far the view is scrolled in pixels from the top left of the board*/
+    private double scroll_x, scroll_y;
+
+    /**true when the whole view has to be drawn again*/
+    private boolean full = true;
+    /**false before the game starts and after it ends, clicks are ignored and the board is dimmed and left as it is*/
+    private boolean enabled;
+
+    /**the holes that changed since the last frame, and the moles that are up, reused every frame*/
+    private final int[] dirty, active;
+    /**the packed board as it was last drawn, and the version of the model frame it came from*/
+    private final long[] drawn;
+    private long version = -1;
+
+    /**where a drag started, and whether the mouse has moved far enough for it to not be a click*/
+    private double drag_x, drag_y;
+    private boolean dragged;
+
+    /**true if the view subscribes to the part of the board it shows*/
+    private final boolean subscribe;
+    /**the region last subscribed to, top row, left col, rows and cols*/
+    private final int[] region = new int[4];
+    /**System.currentTimeMillis() of the last subscription*/
+    private long subscribed_at;
+    /**the BOARDs the model had applied when the region was last checked*/
+    private long boards;
+
+    /**draws the changes once a frame*/
+    private final AnimationTimer timer;
+
+    /**
+     * creates the board, it draws nothing until the scene shows it
+     *
+     * @param rows - amount of rows on the board
+     * @param cols - amount of columns on the board
+     * @param model - the model the moles are read from
+     * @param controller - where whacks and subscriptions are sent
+     * @param hole - the picture of an empty hole, it can still be loading
+     * @param mole - the picture of a mole, it can still be loading
+     */
+    public BoardCanvas(int rows, int cols, WAMObserver model, WAMClient controller, Image hole, Image mole)
+    {
+        this.rows = rows;
+        this.cols = cols;
+        this.model = model;
+        this.controller = controller;
+
+        this.hole = hole;
+        this.mole = mole;
+
+        //an image that was still loading drew nothing, draw everything again once it is in
+        for (Image image : new Image[] {hole, mole})
+        {
+            image.progressProperty().addListener((observable, before, progress) ->
+            {
+                if (progress.doubleValue() >= 1)
+                    this.full = true;
+            });
+        }
+
+        this.dirty = new int[rows * cols];
+        this.active = new int[rows * cols];
+        this.drawn = new long[WAMBoard.wordsFor(rows * cols)];
+
+        this.subscribe = Boolean.parseBoolean(System.getProperty("wam.subscribeViewport", "true"));
+        this.region[2] = rows;
+        this.region[3] = cols;
+
+        //as big as the images, or small enough for the whole board to fit in the view
+        this.cell = clamp(Math.min(72, Math.min(900.0 / cols, 700.0 / (rows * ASPECT))), MIN_CELL, MAX_CELL);
+        this.setPrefSize(Math.min(900, cols * this.cell), Math.min(700, rows * this.cell * ASPECT));
+
+        this.canvas = new Canvas();
+        this.getChildren().add(this.canvas);
+
+        this.setOnMousePressed(this::pressed);
+        this.setOnMouseDragged(this::dragged);
+        this.setOnMouseClicked(this::clicked);
+        this.setOnScroll(this::scrolled);
+        this.setOnZoom((ZoomEvent event) -> this.zoom(event.getZoomFactor(), event.getX(), event.getY()));
+
+        this.timer = new AnimationTimer()
+        {
+            @Override
+            public void handle(long now)
+            {
+                BoardCanvas.this.draw();
+            }
+        };
+        this.timer.start();
+    }
+
+    private static double clamp(double value, double min, double max)
+    {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    /**
+     * turns the clicks on or off, the whole board is drawn again to show it
+     *
+     * @param enabled - true while the game is being played
+     */
+    public void setEnabled(boolean enabled)
+    {
+        if (this.enabled != enabled)
+        {
+            this.enabled = enabled;
+            this.full = true;
+        }
+    }
+
+    /**
+     * stops drawing, called when the window closes
+     */
+    public void stop()
+    {
+        this.timer.stop();
+    }
+
+    /**
+     * the canvas always fills the region, so it is never bigger than what is on screen
+     */
+    @Override
+    protected void layoutChildren()
+    {
+        if (this.canvas.getWidth() != this.getWidth() || this.canvas.getHeight() != this.getHeight())
+        {
+            this.canvas.setWidth(this.getWidth());
+            this.canvas.setHeight(this.getHeight());
+            this.scrollTo(this.scroll_x, this.scroll_y);
+            this.full = true;
+        }
+    }
+
+    /**
+     * finds the hole under a point of the view
+     *
+     * @param x - pixels from the left of the view
+     * @param y - pixels from the top of the view
+     * @return - the row-major hole number, or -1 if the point is off the board
+     */
+    public int holeAt(double x, double y)
+    {
+        int col = (int)Math.floor((x + this.scroll_x) / this.cell);
+        int row = (int)Math.floor((y + this.scroll_y) / (this.cell * ASPECT));
+
+        if (row < 0 || row >= this.rows || col < 0 || col >= this.cols)
+            return -1;
+
+        return row * this.cols + col;
+    }
+
+    private void pressed(MouseEvent event)
+    {
+        this.drag_x = event.getX();
+        this.drag_y = event.getY();
+        this.dragged = false;
+    }
+
+    private void dragged(MouseEvent event)
+    {
+        double dx = event.getX() - this.drag_x;
+        double dy = event.getY() - this.drag_y;
+
+        //a few pixels of wobble is still a click
+        if (!this.dragged && Math.abs(dx) + Math.abs(dy) < 4)
+            return;
+
+        this.dragged = true;
+        this.scrollTo(this.scroll_x - dx, this.scroll_y - dy);
+        this.drag_x = event.getX();
+        this.drag_y = event.getY();
+    }
+
+    private void clicked(MouseEvent event)
+    {
+        if (!this.enabled || this.dragged || event.getButton() != MouseButton.PRIMARY)
+            return;
+
+        int spot = this.holeAt(event.getX(), event.getY());
+        if (spot >= 0)
+            this.controller.sendWhack(spot);
+    }
+
+    private void scrolled(ScrollEvent event)
+    {
+        if (event.isControlDown())
+            this.zoom(event.getDeltaY() > 0 ? 1.25 : 0.8, event.getX(), event.getY());
+        else
+            this.scrollTo(this.scroll_x - event.getDeltaX(), this.scroll_y - event.getDeltaY());
+    }
+
+    /**
+     * zooms around a point of the view, so the hole under it stays under it
+     *
+     * @param factor - how much bigger the holes get
+     * @param x - pixels from the left of the view
+     * @param y - pixels from the top of the view
+     */
+    private void zoom(double factor, double x, double y)
+    {
+        double cell = clamp(this.cell * factor, MIN_CELL, MAX_CELL);
+        double scale = cell / this.cell;
+        this.cell = cell;
+
+        this.scrollTo((this.scroll_x + x) * scale - x, (this.scroll_y + y) * scale - y);
+        this.full = true;
+    }
+
+    /**
+     * moves the view, kept inside the board
+     */
+    private void scrollTo(double x, double y)
+    {
+        x = clamp(x, 0, Math.max(0, this.cols * this.cell - this.canvas.getWidth()));
+        y = clamp(y, 0, Math.max(0, this.rows * this.cell * ASPECT - this.canvas.getHeight()));
+
+        if (x != this.scroll_x || y != this.scroll_y)
+        {
+            this.scroll_x = x;
+            this.scroll_y = y;
+            this.full = true;
+        }
+    }
+
+    /**
+     * one frame, draws the holes that changed, or the whole view if it moved
+     */
+    private void draw()
+    {
+        if (this.canvas.getWidth() <= 0 || this.canvas.getHeight() <= 0)
+            return;
+
+        WAMObserver.Frame frame = this.model.frame();
+        int count = 0;
+
+        //after a BOARD the server sends the whole board again, the view has to subscribe once more
+        if (frame.getBoards() != this.boards)
+        {
+            this.boards = frame.getBoards();
+            this.region[0] = 0;
+            this.region[1] = 0;
+            this.region[2] = this.rows;
+            this.region[3] = this.cols;
+            this.subscribed_at = 0;
+            this.subscribeView();
+        }
+
+        if (this.full)
+        {
+            this.full = false;
+            this.drawAll(frame);
+            this.subscribeView();
+        }
+        else if (frame.getVersion() != this.version && this.enabled)
+        {
+            count = this.changes(frame.getWords());
+
+            //when most of the view changed, as after a BOARD, drawing it all is quicker
+            if (count > this.visible() / 2)
+            {
+                this.drawAll(frame);
+            }
+            else
+            {
+                GraphicsContext gc = this.canvas.getGraphicsContext2D();
+                for (int i = 0; i < count; i++)
+                    this.drawHole(gc, frame, this.dirty[i]);
+            }
+        }
+
+        if (frame.getVersion() != this.version)
+        {
+            System.arraycopy(frame.getWords(), 0, this.drawn, 0, this.drawn.length);
+            this.version = frame.getVersion();
+        }
+
+        //a subscription can be skipped while the view is still moving, it is sent once the view stops
+        if (count == 0)
+            this.subscribeView();
+    }
+
+    /**
+     * finds the holes that differ between a board and the one last drawn
+     *
+     * @param words - the packed board
+     * @return - the amount of holes written into dirty
+     */
+    private int changes(long[] words)
+    {
+        int count = 0;
+        for (int word = 0; word < this.drawn.length; word++)
+        {
+            long changed = words[word] ^ this.drawn[word];
+            while (changed != 0)
+            {
+                this.dirty[count++] = (word << 6) + Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return - about how many holes are in view
+     */
+    private long visible()
+    {
+        return (long)(Math.min(this.cols, this.canvas.getWidth() / this.cell + 1)
+                * Math.min(this.rows, this.canvas.getHeight() / (this.cell * ASPECT) + 1));
+    }
+
+    /**
+     * draws every hole in view, walking whichever is smaller, the holes in view or the moles that are up
+     *
+     * @param frame - the board to draw
+     */
+    private void drawAll(WAMObserver.Frame frame)
+    {
+        GraphicsContext gc = this.canvas.getGraphicsContext2D();
+        double width = this.canvas.getWidth();
+        double height = this.canvas.getHeight();
+        double cell_height = this.cell * ASPECT;
+
+        gc.setFill(GROUND);
+        gc.fillRect(0, 0, width, height);
+
+        int first_row = (int)(this.scroll_y / cell_height);
+        int first_col = (int)(this.scroll_x / this.cell);
+        int last_row = Math.min(this.rows, (int)Math.ceil((this.scroll_y + height) / cell_height));
+        int last_col = Math.min(this.cols, (int)Math.ceil((this.scroll_x + width) / this.cell));
+
+        if (this.cell >= DETAIL)
+        {
+            for (int row = first_row; row < last_row; row++)
+            {
+                for (int col = first_col; col < last_col; col++)
+                    gc.drawImage(this.hole, col * this.cell - this.scroll_x, row * cell_height - this.scroll_y,
+                            this.cell, cell_height);
+            }
+        }
+        else
+        {
+            //too small to see the holes, the board is one rectangle
+            gc.setFill(HOLE);
+            gc.fillRect(first_col * this.cell - this.scroll_x, first_row * cell_height - this.scroll_y,
+                    (last_col - first_col) * this.cell, (last_row - first_row) * cell_height);
+        }
+
+        if ((long)(last_row - first_row) * (last_col - first_col) <= frame.count())
+        {
+            for (int row = first_row; row < last_row; row++)
+            {
+                for (int col = first_col; col < last_col; col++)
+                {
+                    if (frame.get(row * this.cols + col))
+                        this.drawMole(gc, col, row);
+                }
+            }
+        }
+        else
+        {
+            int count = frame.activeHoles(this.active);
+            for (int i = 0; i < count; i++)
+            {
+                int row = this.active[i] / this.cols;
+                int col = this.active[i] % this.cols;
+
+                if (row >= first_row && row < last_row && col >= first_col && col < last_col)
+                    this.drawMole(gc, col, row);
+            }
+        }
+
+        if (!this.enabled)
+        {
+            gc.setFill(DIM);
+            gc.fillRect(0, 0, width, height);
+        }
+    }
+
+    /**
+     * draws one hole as it is in a frame, if it is in view
+     */
+    private void drawHole(GraphicsContext gc, WAMObserver.Frame frame, int spot)
+    {
+        int row = spot / this.cols;
+        int col = spot % this.cols;
+        double cell_height = this.cell * ASPECT;
+        double x = col * this.cell - this.scroll_x;
+        double y = row * cell_height - this.scroll_y;
+
+        if (x + this.cell <= 0 || y + cell_height <= 0 || x >= this.canvas.getWidth() || y >= this.canvas.getHeight())
+            return;
+
+        if (frame.get(spot))
+        {
+            this.drawMole(gc, col, row);
+        }
+        else if (this.cell >= DETAIL)
+        {
+            //the image does not cover the corners, the ground goes under it first
+            gc.setFill(GROUND);
+            gc.fillRect(x, y, this.cell, cell_height);
+            gc.drawImage(this.hole, x, y, this.cell, cell_height);
+        }
+        else
+        {
+            gc.setFill(HOLE);
+            gc.fillRect(x, y, this.cell, cell_height);
+        }
+    }
+
+    /**
+     * draws a mole in a hole
+     */
+    private void drawMole(GraphicsContext gc, int col, int row)
+    {
+        double cell_height = this.cell * ASPECT;
+        double x = col * this.cell - this.scroll_x;
+        double y = row * cell_height - this.scroll_y;
+
+        if (this.cell >= DETAIL)
+        {
+            gc.setFill(GROUND);
+            gc.fillRect(x, y, this.cell, cell_height);
+            gc.drawImage(this.mole, x, y, this.cell, cell_height);
+        }
+        else
+        {
+            gc.setFill(MOLE);
+            gc.fillRect(x, y, this.cell, cell_height);
+        }
+    }
+
+    /**
+     * subscribes to the holes in view, or to the whole board again when all of it is in view,
+     * at most once every SUBSCRIBE_DELAY milliseconds
+     */
+    private void subscribeView()
+    {
+        if (!this.subscribe || this.canvas.getWidth() <= 0)
+            return;
+
+        double cell_height = this.cell * ASPECT;
+        int row = (int)(this.scroll_y / cell_height);
+        int col = (int)(this.scroll_x / this.cell);
+        int rows = Math.min(this.rows, (int)Math.ceil((this.scroll_y + this.canvas.getHeight()) / cell_height)) - row;
+        int cols = Math.min(this.cols, (int)Math.ceil((this.scroll_x + this.canvas.getWidth()) / this.cell)) - col;
+
+        if (row == this.region[0] && col == this.region[1] && rows == this.region[2] && cols == this.region[3])
+            return;
+
+        long now = System.currentTimeMillis();
+        if (now - this.subscribed_at < SUBSCRIBE_DELAY)
+            return;
+
+        this.subscribed_at = now;
+        this.region[0] = row;
+        this.region[1] = col;
+        this.region[2] = rows;
+        this.region[3] = cols;
+
+        if (rows == this.rows && cols == this.cols)
+            this.controller.subscribeAll();
+        else
+            this.controller.subscribe(row, col, rows, cols);
+    }
+}
@@ -3,7 +3,7 @@ package client.GUI;
 import client.network.WAMClient;
 import client.network.Observer;
 import client.network.WAMObserver;
-import common.WAMException;
+import common.WAMLog;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
@@ -15,12 +15,15 @@ import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Region;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 
+import java.lang.management.ManagementFactory;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A GUI representaton of a Whack-A-Mole game
@@ -34,6 +37,14 @@ import java.util.List;
  *
  * the board is linked to the style.css sheet for appearance
  *
+ * a board with more than 400 holes is drawn on a canvas (see BoardCanvas) instead of a button per hole,
+ * -Dwam.renderer=canvas or -Dwam.renderer=buttons picks one no matter the size
+ *
+ * the window comes up right away saying it is connecting, the images load in the background while the
+ * client connects on its own thread, and the board replaces the connecting message once the WELCOME is in,
+ * the time from the JVM starting to the first frame of each is printed, and a warning if it is over
+ * -Dwam.firstFrameTarget milliseconds (default 1000)
+ *
  * @author Christopher Asbrock
  * @author Shakeel Farooq
  */
@@ -46,12 +57,19 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
     private class EventButton extends Button
     {
         public int spot;
+        /**the buttons image, made once and given a new picture when the mole moves*/
+        public final ImageView icon;
         public EventButton(int spot)
         {
             this.spot = spot;
+            this.icon = new ImageView();
+            this.setGraphic(this.icon);
         }
     }
 
+    private static final String HOLE_IMAGE = "client/gui/hole_in_ground.png";
+    private static final String MOLE_IMAGE = "client/gui/mole_in_hole_in_ground.png";
+
     /**amount of rows the board will have*/
     private int rows;
     /**amount of cols the board will have*/
@@ -61,6 +79,16 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
     private WAMObserver model;
     /**reference to the games controller to send out whacks*/
     private WAMClient controller;
+    /**where the server is, shown while connecting*/
+    private String host;
+    private int port;
+
+    /**the pictures of the holes, loaded in the background while the client connects*/
+    private Image hole_image, mole_image;
+    /**the style sheet, the same one for the connecting message and the board so it is only read once*/
+    private String stylesheet;
+    /**milliseconds from the JVM starting to the first frame it should take, set with -Dwam.firstFrameTarget*/
+    private final long first_frame_target = Long.getLong("wam.firstFrameTarget", 1000);
 
     /**reference for the scene*/
     private Scene scene;
@@ -72,14 +100,18 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
     private TextField message;
     /**reference to the text area that prints out players and scores*/
     private TextArea leader_board;
+    /**reference to the optional overlay showing the round trip and server tick lag, F3 toggles it*/
+    private TextField overlay;
     /**A 2x2 array of buttons representing moles*/
     private EventButton[][]  buttons;
+    /**the board when it is drawn on a canvas, null when it is buttons*/
+    private BoardCanvas canvas;
+    /**true while a refresh is waiting to run on the FX thread, more updates before it runs are covered by it*/
+    private final AtomicBoolean refresh_pending = new AtomicBoolean();
 
     /**
      * application init, creates the model and controller and links everything together
-     * if there is no network the error will get thrown and prevent the application from starting
-     *
-     * @throws WAMException
+     * and starts loading the images, nothing here waits on the network or the images
      */
     @Override
     public void init()
@@ -88,15 +120,18 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
         List<String> args = getParameters().getRaw();
 
         //get the host info and port from command line
-        String host = args.get(0);
-        int port = Integer.parseInt(args.get(1));
+        this.host = args.get(0);
+        this.port = Integer.parseInt(args.get(1));
 
         this.model = new WAMObserver();
         this.model.addObserver(this);
 
-        this.controller = new WAMClient(host, port, this.model);
-        this.rows = this.controller.getRows();
-        this.cols = this.controller.getCols();
+        //decoded on the image loaders own threads, both at once
+        this.hole_image = new Image(HOLE_IMAGE, true);
+        this.mole_image = new Image(MOLE_IMAGE, true);
+        this.stylesheet = this.getClass().getResource("style.css").toExternalForm();
+
+        this.controller = new WAMClient(this.host, this.port, this.model, (Runnable task) -> task.run());
     }
 
     /**
@@ -123,7 +158,7 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
     {
         this.buttons[row][col] = new EventButton(row + (row * (this.cols - 1)) + col);
 
-        this.setButtonImage(this.buttons[row][col], "client/gui/hole_in_ground.png", "bad" );
+        this.setButtonImage(this.buttons[row][col], this.hole_image, "bad" );
         this.buttons[row][col].setDisable(true);
 
         this.buttons[row][col].setOnAction((ActionEvent event) -> onclick(event));
@@ -163,6 +198,32 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
         this.message.setMouseTransparent(true);
     }
 
+    /**
+     * the network overlay, shows the round trip time to the server and how far the servers clock is behind
+     *
+     * hidden unless started with -Dwam.overlay=true, F3 will show or hide it during the game
+     */
+    private void setOverlay()
+    {
+        this.overlay = new TextField("RTT: ?");
+        this.overlay.setId("overlay");
+        this.overlay.setEditable(false);
+        this.overlay.setAlignment(Pos.CENTER);
+        this.overlay.setMouseTransparent(true);
+        this.showOverlay(Boolean.getBoolean("wam.overlay"));
+    }
+
+    /**
+     * shows or hides the network overlay, a hidden overlay takes up no room on the board
+     *
+     * @param show - true to show the overlay
+     */
+    private void showOverlay(boolean show)
+    {
+        this.overlay.setVisible(show);
+        this.overlay.setManaged(show);
+    }
+
     /**
      * a structured text area that will keep track of all players involved
      * it will show their current placement, player and scores
@@ -173,51 +234,140 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
         this.leader_board = new TextArea();
         this.leader_board.setId("score_board");
         this.leader_board.setMouseTransparent(true);
-        this.leader_board.setPrefRowCount(rows);
+        this.leader_board.setPrefRowCount(this.canvas == null ? rows : 10);
         this.leader_board.setPrefWidth(1);
     }
 
     /**
-     * creates the game board,
-     * left of the board is a message box and leader board, the right it topped of with a network
-     * message box and a rows x cols grid of moles (depending on the peraeters sent from server)
+     * shows the window right away with a connecting message, then connects,
+     * the board takes its place once the server has sent the WELCOME
      *
      * @param stage the stage the board will be added to
      */
     @Override
     public void start(Stage stage)
     {
+        this.setNetworkMessage();
+        this.message.setText("CONNECTING TO " + this.host + ":" + this.port + "...");
+
+        GridPane connecting = new GridPane();
+        connecting.setId("root");
+        connecting.setPadding(new Insets(20));
+        connecting.add(this.message, 0, 0);
+
+        this.scene = new Scene( connecting );
+        this.scene.getStylesheets().add(this.stylesheet);
+        stage.setScene( scene );
+        stage.setResizable(false);
+        stage.setTitle( "WHACK-A-MOLE" );
+        stage.show();
+        this.timeFirstFrame("Window");
+
+        this.controller.connect().whenComplete((WAMClient client, Throwable error) -> Platform.runLater(() ->
+        {
+            //the window was closed while connecting
+            if (!stage.isShowing())
+            {
+                this.controller.close();
+            }
+            else if (error == null)
+            {
+                this.setBoard(stage);
+            }
+            else
+            {
+                //the window stays up to tell the player why there is no game
+                Throwable cause = (error.getCause() != null) ? error.getCause() : error;
+                WAMLog.warn("Could Not Connect, " + cause);
+                this.message.setId("error");
+                this.message.setText("COULD NOT CONNECT: " + cause.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * logs how long after the JVM started the next frame of the scene is drawn, with a warning if it is over the target
+     *
+     * @param what - what the frame shows
+     */
+    private void timeFirstFrame(String what)
+    {
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () ->
+        {
+            this.scene.removePostLayoutPulseListener(listener[0]);
+
+            long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            WAMLog.info("First Frame (" + what + ") " + uptime + "ms");
+            if (uptime > this.first_frame_target)
+                WAMLog.warn("First Frame (" + what + ") Over Target of " + this.first_frame_target + "ms");
+        };
+        this.scene.addPostLayoutPulseListener(listener[0]);
+    }
+
+    /**
+     * creates the game board in place of the connecting message,
+     * left of the board is a message box and leader board, the right it topped of with a network
+     * message box and a rows x cols grid of moles (depending on the peraeters sent from server)
+     *
+     * @param stage the stage the board is shown on
+     */
+    private void setBoard(Stage stage)
+    {
+        this.rows = this.controller.getRows();
+        this.cols = this.controller.getCols();
+
         this.root = new GridPane();
         this.root.setId("root");
 
+        String renderer = System.getProperty("wam.renderer", this.rows * this.cols > 400 ? "canvas" : "buttons");
+        if (renderer.equals("canvas"))
+            this.canvas = new BoardCanvas(this.rows, this.cols, this.model, this.controller,
+                    this.hole_image, this.mole_image);
+
+        //the canvas takes one cell of the grid, the buttons take one each
+        int grid_rows = (this.canvas == null) ? this.rows : 1;
+        int grid_cols = (this.canvas == null) ? this.cols : 1;
+
         this.setScoreMessage();
         this.setNetworkMessage();
         this.setLeaderBoard();
+        this.setOverlay();
 
         this.root.add( this.score, 0, 0, 1, 1 );
-        this.root.add( this.message, 1, 0, cols, 1 );
-        this.root.add( this.leader_board, 0, 1, 1, 2 + rows);
+        this.root.add( this.message, 1, 0, grid_cols, 1 );
+        this.root.add( this.leader_board, 0, 1, 1, 2 + grid_rows);
+        this.root.add( this.overlay, 0, 3 + grid_rows);
 
         Region spacer = new Region();
         spacer.setPrefHeight(40);
         root.add( spacer, 1, 1 );
 
-        this.buttons = new EventButton[this.rows][this.cols];
-
-        for (int row = 0; row < this.rows; row++ )
+        if (this.canvas != null)
         {
-            for  (int col = 0; col < cols ; col++)
+            root.add( this.canvas, 1, 2 );
+        }
+        else
+        {
+            this.buttons = new EventButton[this.rows][this.cols];
+
+            for (int row = 0; row < this.rows; row++ )
             {
-                this.setButton(row , col);
+                for  (int col = 0; col < cols ; col++)
+                {
+                    this.setButton(row , col);
+                }
             }
         }
 
-        this.scene = new Scene( root );
-        scene.getStylesheets().addAll(this.getClass().getResource("style.css").toExternalForm());
-        stage.setScene( scene );
-        stage.setResizable(false);
-        stage.setTitle( "WHACK-A-MOLE" );
-        stage.show();
+        this.scene.setRoot( root );
+        this.scene.setOnKeyPressed(event ->
+        {
+            if (event.getCode() == KeyCode.F3)
+                this.showOverlay(!this.overlay.isVisible());
+        });
+        stage.sizeToScene();
+        this.timeFirstFrame("Board");
 
         //notify the controller that the board is up and ready
         this.controller.start();
@@ -229,7 +379,10 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
     @Override
     public void stop()
     {
-        this.controller.close();
+        if (this.canvas != null)
+            this.canvas.stop();
+        if (this.controller != null)
+            this.controller.close();
     }
 
     /**
@@ -245,9 +398,14 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
         {
             this.refresh();
         }
-        else
+        else if (this.refresh_pending.compareAndSet(false, true))
         {
-            Platform.runLater(() -> this.refresh());
+            //the refresh reads the newest frame, so one refresh covers every update before it
+            Platform.runLater(() ->
+            {
+                this.refresh_pending.set(false);
+                this.refresh();
+            });
         }
     }
 
@@ -263,13 +421,17 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
     {
         this.score.setText(text);
 
+        if (this.canvas != null)
+        {
+            this.canvas.setEnabled(false);
+            return;
+        }
+
         for (int row = 0; row < this.rows; row++ )
         {
             for  (int col = 0; col < cols ; col++)
             {
-                this.setButtonImage(this.buttons[row][col],
-                        "client/gui/mole_in_hole_in_ground.png",
-                        "bad");
+                this.setButtonImage(this.buttons[row][col], this.mole_image, "bad");
                 this.buttons[row][col].setMouseTransparent(true);
                 this.buttons[row][col].setId(id);
             }
@@ -278,24 +440,29 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
 
     /**
      * run through game board and use controller to update moles
+     *
+     * @param frame - the state of the model to show
      */
-    private void updateBoard()
+    private void updateBoard(WAMObserver.Frame frame)
     {
+        //the canvas draws the moles that changed on its own every frame
+        if (this.canvas != null)
+        {
+            this.canvas.setEnabled(true);
+            return;
+        }
+
         for (int row = 0; row < this.rows; row++ )
         {
             for  (int col = 0; col < this.cols ; col++)
             {
-                if (this.model.getBoard()[row + (row * (this.cols - 1)) + col])
+                if (frame.get(row + (row * (this.cols - 1)) + col))
                 {
-                    this.setButtonImage(this.buttons[row][col],
-                            "client/gui/mole_in_hole_in_ground.png",
-                            "good");
+                    this.setButtonImage(this.buttons[row][col], this.mole_image, "good");
                 }
                 else
                 {
-                    this.setButtonImage(this.buttons[row][col],
-                            "client/gui/hole_in_ground.png",
-                            "bad");
+                    this.setButtonImage(this.buttons[row][col], this.hole_image, "bad");
                 }
 
                 this.buttons[row][col].setDisable(false);
@@ -305,35 +472,51 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
 
     /**
      * takes in a button and changes the image on it and the css id its connected to
+     * only what changed is set, a new id makes the button look up its style again
      *
      * @param button - the button to change
-     * @param pic - the picture to change the button to
+     * @param image - the picture to change the button to, one of the loaded images
      * @param id - the new id to link a style with
      */
-    private void setButtonImage(Button button, String pic, String id)
+    private void setButtonImage(EventButton button, Image image, String id)
     {
-        Image image = new Image(pic);
-        ImageView icon = new ImageView(image);
-        button.setGraphic(icon);
-        button.setId(id);
+        if (button.icon.getImage() != image)
+            button.icon.setImage(image);
+        if (!id.equals(button.getId()))
+            button.setId(id);
     }
 
     /**
      * called by the update method,
      * uses information from the model and controller to updated the details of the game board
      * whenever it is called
+     *
+     * everything comes from one frame of the model, so the board, scores and status always match
      */
     private void refresh()
     {
-        this.leader_board.setText(this.model.getScoreBoard());
+        WAMObserver.Frame frame = this.model.frame();
+
+        this.leader_board.setText(frame.getScoreBoard());
         this.score.setText("PLAYER: " + this.model.getPlayer());
         this.message.setId("close");
-        WAMObserver.Status current_status = this.model.getStatus();
+
+        long rtt = frame.getRtt();
+        this.overlay.setText("RTT: " + (rtt < 0 ? "?" : (rtt / 1000) + "ms")
+                + "  TICK LAG: " + frame.getTickLag() + "ms"
+                + "  TIME: " + (frame.getClock() / 1000) + "s");
+
+        WAMObserver.Status current_status = frame.getStatus();
 
         switch(current_status)
         {
             case PLAYING:
-                this.updateBoard();
+                this.updateBoard(frame);
+                break;
+            case RECONNECTING:
+                //the board stays as it was until the server sends it again
+                this.message.setId("error");
+                this.message.setText(frame.getErrorMessage());
                 break;
             case WON:
                 this.disable("win", "WIN");
@@ -346,7 +529,7 @@ public class WAMGUI extends Application implements Observer<WAMObserver>
                 break;
             case ERROR:
                 this.message.setId("error");
-                this.message.setText(this.model.getErrorMessage());
+                this.message.setText(frame.getErrorMessage());
                 this.disable("tied", "ERROR");
                 break;
         }
@@ -1,13 +1,34 @@
 package client.network;
 
+import common.BoardCodec;
+import common.WAMEvents;
 import common.WAMException;
+import common.WAMLog;
 import common.WAMProtocol;
 
 import java.io.IOException;
-import java.io.PrintStream;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.lang.Thread.sleep;
 
 /**
  * The client side network interface to a Whack-a-Mole game server.
@@ -16,19 +37,193 @@ import java.util.Scanner;
  * It is used to send user actions to the server and receive protocols
  * from the server
  *
+ * nothing here blocks the caller on the network
+ *  connect -> opens the channel and reads the WELCOME on its own thread, the future completes after,
+ *  or fails once the server has sent nothing for -Dwam.idleTimeout on every retry or -Dwam.welcomeTimeout
+ *  milliseconds (default 120000) have gone by
+ *
+ *  reader thread -> reads protocols from the server, answers PINGs right away, and hands everything else
+ *  to the events executor in the order it came in
+ *
+ *  writer thread -> whacks and subscriptions are queued and written out by this thread, a few at a time
+ *
+ *  watchdog thread -> the server PINGs every second or so, once the PINGs stop for -Dwam.idleTimeout
+ *  milliseconds (default 10000), or a write has been stuck for -Dwam.writeTimeout (default 10000),
+ *  the connection is closed, which the reader sees as a drop and reconnects
+ *
  * @author Shakeel Farooq
  * @author Chris Asbrock
  */
 public class WAMClient implements WAMProtocol
 {
-    /** Client socket used to communicate with the server */
-    private Socket clientSocket;
+    /**
+     * reads lines from a channel through a buffer,
+     * only ever used by one thread at a time
+     */
+    private static class LineReader
+    {
+        /**the channel being read*/
+        private final SocketChannel channel;
+        /**bytes read but not yet turned into a line*/
+        private final ByteBuffer buffer;
+        /**the line being built*/
+        private final StringBuilder line;
+        /**set while a handshake is read, the reads wait on it and give up at the deadline, null otherwise*/
+        private Selector selector;
+        /**System.nanoTime() the read in progress gives up at, only used with the selector*/
+        private long deadline;
+
+        private LineReader(SocketChannel channel)
+        {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(8192);
+            this.buffer.flip();
+            this.line = new StringBuilder();
+        }
+
+        /**
+         * @return the next line without its line ending, or null once the server closes the connection
+         * @throws IOException if the connection fails
+         */
+        private String readLine() throws IOException
+        {
+            while (true)
+            {
+                while (this.buffer.hasRemaining())
+                {
+                    char c = (char)this.buffer.get();
+                    if (c == '\n')
+                    {
+                        String done = this.line.toString().trim();
+                        this.line.setLength(0);
+                        return done;
+                    }
+                    this.line.append(c);
+                }
+
+                this.buffer.clear();
+                int read = this.read();
+                this.buffer.flip();
+
+                if (read == -1)
+                    return null;
+            }
+        }
+
+        /**
+         * fills the buffer from the channel, waiting on the selector when there is one
+         *
+         * @return the amount of bytes read, -1 once the server closes the connection
+         * @throws SocketTimeoutException if the deadline passes first
+         * @throws IOException if the connection fails
+         */
+        private int read() throws IOException
+        {
+            if (this.selector != null)
+            {
+                long left;
+                while ((left = TimeUnit.NANOSECONDS.toMillis(this.deadline - System.nanoTime())) > 0)
+                {
+                    if (this.selector.select(left) > 0)
+                    {
+                        this.selector.selectedKeys().clear();
+                        break;
+                    }
+                }
+
+                if (left <= 0)
+                    throw new SocketTimeoutException("Nothing From the Server in Time");
+            }
+
+            return this.channel.read(this.buffer);
+        }
+
+        /**
+         * until unlimit() the reads give up at the deadline, the channel is non blocking in the meantime
+         *
+         * @param deadline System.nanoTime() to give up at
+         * @throws IOException if the channel can not be watched
+         */
+        private void limit(long deadline) throws IOException
+        {
+            if (this.selector == null)
+            {
+                this.selector = Selector.open();
+                this.channel.configureBlocking(false);
+                this.channel.register(this.selector, SelectionKey.OP_READ);
+            }
+            this.deadline = deadline;
+        }
+
+        /**
+         * puts the channel back to blocking reads with no deadline, for the reader thread
+         *
+         * @throws IOException if the channel can not be changed back
+         */
+        private void unlimit() throws IOException
+        {
+            if (this.selector == null)
+                return;
+
+            //closing the selector lets go of the channel, it can only block again after
+            this.selector.close();
+            this.selector = null;
+            if (this.channel.isOpen())
+                this.channel.configureBlocking(true);
+        }
+    }
+
+    /** Channel used to communicate with the server, replaced when the client reconnects */
+    private volatile SocketChannel channel;
+
+    /** Used to read requests from the server, only touched by the connect and reader threads */
+    private LineReader networkIn;
+
+    /** Protocols waiting for the writer thread */
+    private final LinkedBlockingQueue<String> networkOut;
+
+    /** Protocols read from the server waiting to be handled on the events executor */
+    private final ConcurrentLinkedQueue<String> inbound;
+
+    /** True while a task handling the inbound protocols is queued or running on the events executor */
+    private final AtomicBoolean draining;
 
-    /** Used to read requests from the server */
-    private Scanner networkIn;
+    /** Where inbound protocols are handled, one at a time and in order */
+    private final Executor events;
 
-    /** Used to write responses to the server */
-    private PrintStream networkOut;
+    /** The thread writing to the server */
+    private Thread writer;
+
+    /** The host and port of the server, kept to reconnect */
+    private final String host;
+    private final int port;
+
+    /** The session token from the WELCOME, sent back in a RESUME, null if the server did not send one */
+    private String token;
+
+    /** Seconds to keep trying to reconnect after the connection drops, set with -Dwam.reconnectTimeout */
+    private final int reconnectTimeout = Integer.getInteger("wam.reconnectTimeout", 30);
+
+    /** Milliseconds to wait for the server to accept a connection, set with -Dwam.connectTimeout */
+    private final int connectTimeout = Integer.getInteger("wam.connectTimeout", 5000);
+
+    /** Times connect() tries again when the server can not be reached or goes quiet, set with -Dwam.connectRetries */
+    private final int connectRetries = Integer.getInteger("wam.connectRetries", 3);
+
+    /** Milliseconds connect() waits for a WELCOME in total, retries included, set with -Dwam.welcomeTimeout */
+    private final int welcomeTimeout = Integer.getInteger("wam.welcomeTimeout", 120000);
+
+    /** Milliseconds without a PING before the connection is taken as dead, set with -Dwam.idleTimeout */
+    private final int idleTimeout = Integer.getInteger("wam.idleTimeout", 10000);
+
+    /** Milliseconds a write can be stuck before the connection is taken as dead, set with -Dwam.writeTimeout */
+    private final int writeTimeout = Integer.getInteger("wam.writeTimeout", 10000);
+
+    /** System.nanoTime() of the last PING, 0 until the first one on a connection */
+    private volatile long lastPing;
+
+    /** System.nanoTime() when the write in progress started, 0 when nothing is being written */
+    private volatile long writingSince;
 
     /** The number of rows for the board */
     private int rows;
@@ -49,7 +244,22 @@ public class WAMClient implements WAMProtocol
     private WAMObserver board;
 
     /** Used to loop for the entire length of the game */
-    private boolean gameOn;
+    private volatile boolean gameOn;
+
+    /** The sequence of the last mole event received, sent with every whack */
+    private volatile int sequence = -1;
+
+    /** True once a region has been subscribed to, events for the rest of the board are not sent then */
+    private volatile boolean subscribed;
+
+    /** True while a BOARD has been asked for and has not come in yet */
+    private boolean resyncing;
+
+    /** The generation of the mole up in each spot, 0 if it is down or came from a BOARD */
+    private volatile AtomicIntegerArray generations;
+
+    /** The generation last whacked in each spot, so clicking the same mole again sends nothing */
+    private volatile AtomicIntegerArray whacked;
 
     /**
      * Called by the UI to get the number of rows for the board
@@ -72,71 +282,389 @@ public class WAMClient implements WAMProtocol
     }
 
     /**
-     * Hook up with a Whack-A-Mole server already running and waiting for multiple players
-     * to connect.
+     * Sets up a client for a Whack-A-Mole server without connecting yet,
+     * call connect() to connect and start() once the board is ready
      *
      * @param host the name of the host running the server program
-     * @param port the port of teh server socket on which the server is listening
-     *
+     * @param port the port of the server socket on which the server is listening
+     * @param model the model the protocols are applied to
+     * @param events where the protocols from the server are handled, one at a time and in order
      */
-    public WAMClient(String host, int port, WAMObserver model)
+    public WAMClient(String host, int port, WAMObserver model, Executor events)
     {
-        try
-        {
-            this.board = model;
+        this.host = host;
+        this.port = port;
+        this.board = model;
+        this.events = events;
 
-            //establish a connection with the server
-            this.clientSocket = new Socket(host, port);
+        this.networkOut = new LinkedBlockingQueue<>();
+        this.inbound = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean();
+    }
 
-            //get input and output connections for the server
-            this.networkIn = new Scanner(clientSocket.getInputStream());
-            this.networkOut = new PrintStream(clientSocket.getOutputStream());
+    /**
+     * Connects to the server, sends JOIN with the players name and reads the WELCOME on a new thread
+     * a server that can not be reached is tried again every second, up to the connect retries
+     *
+     * once connected the server has the idle timeout to send each line, a lobby or gateway PINGs
+     * the players waiting for a game so a long wait is fine, a server that goes quiet is joined again
+     * up to the connect retries, and the WELCOME has to come within -Dwam.welcomeTimeout in all
+     *
+     * @return a future completed with this client once the board is set up,
+     * or completed exceptionally if the server can not be reached or does not send a WELCOME in time
+     */
+    public CompletableFuture<WAMClient> connect()
+    {
+        CompletableFuture<WAMClient> future = new CompletableFuture<>();
 
-            //Check to see if the server sent anything
-            if (!this.networkIn.hasNextLine())
-                throw new WAMException("Lost Connection");
+        Thread connector = new Thread(() ->
+        {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.welcomeTimeout);
 
-            String request = this.networkIn.next();
+            try
+            {
+                for (int attempt = 0; ; attempt++)
+                {
+                    try
+                    {
+                        this.join(deadline);
+                        future.complete(this);
+                        return;
+                    }
+                    catch (SocketTimeoutException e)
+                    {
+                        if (attempt >= this.connectRetries || System.nanoTime() - deadline >= 0)
+                            throw new SocketTimeoutException("No WELCOME From the Server");
+                        WAMLog.warn("No WELCOME, Joining Again (" + (attempt + 1) + "/" + this.connectRetries + ")");
+                    }
+                }
+            }
+            catch (IOException | WAMException | RuntimeException e)
+            {
+                future.completeExceptionally(e);
+            }
+        });
+        connector.setDaemon(true);
+        connector.start();
 
-            //Check for the WELCOME protocol from the server
-            if (!request.equals(WELCOME))
-                throw new WAMException("Expected WELCOME from server");
+        return future;
+    }
 
-            //get the arguments from the WELCOME protocol
-            String[] arguments = networkIn.nextLine().split(" ");
+    /**
+     * opens a connection, sends the JOIN and sets up the board from the WELCOME
+     *
+     * @param deadline System.nanoTime() to give up on the WELCOME at
+     * @throws SocketTimeoutException if the server goes quiet or the deadline passes first
+     * @throws WAMException if the server sends an ERROR or something other than the WELCOME
+     * @throws IOException if the connection fails
+     */
+    private void join(long deadline) throws WAMException, IOException
+    {
+        SocketChannel channel = this.open(this.connectRetries);
+        try
+        {
+            write(channel, JOIN + " " + playerName() + "\n");
+            LineReader in = new LineReader(channel);
+            String[] arguments = this.readWelcome(channel, in, deadline);
 
             int rows = Integer.parseInt(arguments[1]);
             int cols = Integer.parseInt(arguments[2]);
             int players = Integer.parseInt(arguments[3]);
             int player = Integer.parseInt(arguments[4]);
+            this.token = (arguments.length > 5) ? arguments[5] : null;
 
             //call the welcome method
             welcome(rows, cols, players, player);
 
+            this.channel = channel;
+            this.networkIn = in;
+
             //allows the listener to loop
             this.gameOn = true;
         }
-        catch(IOException e)
+        catch (IOException | WAMException | RuntimeException e)
         {
-            System.out.println(e);
-            this.board.changeErrorMessage(e.getMessage());
+            closeQuietly(channel);
+            throw e;
+        }
+    }
 
-            //gives enough information to build the board, but it will display a network error
-            //to inform the player they are not connected
-            welcome(2, 2, 1, 1);
-            this.gameOn = false;
+    /**
+     * Who this player is across games, sent in the JOIN so the servers high scores and ranking
+     * follow the player and not the address they connect from
+     *
+     * it is -Dwam.player if that is set, otherwise an id made up the first time and kept in ~/.wam-player
+     *
+     * @return the name, one word with no spaces
+     */
+    private static String playerName()
+    {
+        String name = System.getProperty("wam.player");
+
+        if (name == null)
+        {
+            Path file = Paths.get(System.getProperty("user.home"), ".wam-player");
+            try
+            {
+                if (Files.exists(file))
+                    name = Files.readString(file).trim();
+
+                if (name == null || name.isEmpty())
+                {
+                    name = Long.toHexString(new SecureRandom().nextLong() | Long.MIN_VALUE);
+                    Files.writeString(file, name);
+                }
+            }
+            catch (IOException e)
+            {
+                //without the file the player still gets an id, just not the same one next time
+                name = Long.toHexString(new SecureRandom().nextLong() | Long.MIN_VALUE);
+            }
         }
-        catch (WAMException e)
+
+        name = name.trim().replaceAll("\\s+", "_");
+        return name.isEmpty() ? "-" : name.substring(0, Math.min(name.length(), 32));
+    }
+
+    /**
+     * Opens a new channel to the server, blocking the calling thread until it connects
+     * or the connect timeout runs out
+     *
+     * @return the connected channel
+     * @throws IOException if the server can not be reached
+     */
+    private SocketChannel open() throws IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+        try
         {
-            // ^ ditto
-            System.out.println(e);
-            this.board.changeErrorMessage(e.getMessage());
+            channel.socket().connect(new InetSocketAddress(this.host, this.port), this.connectTimeout);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
 
-            welcome(2, 2, 1, 1);
-            this.gameOn = false;
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return channel;
+    }
+
+    /**
+     * Opens a new channel to the server, trying again every second if it can not be reached
+     *
+     * @param retries the number of times to try again after the first
+     * @return the connected channel
+     * @throws IOException from the last try if none of them connect
+     */
+    private SocketChannel open(int retries) throws IOException
+    {
+        for (int attempt = 0; ; attempt++)
+        {
+            try
+            {
+                return this.open();
+            }
+            catch (IOException e)
+            {
+                if (attempt >= retries)
+                    throw e;
+                WAMLog.warn(e.getMessage() + ", Retrying (" + (attempt + 1) + "/" + retries + ")");
+            }
+
+            try
+            {
+                sleep(1000);
+            }
+            catch (InterruptedException e)
+            {
+                throw new IOException("Interrupted While Connecting");
+            }
         }
     }
 
+    /**
+     * Reads the WELCOME protocol from the server
+     * a lobby PINGs the players waiting for a game, those are answered until the WELCOME comes
+     *
+     * the server gets the idle timeout to send each line, the PINGs keep a long wait for a game going,
+     * and never more than the deadline in total
+     *
+     * @param channel the connection, where the PONGs are sent
+     * @param in where the WELCOME will come from
+     * @param deadline System.nanoTime() to give up at, Long.MAX_VALUE for none
+     * @return the WELCOME split on spaces, the arguments start at index 1
+     * @throws WAMException if the connection closes or something else is sent, an ERROR carries the servers reason
+     * @throws SocketTimeoutException if the server goes quiet or the deadline passes first
+     * @throws IOException if the connection fails
+     */
+    private String[] readWelcome(SocketChannel channel, LineReader in, long deadline) throws WAMException, IOException
+    {
+        String request;
+        try
+        {
+            in.limit(this.lineDeadline(deadline));
+            request = in.readLine();
+            while (request != null && request.startsWith(PING + " "))
+            {
+                write(channel, PONG + " " + request.split(" ")[1] + " " + System.currentTimeMillis() + "\n");
+                in.limit(this.lineDeadline(deadline));
+                request = in.readLine();
+            }
+        }
+        finally
+        {
+            in.unlimit();
+        }
+
+        //Check to see if the server sent anything
+        if (request == null)
+            throw new WAMException("Lost Connection");
+
+        String[] arguments = request.split(" ");
+
+        if (arguments[0].equals(ERROR))
+            throw new WAMException(request.substring(ERROR.length()).trim());
+
+        //Check for the WELCOME protocol from the server
+        if (!arguments[0].equals(WELCOME))
+            throw new WAMException("Expected WELCOME from server");
+
+        return arguments;
+    }
+
+    /**
+     * @param deadline System.nanoTime() the whole handshake gives up at
+     * @return System.nanoTime() to give up on the next line at, the idle timeout from now but never past the deadline
+     */
+    private long lineDeadline(long deadline)
+    {
+        if (this.idleTimeout <= 0)
+            return deadline;
+        return Math.min(deadline, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.idleTimeout));
+    }
+
+    /**
+     * Tries to get back into the game after the connection drops,
+     * connects again every second and sends RESUME with the session token until the reconnect timeout
+     *
+     * the server answers with a WELCOME then sends the board and the scores again,
+     * so the game carries on where it left off
+     *
+     * @return true if the client is back in the game, false if the server is gone or let the slot go
+     */
+    private boolean reconnect()
+    {
+        if (this.token == null)
+            return false;
+
+        this.board.changeErrorMessage("Connection Lost, Reconnecting...");
+        this.board.changeStatus(WAMObserver.Status.RECONNECTING);
+
+        //the watchdog waits for the first PING on the new connection
+        this.lastPing = 0;
+
+        WAMEvents.ClientDisconnect event = new WAMEvents.ClientDisconnect();
+        event.begin();
+        boolean reconnected = this.resume(event);
+
+        if (event.shouldCommit())
+        {
+            event.reconnected = reconnected;
+            event.commit();
+        }
+        return reconnected;
+    }
+
+    /**
+     * Tries to RESUME on a new connection until it works or the reconnect timeout runs out,
+     * the WELCOME has to give back the same player number and session token or the slot is not ours
+     *
+     * @param event counts the attempts
+     * @return true if the client is back in the game
+     */
+    private boolean resume(WAMEvents.ClientDisconnect event)
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.reconnectTimeout);
+        while (this.gameOn && System.nanoTime() - deadline < 0)
+        {
+            SocketChannel channel = null;
+            event.attempts++;
+            try
+            {
+                channel = this.open();
+                write(channel, RESUME + " " + this.token + "\n");
+
+                LineReader in = new LineReader(channel);
+                //the watchdog is not watching this channel yet, the WELCOME has to come before the reconnect timeout
+                String[] arguments = this.readWelcome(channel, in, deadline);
+
+                if (arguments.length < 6 || !arguments[4].equals(String.valueOf(this.player))
+                        || !arguments[5].equals(this.token))
+                    throw new WAMException("Server Resumed a Different Player");
+
+                SocketChannel old = this.channel;
+                this.channel = channel;
+                this.networkIn = in;
+                old.close();
+
+                WAMLog.info("Reconnected");
+                return true;
+            }
+            catch (WAMException e)
+            {
+                //the server is up but the slot is gone
+                WAMLog.warn(e.getMessage());
+                closeQuietly(channel);
+                return false;
+            }
+            catch (IOException e)
+            {
+                closeQuietly(channel);
+            }
+
+            try
+            {
+                sleep(1000);
+            }
+            catch (InterruptedException e)
+            {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * closes a channel that might not have opened, ignoring any errors
+     *
+     * @param channel the channel, can be null
+     */
+    private static void closeQuietly(SocketChannel channel)
+    {
+        try
+        {
+            if (channel != null)
+                channel.close();
+        }
+        catch (IOException ignored) {}
+    }
+
+    /**
+     * writes all of some text to a channel
+     *
+     * @param channel the channel to write to
+     * @param text one or more protocols, each ending with a new line
+     * @throws IOException if the connection fails
+     */
+    private static void write(SocketChannel channel, String text) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
     /**
      * Called when the client receives the welcome protocol from the server
      *
@@ -151,6 +679,8 @@ public class WAMClient implements WAMProtocol
         this.cols = columns;
         //create the board with the number of rows and columns
         this.board.setBoard(this.rows, this.cols);
+        this.generations = new AtomicIntegerArray(this.rows * this.cols);
+        this.whacked = new AtomicIntegerArray(this.rows * this.cols);
 
         this.maxPlayers = players;
         this.player = player;
@@ -197,7 +727,8 @@ public class WAMClient implements WAMProtocol
     }
 
     /**
-     * Run the main client loop
+     * Run the reader loop
+     * reads every protocol from the server until the game is over
      */
     public void run()
     {
@@ -208,79 +739,421 @@ public class WAMClient implements WAMProtocol
 
             while (this.gameOn)
             {
-                //Check to see if the client receives any protocols
-                //if not, then it means that the player disconnected
-                if (!this.networkIn.hasNextLine())
+                String in;
+                try
+                {
+                    in = this.networkIn.readLine();
+                }
+                catch (IOException e)
+                {
+                    in = null;
+                }
+
+                //if nothing comes in the connection dropped, try to get back into the game
+                //unless this client closed it
+                if (in == null)
+                {
+                    if (!this.gameOn)
+                        break;
+                    if (this.reconnect())
+                        continue;
                     throw new WAMException("Connection Lost");
+                }
 
-                String in = networkIn.nextLine();
                 String[] request = in.split(" ");
-
                 switch (request[0])
                 {
-                    case MOLE_UP:
-                        this.board.changeStatus(WAMObserver.Status.PLAYING);
-                        this.board.updateScoreBoard(this.toString());
-                        this.moleUp(Integer.parseInt(request[1]));
-                        break;
-                    case MOLE_DOWN:
-                        this.board.updateScoreBoard(this.toString());
-                        this.moleDown(Integer.parseInt(request[1]));
-                        break;
-                    case SCORE:
-                        this.board.changeStatus(WAMObserver.Status.PLAYING);
-                        this.setScores(request);
-                        this.board.updateScoreBoard(this.toString());
-                        this.board.updateScore();
+                    case PING:
+                        //answer right away so the server measures the network and not this client
+                        this.lastPing = System.nanoTime();
+                        this.send(PONG + " " + request[1] + " " + System.currentTimeMillis());
                         break;
                     case GAME_WON:
-                        this.board.updateScoreBoard(this.toString());
-                        this.board.changeStatus(WAMObserver.Status.WON);
-                        gameOn = false;
-                        break;
                     case GAME_LOST:
-                        this.board.updateScoreBoard(this.toString());
-                        this.board.changeStatus(WAMObserver.Status.LOST);
-                        gameOn = false;
-                        break;
                     case GAME_TIED:
-                        this.board.updateScoreBoard(this.toString());
-                        this.board.changeStatus(WAMObserver.Status.TIED);
-                        gameOn = false;
+                        //stop here, the server closing the connection next is not a drop
+                        this.gameOn = false;
                         break;
-                    case ERROR:
-                        this.board.updateScoreBoard("");
-                        this.sendError(in);
-                        throw new WAMException("AN ERROR HAS OCCURRED");
-                    default:
-                        this.sendError("ERROR - Improper protocol");
-                        throw new WAMException("ERROR - Improper protocol");
                 }
+
+                this.deliver(in);
             }
         }
         catch (WAMException e)
         {
-            this.board.changeErrorMessage(e.getMessage());
-            this.board.changeStatus(WAMObserver.Status.ERROR);
-            System.out.println(e.getMessage());
-            System.out.println("GAME OVER");
+            this.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a protocol for the events executor,
+     * only one task drains the queue at a time so protocols are handled in the order they came in
+     *
+     * @param in the protocol
+     */
+    private void deliver(String in)
+    {
+        this.inbound.add(in);
+        if (this.draining.compareAndSet(false, true))
+            this.events.execute(() -> this.drain());
+    }
+
+    /**
+     * Handles every queued protocol, run on the events executor,
+     * then publishes the model once for the whole batch
+     */
+    private void drain()
+    {
+        while (true)
+        {
+            WAMEvents.ClientBatch event = new WAMEvents.ClientBatch();
+            event.begin();
+            int protocols = 0;
+
+            String in;
+            while ((in = this.inbound.poll()) != null)
+            {
+                this.handle(in);
+                protocols++;
+            }
+
+            this.board.publish();
+
+            if (event.shouldCommit())
+            {
+                event.protocols = protocols;
+                event.commit();
+            }
+
+            this.draining.set(false);
+
+            //a protocol may have come in after the queue looked empty but before the flag was cleared
+            if (this.inbound.isEmpty() || !this.draining.compareAndSet(false, true))
+                return;
+        }
+    }
+
+    /**
+     * Applies one protocol from the server to the model
+     *
+     * @param in the protocol
+     */
+    private void handle(String in)
+    {
+        String[] request = in.split(" ");
+
+        try
+        {
+            switch (request[0])
+            {
+                case MOLE_UP:
+                    this.readSequence(request);
+                    this.board.changeStatus(WAMObserver.Status.PLAYING);
+                    this.board.updateScoreBoard(this.toString());
+                    if (request.length > 3)
+                        this.generations.set(Integer.parseInt(request[1]), Integer.parseInt(request[3]));
+                    this.moleUp(Integer.parseInt(request[1]));
+                    break;
+                case MOLE_DOWN:
+                    this.readSequence(request);
+                    this.board.updateScoreBoard(this.toString());
+                    this.generations.set(Integer.parseInt(request[1]), 0);
+                    this.moleDown(Integer.parseInt(request[1]));
+                    break;
+                case BOARD:
+                    this.applyBoard(request);
+                    break;
+                case PING:
+                    this.board.setNetworkStats(Long.parseLong(request[2]), Long.parseLong(request[3]));
+                    break;
+                case REGION:
+                    //the moles inside the region will be sent right after
+                    this.clearGenerations(
+                            Integer.parseInt(request[1]),
+                            Integer.parseInt(request[2]),
+                            Integer.parseInt(request[3]),
+                            Integer.parseInt(request[4]));
+                    this.board.clearRegion(
+                            Integer.parseInt(request[1]),
+                            Integer.parseInt(request[2]),
+                            Integer.parseInt(request[3]),
+                            Integer.parseInt(request[4]));
+                    break;
+                case SCORE:
+                    this.board.changeStatus(WAMObserver.Status.PLAYING);
+                    this.setScores(request);
+                    this.board.updateScoreBoard(this.toString());
+                    break;
+                case GAME_WON:
+                    this.board.updateScoreBoard(this.toString());
+                    this.board.changeStatus(WAMObserver.Status.WON);
+                    break;
+                case GAME_LOST:
+                    this.board.updateScoreBoard(this.toString());
+                    this.board.changeStatus(WAMObserver.Status.LOST);
+                    break;
+                case GAME_TIED:
+                    this.board.updateScoreBoard(this.toString());
+                    this.board.changeStatus(WAMObserver.Status.TIED);
+                    break;
+                case ERROR:
+                    this.board.updateScoreBoard("");
+                    this.sendError(in);
+                    throw new WAMException("AN ERROR HAS OCCURRED");
+                default:
+                    this.sendError("ERROR - Improper protocol");
+                    throw new WAMException("ERROR - Improper protocol");
+            }
+        }
+        catch (WAMException e)
+        {
+            this.close();
+            this.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Shows the player the game has stopped because of a network error
+     *
+     * @param message what went wrong
+     */
+    private void fail(String message)
+    {
+        this.board.changeErrorMessage(message);
+        this.board.changeStatus(WAMObserver.Status.ERROR);
+        WAMLog.error(message + ", Game Over");
+    }
+
+    /**
+     * Keeps the newest event sequence from a mole protocol
+     * so the server can judge whacks against the board this client was showing
+     *
+     * a client getting the whole board sees every sequence number, so a gap means an event was missed
+     * and the whole board is asked for again
+     *
+     * @param request the split MOLE_UP or MOLE_DOWN protocol
+     */
+    private void readSequence(String[] request)
+    {
+        if (request.length <= 2)
+            return;
+
+        int sequence = Integer.parseInt(request[2]);
+        if (!this.subscribed && !this.resyncing && this.sequence >= 0 && sequence > this.sequence + 1)
+        {
+            this.resyncing = true;
+            this.send(BOARD);
+        }
+
+        this.sequence = Math.max(this.sequence, sequence);
+    }
+
+    /**
+     * Replaces the whole board, the clock and the scores with a BOARD from the server
+     *
+     * @param request the split BOARD protocol
+     * @throws WAMException if the board can not be decoded
+     */
+    private void applyBoard(String[] request) throws WAMException
+    {
+        long[] words = BoardCodec.decode(request[3], request[4], this.rows * this.cols);
+
+        this.sequence = Integer.parseInt(request[1]);
+        this.subscribed = false;
+        this.resyncing = false;
+
+        //a BOARD does not say which appearance each mole is, whacks on them go without a generation
+        this.clearGenerations(0, 0, this.rows, this.cols);
+
+        for (int i = 5; i < request.length && i - 5 < this.scores.length; i++)
+            this.scores[i - 5] = request[i];
+
+        //the first BOARD comes before the game starts, the players wait for the first SCORE
+        if (this.board.getStatus() != WAMObserver.Status.SET_UP)
+            this.board.changeStatus(WAMObserver.Status.PLAYING);
+        this.board.updateScoreBoard(this.toString());
+        this.board.applyBoard(words, Long.parseLong(request[2]));
+    }
+
+    /**
+     * Forgets the generations of every spot inside a region
+     *
+     * @param row the top row of the region
+     * @param col the left column of the region
+     * @param rows the number of rows in the region
+     * @param cols the number of columns in the region
+     */
+    private void clearGenerations(int row, int col, int rows, int cols)
+    {
+        for (int r = row; r < row + rows && r < this.rows; r++)
+        {
+            for (int c = col; c < col + cols && c < this.cols; c++)
+                this.generations.set(r * this.cols + c, 0);
         }
     }
 
+    /**
+     * Asks the server for the whole board again
+     */
+    public void requestBoard()
+    {
+        this.send(BOARD);
+    }
+
     private void sendError(String message)
     {
         this.board.changeErrorMessage(message);
         this.board.changeStatus(WAMObserver.Status.ERROR);
     }
 
+    /**
+     * Queues a protocol for the writer thread, never blocks
+     *
+     * @param protocol the protocol to send
+     */
+    private void send(String protocol)
+    {
+        this.networkOut.offer(protocol);
+    }
+
+    /**
+     * The writer loop
+     * waits for protocols to send, then writes every one that is queued in a single write
+     */
+    private void runWriter()
+    {
+        ArrayList<String> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+
+        try
+        {
+            while (true)
+            {
+                batch.add(this.networkOut.take());
+                this.networkOut.drainTo(batch);
+
+                for (String protocol : batch)
+                    text.append(protocol).append('\n');
+
+                try
+                {
+                    this.writingSince = System.nanoTime();
+                    write(this.channel, text.toString());
+                }
+                catch (IOException e)
+                {
+                    //the reader notices the drop and reconnects, these were meant for the old connection
+                }
+                finally
+                {
+                    this.writingSince = 0;
+                }
+
+                batch.clear();
+                text.setLength(0);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            //the client was closed
+        }
+    }
+
+    /**
+     * The watchdog loop
+     * closes the connection when the server has gone quiet or a write is stuck,
+     * the reader then tries to RESUME on a new one like after any other drop
+     */
+    private void runWatchdog()
+    {
+        try
+        {
+            while (this.gameOn)
+            {
+                sleep(1000);
+
+                long now = System.nanoTime();
+                long ping = this.lastPing;
+                long writing = this.writingSince;
+
+                String reason = null;
+                if (ping != 0 && (now - ping) / 1_000_000 > this.idleTimeout)
+                    reason = "No PING for " + (now - ping) / 1_000_000 + "ms";
+                else if (writing != 0 && (now - writing) / 1_000_000 > this.writeTimeout)
+                    reason = "Write Stuck for " + (now - writing) / 1_000_000 + "ms";
+
+                if (reason != null && this.gameOn)
+                {
+                    WAMLog.warn(reason + ", Closing Connection");
+                    this.lastPing = 0;
+                    closeQuietly(this.channel);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            //the client was closed
+        }
+    }
+
     /**
      * Method that sends the WHACK protocol to the server
+     * a mole whose MOLE_UP was seen is whacked by its generation, and only once,
+     * clicking it again before it goes down sends nothing
      *
      * @param spot the mole spot that the player whacked
      */
     public void sendWhack(int spot)
     {
-        this.networkOut.println(WHACK + " " + spot + " " + this.player);
+        int generation = this.generations.get(spot);
+        boolean sent = true;
+
+        if (generation == 0)
+        {
+            this.send(WHACK + " " + spot + " " + this.player + " " + this.sequence);
+        }
+        else if (this.whacked.getAndSet(spot, generation) != generation)
+        {
+            this.send(WHACK + " " + spot + " " + this.player + " " + this.sequence + " " + generation);
+        }
+        else
+        {
+            sent = false;
+        }
+
+        WAMEvents.ClientWhack event = new WAMEvents.ClientWhack();
+        if (event.shouldCommit())
+        {
+            event.hole = spot;
+            event.generation = generation;
+            event.sent = sent;
+            event.commit();
+        }
+    }
+
+    /**
+     * Method that sends the SUBSCRIBE protocol to the server
+     * after this only moles inside of the region will be sent to this client
+     *
+     * @param row the top row of the region
+     * @param col the left column of the region
+     * @param rows the number of rows in the region
+     * @param cols the number of columns in the region
+     */
+    public void subscribe(int row, int col, int rows, int cols)
+    {
+        this.subscribed = true;
+        this.send(SUBSCRIBE + " " + row + " " + col + " " + rows + " " + cols);
+    }
+
+    /**
+     * Method that sends an empty SUBSCRIBE protocol to the server
+     * to go back to receiving every mole on the board
+     */
+    public void subscribeAll()
+    {
+        this.subscribed = false;
+        this.send(SUBSCRIBE);
     }
 
     /**
@@ -291,29 +1164,31 @@ public class WAMClient implements WAMProtocol
     {
         this.gameOn = false;
 
-        /*make sure the socket was opened before tyring to close it*/
-        if (this.clientSocket != null)
-        {
-            try
-            {
-                this.networkIn.close();
-                this.networkOut.close();
-                this.clientSocket.close();
-            }
-            catch(IOException e)
-            {
-                e.printStackTrace();
-            }
+        if (this.writer != null)
+            this.writer.interrupt();
 
-            System.out.println("Socket Closed");
+        /*make sure the channel was opened before tyring to close it*/
+        if (this.channel != null)
+        {
+            closeQuietly(this.channel);
+            WAMLog.info("Socket Closed");
         }
     }
 
     /**
-     * Create a new thread and have it start the client run method
+     * Start the reader, writer and watchdog threads
+     * called once the board is ready for protocols
      */
     public void start()
     {
+        this.writer = new Thread(() -> this.runWriter());
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        Thread watchdog = new Thread(() -> this.runWatchdog());
+        watchdog.setDaemon(true);
+        watchdog.start();
+
         new Thread(() -> this.run()).start();
     }
 
@@ -2,18 +2,173 @@ package client.network;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import client.network.Observer;
+import common.WAMBoard;
 
 /**
  * The model for the Whack-A-Mole game
  *
+ * the network side changes the model and then publishes it as a Frame, the view only ever reads frames,
+ * so it always sees a whole board and the scores that went with it and never takes a lock
+ *
+ * there are three frames, one being filled by publish(), one waiting, and one the view is reading,
+ * publishing swaps the filled frame with the waiting one and frame() swaps the waiting one with the one
+ * being read, each with a single atomic swap, so neither side ever waits for the other
+ *
  * @author Shakeel Farooq
  * @author Chris Asbrock
  */
 public class WAMObserver
 {
     /** Possible statuses of the game */
-    public enum Status {SET_UP, PLAYING, WON, LOST, TIED, ERROR;}
+    public enum Status {SET_UP, PLAYING, RECONNECTING, WON, LOST, TIED, ERROR;}
+
+    /**
+     * One published state of the model, what the view draws from
+     * a frame handed out by frame() does not change until the view asks for the next one
+     */
+    public static final class Frame
+    {
+        /** The packed board, the same as WAMBoard.snapshot() */
+        private long[] words;
+        /** The number of moles up */
+        private int count;
+        private Status status = Status.SET_UP;
+        private String scoreboard = "";
+        private String errorMessage = "";
+        private long rtt = -1, tickLag;
+        private long clock, clockNanos;
+        /** Counts up with every publish */
+        private long version;
+        /** The number of BOARDs applied so far */
+        private long boards;
+
+        private Frame(int size)
+        {
+            this.words = new long[WAMBoard.wordsFor(size)];
+        }
+
+        /**
+         * @param hole the row-major hole number
+         * @return true if the mole is up
+         */
+        public boolean get(int hole)
+        {
+            return (this.words[hole >>> 6] & (1L << hole)) != 0;
+        }
+
+        /**
+         * @return the packed board, not to be changed
+         */
+        public long[] getWords()
+        {
+            return this.words;
+        }
+
+        /**
+         * @return the number of moles up
+         */
+        public int count()
+        {
+            return this.count;
+        }
+
+        /**
+         * Copies the holes that are up into a buffer
+         *
+         * @param out the buffer, at least count() long
+         * @return the number of holes written
+         */
+        public int activeHoles(int[] out)
+        {
+            int length = 0;
+            for (int word = 0; word < this.words.length; word++)
+            {
+                long remaining = this.words[word];
+                while (remaining != 0 && length < out.length)
+                {
+                    out[length++] = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                }
+            }
+            return length;
+        }
+
+        public Status getStatus()
+        {
+            return this.status;
+        }
+
+        public String getScoreBoard()
+        {
+            return this.scoreboard;
+        }
+
+        public String getErrorMessage()
+        {
+            return this.errorMessage;
+        }
+
+        /**
+         * @return the round trip time in microseconds, -1 if unknown
+         */
+        public long getRtt()
+        {
+            return this.rtt;
+        }
+
+        /**
+         * @return how far the servers game clock is behind in milliseconds
+         */
+        public long getTickLag()
+        {
+            return this.tickLag;
+        }
+
+        /**
+         * Gets the servers game clock, counted forward from the last BOARD
+         *
+         * @return the game time in milliseconds
+         */
+        public long getClock()
+        {
+            if (this.clockNanos == 0)
+                return 0;
+
+            return this.clock + (System.nanoTime() - this.clockNanos) / 1_000_000;
+        }
+
+        /**
+         * @return a number that changes with every publish
+         */
+        public long getVersion()
+        {
+            return this.version;
+        }
+
+        /**
+         * @return a number that changes with every BOARD, after which the server sends the whole board again
+         */
+        public long getBoards()
+        {
+            return this.boards;
+        }
+    }
+
+    /** Set on the waiting frame when it is newer than the one the view is reading */
+    private static final int FRESH = 4;
+
+    /** The three frames */
+    private volatile Frame[] frames;
+    /** The frame waiting for the view, with FRESH set if the view has not taken it yet */
+    private final AtomicInteger waiting = new AtomicInteger(1);
+    /** The frame publish() fills, only touched by publish() */
+    private int filling = 0;
+    /** The frame the view is reading, only touched by frame() */
+    private int reading = 2;
+    /** The version of the last publish */
+    private long version;
 
     /** The current status of the game */
     private Status current_status;
@@ -22,15 +177,29 @@ public class WAMObserver
     private int player;
 
     /**
-     * Boolean list that represents the whack-a-mole board
-     * If the boolean value is true, it means that a mole is up,
+     * Packed board that represents the whack-a-mole board
+     * If a hole is true, it means that a mole is up,
      * otherwise the mole is down.
      */
-    private boolean[] spots;
+    private WAMBoard spots;
+
+    /** The number of columns, used to turn a row and column into a mole position */
+    private int cols;
 
     /** String list of each of the player's scores */
     private String scoreboard;
 
+    /** The round trip time to the server in microseconds as measured by the server, -1 if unknown */
+    private long rtt = -1;
+
+    /** How far the servers game clock is behind in milliseconds */
+    private long tickLag;
+
+    /** The servers game clock in milliseconds from the last BOARD, and System.nanoTime() when it came in */
+    private long clock, clockNanos;
+    /** The number of BOARDs applied so far */
+    private long boards;
+
     /** String message that represents an error */
     private String errorMessage;
 
@@ -65,6 +234,7 @@ public class WAMObserver
     public WAMObserver()
     {
         this.observers = new LinkedList<>();
+        this.frames = new Frame[] {new Frame(0), new Frame(0), new Frame(0)};
         current_status = Status.SET_UP;
         this.scoreboard = "";
         this.errorMessage = "Waiting For More Players...";
@@ -80,16 +250,6 @@ public class WAMObserver
         this.errorMessage = message;
     }
 
-    /**
-     * error message getter
-     *
-     * @return - the current error message
-     */
-    public String getErrorMessage()
-    {
-        return this.errorMessage;
-    }
-
     /**
      * Method that gets the player number
      * Used by the GUI
@@ -120,34 +280,42 @@ public class WAMObserver
 
     /**
      * Method that changes the status of the game
+     * a new status is published right away, PLAYING is only published when it is new
      *
      * @param status The status to change to
      */
     public void changeStatus(Status status)
     {
+        Status previous = this.current_status;
         this.current_status = status;
-        if (status != Status.SET_UP)
-            this.updateObservers();
+        if (status != Status.SET_UP && (status != previous || status != Status.PLAYING))
+            this.publish();
     }
 
     /**
      * Method that creates the board with a specific number of rows and columns
-     * When creating this board, the boolean values are automatically set to false
+     * When creating this board, every hole is automatically set to down
      *
      * @param rows the number of rows
      * @param cols the number of columns
      */
     public void setBoard(int rows, int cols)
     {
-        this.spots = new boolean[rows * cols];
+        this.spots = new WAMBoard(rows * cols);
+        this.cols = cols;
+
+        //a reconnect gets the same board again, the view may still be reading the frames
+        if (this.frames[0].words.length != WAMBoard.wordsFor(rows * cols))
+            this.frames = new Frame[] {new Frame(rows * cols), new Frame(rows * cols), new Frame(rows * cols)};
     }
 
     /**
-     * Method that gets the board
+     * Method that gets the board the network side is changing
+     * the view reads frame() instead
      *
      * @return spots
      */
-    public boolean[] getBoard()
+    public WAMBoard getBoard()
     {
         return this.spots;
     }
@@ -159,8 +327,7 @@ public class WAMObserver
      */
     public void moleUp(int spot)
     {
-        this.spots[spot] = true;
-        this.updateObservers();
+        this.spots.set(spot, true);
     }
 
     /**
@@ -170,18 +337,82 @@ public class WAMObserver
      */
     public void moleDown(int spot)
     {
-        this.spots[spot] = false;
+        this.spots.set(spot, false);
+    }
+
+    /**
+     * Puts every mole in a region of the board down
+     * Called when the server answers a subscription, the moles that are up get sent after
+     *
+     * @param row the top row of the region
+     * @param col the left column of the region
+     * @param rows the number of rows in the region
+     * @param cols the number of columns in the region
+     */
+    public void clearRegion(int row, int col, int rows, int cols)
+    {
+        for (int r = row; r < row + rows; r++)
+        {
+            for (int c = col; c < col + cols; c++)
+            {
+                this.spots.set(r * this.cols + c, false);
+            }
+        }
+    }
+
+    /**
+     * Replaces the whole board with a snapshot from the server in one step
+     * Called by the client when a BOARD comes in
+     *
+     * @param words the packed board
+     * @param clock the servers game clock in milliseconds when the snapshot was taken
+     */
+    public void applyBoard(long[] words, long clock)
+    {
+        this.spots.restore(words);
+        this.clock = clock;
+        this.clockNanos = System.nanoTime();
+        this.boards++;
+    }
+
+    /**
+     * Publishes the model as it is now for the view, then tells the observers
+     * Called by the client after every batch of protocols, the view sees all of them at once
+     *
+     * synchronized in case a status change comes from another thread, the view never locks
+     */
+    public synchronized void publish()
+    {
+        Frame frame = this.frames[this.filling];
+
+        this.spots.copyTo(frame.words);
+        frame.count = this.spots.count();
+        frame.status = this.current_status;
+        frame.scoreboard = this.scoreboard;
+        frame.errorMessage = this.errorMessage;
+        frame.rtt = this.rtt;
+        frame.tickLag = this.tickLag;
+        frame.clock = this.clock;
+        frame.clockNanos = this.clockNanos;
+        frame.boards = this.boards;
+        frame.version = ++this.version;
+
+        this.filling = this.waiting.getAndSet(this.filling | FRESH) & ~FRESH;
         this.updateObservers();
     }
 
     /**
-     * Returns the score for this player
+     * Gets the newest published frame
+     * Only the view calls this, always from the same thread
      *
-     * @return this.score
+     * @return the frame, it does not change until the next call
      */
-    public String getScoreBoard()
+    public Frame frame()
     {
-        return this.scoreboard;
+        if ((this.waiting.get() & FRESH) != 0)
+            this.reading = this.waiting.getAndSet(this.reading) & ~FRESH;
+
+        return this.frames[this.reading];
     }
 
     /**
@@ -194,11 +425,15 @@ public class WAMObserver
     }
 
     /**
-     * Updates the player score
+     * Sets the network stats sent with the servers PING
      * Called by the client
+     *
+     * @param rtt the round trip time in microseconds, -1 if the server has not measured it yet
+     * @param tickLag how far the servers game clock is behind in milliseconds
      */
-    public void updateScore()
+    public void setNetworkStats(long rtt, long tickLag)
     {
-        updateObservers();
+        this.rtt = rtt;
+        this.tickLag = tickLag;
     }
 }
@@ -0,0 +1,263 @@
+package common;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Turns a packed board into the text of a BOARD snapshot and back
+ *
+ * there are three encodings and the smallest one is sent, the text is the encoding letter
+ * followed by a space and the encoded bytes in base64
+ *
+ *  B -> the raw bits, one bit per hole, (rows * cols) / 8 bytes
+ *  R -> the lengths of the runs of down and up holes as varints, starting with a run of down holes,
+ *  tiny when only a few moles are up
+ *  Z -> the raw bits deflated, for boards that are busy but not random
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class BoardCodec
+{
+    /**the raw bits*/
+    public static final char RAW = 'B';
+    /**run lengths*/
+    public static final char RUNS = 'R';
+    /**the raw bits deflated*/
+    public static final char DEFLATED = 'Z';
+
+    private BoardCodec() {}
+
+    /**
+     * encodes a board with whichever encoding is smallest
+     *
+     * @param words - the packed board, as from WAMBoard.snapshot()
+     * @param size - the amount of holes
+     * @return - the encoding letter, a space, then the base64 bytes
+     */
+    public static String encode(long[] words, int size)
+    {
+        byte[] raw = toBytes(words, size);
+        byte[] runs = runs(words, size);
+        byte[] deflated = deflate(raw);
+
+        char encoding = RAW;
+        byte[] best = raw;
+
+        if (runs.length < best.length)
+        {
+            encoding = RUNS;
+            best = runs;
+        }
+        if (deflated.length < best.length)
+        {
+            encoding = DEFLATED;
+            best = deflated;
+        }
+
+        return encoding + " " + Base64.getEncoder().encodeToString(best);
+    }
+
+    /**
+     * decodes a board
+     *
+     * @param encoding - the encoding letter
+     * @param data - the base64 bytes
+     * @param size - the amount of holes
+     * @return - the packed board, ready for WAMBoard.restore()
+     * @throws WAMException - if the encoding is unknown or the data is broken
+     */
+    public static long[] decode(String encoding, String data, int size) throws WAMException
+    {
+        byte[] bytes;
+        try
+        {
+            bytes = Base64.getDecoder().decode(data);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new WAMException("Broken BOARD data");
+        }
+
+        switch (encoding)
+        {
+            case "B":
+                return fromBytes(bytes, size);
+            case "R":
+                return fromRuns(bytes, size);
+            case "Z":
+                return fromBytes(inflate(bytes, (size + 7) >>> 3), size);
+            default:
+                throw new WAMException("Unknown BOARD encoding " + encoding);
+        }
+    }
+
+    /**
+     * the packed words as little endian bytes, cut to the bytes the board needs
+     */
+    private static byte[] toBytes(long[] words, int size)
+    {
+        byte[] bytes = new byte[(size + 7) >>> 3];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)(words[i >>> 3] >>> ((i & 7) << 3));
+        return bytes;
+    }
+
+    /**
+     * packs little endian bytes back into words
+     */
+    private static long[] fromBytes(byte[] bytes, int size) throws WAMException
+    {
+        if (bytes.length != (size + 7) >>> 3)
+            throw new WAMException("BOARD is the wrong size");
+
+        long[] words = new long[WAMBoard.wordsFor(size)];
+        for (int i = 0; i < bytes.length; i++)
+            words[i >>> 3] |= (bytes[i] & 0xffL) << ((i & 7) << 3);
+        return words;
+    }
+
+    /**
+     * the run lengths, found by jumping from one change to the next a word at a time
+     */
+    private static byte[] runs(long[] words, int size)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int hole = 0;
+        boolean up = false;
+
+        while (hole < size)
+        {
+            int next = nextChange(words, hole, up, size);
+            writeVarint(out, next - hole);
+            hole = next;
+            up = !up;
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * finds the first hole at or after from that is not in the given state
+     *
+     * @return - the hole, or size if the run goes to the end of the board
+     */
+    private static int nextChange(long[] words, int from, boolean up, int size)
+    {
+        int word = from >>> 6;
+        long bits = (up ? ~words[word] : words[word]) & (-1L << (from & 63));
+
+        while (bits == 0)
+        {
+            if (++word == words.length)
+                return size;
+            bits = up ? ~words[word] : words[word];
+        }
+
+        return Math.min(size, (word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    /**
+     * rebuilds the packed board from run lengths
+     */
+    private static long[] fromRuns(byte[] bytes, int size) throws WAMException
+    {
+        long[] words = new long[WAMBoard.wordsFor(size)];
+        int hole = 0;
+        boolean up = false;
+        int i = 0;
+
+        while (i < bytes.length)
+        {
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                if (i == bytes.length || shift > 28)
+                    throw new WAMException("Broken BOARD runs");
+                b = bytes[i++];
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            }
+            while (b < 0);
+
+            if (length < 0 || hole + length > size)
+                throw new WAMException("BOARD runs past the end of the board");
+
+            if (up)
+            {
+                for (int h = hole; h < hole + length; h++)
+                    words[h >>> 6] |= 1L << (h & 63);
+            }
+
+            hole += length;
+            up = !up;
+        }
+
+        return words;
+    }
+
+    /**
+     * writes a positive int 7 bits at a time, low bits first
+     */
+    private static void writeVarint(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7f) != 0)
+        {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static byte[] deflate(byte[] raw)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(raw);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 16);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished())
+            out.write(buffer, 0, deflater.deflate(buffer));
+
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] deflated, int length) throws WAMException
+    {
+        Inflater inflater = new Inflater();
+        inflater.setInput(deflated);
+
+        byte[] raw = new byte[length];
+        try
+        {
+            int read = 0;
+            while (read < length && !inflater.finished())
+            {
+                int n = inflater.inflate(raw, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                read += n;
+            }
+
+            if (read != length)
+                throw new WAMException("BOARD is the wrong size");
+        }
+        catch (DataFormatException e)
+        {
+            throw new WAMException("Broken BOARD data");
+        }
+        finally
+        {
+            inflater.end();
+        }
+
+        return raw;
+    }
+}
@@ -0,0 +1,133 @@
+package common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The positions of a bounded ring buffer with any amount of writers and one reader
+ *
+ * every slot has a sequence number, a writer claims the next position with one compare and set,
+ * fills in the slot and publishes it by moving the slots sequence on, the reader takes the slots in
+ * the order they were claimed and frees each one for the lap after, nothing here takes a lock
+ *
+ * the ring only hands out positions, whoever uses it keeps the fields of each slot in its own arrays,
+ * indexed by slot(position), so nothing is allocated per entry
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public final class SequenceRing
+{
+    /**slots - 1, the ring size is a power of two*/
+    private final int mask;
+
+    /**the sequence of each slot, equal to the next write position when it is free, one past it when it is full*/
+    private final AtomicLongArray sequences;
+
+    /**the next position a writer will claim*/
+    private final AtomicLong write = new AtomicLong();
+    /**the next position the reader will take, only the reader touches it*/
+    private long read;
+
+    /**
+     * @param size - amount of slots, rounded up to a power of two
+     */
+    public SequenceRing(int size)
+    {
+        this.mask = Integer.highestOneBit(Math.max(2, size) * 2 - 1) - 1;
+
+        this.sequences = new AtomicLongArray(this.mask + 1);
+        for (int i = 0; i <= this.mask; i++)
+            this.sequences.set(i, i);
+    }
+
+    /**
+     * @return - amount of slots
+     */
+    public int capacity()
+    {
+        return this.mask + 1;
+    }
+
+    /**
+     * @param position - a position from claim() or peek()
+     * @return - the slot it is kept in
+     */
+    public int slot(long position)
+    {
+        return (int)position & this.mask;
+    }
+
+    /**
+     * claims the next position for a writer, who fills in its slot then calls publish()
+     *
+     * @return - the position, or -1 if the ring is full
+     */
+    public long claim()
+    {
+        long position = this.write.get();
+        while (true)
+        {
+            long difference = this.sequences.get(this.slot(position)) - position;
+
+            if (difference == 0)
+            {
+                if (this.write.compareAndSet(position, position + 1))
+                    return position;
+            }
+            else if (difference < 0)
+            {
+                //the reader has not caught up with this slot yet
+                return -1;
+            }
+
+            position = this.write.get();
+        }
+    }
+
+    /**
+     * hands a filled in slot to the reader
+     *
+     * @param position - the position from claim()
+     */
+    public void publish(long position)
+    {
+        this.sequences.set(this.slot(position), position + 1);
+    }
+
+    /**
+     * the next position for the reader, only ever called by the reader
+     *
+     * @return - the position, or -1 if its slot has not been published yet
+     */
+    public long peek()
+    {
+        return this.sequences.get(this.slot(this.read)) == this.read + 1 ? this.read : -1;
+    }
+
+    /**
+     * frees the slot from the last peek() for the lap after this one and moves the reader on,
+     * only ever called by the reader
+     */
+    public void release()
+    {
+        this.sequences.set(this.slot(this.read), this.read + this.mask + 1);
+        this.read++;
+    }
+
+    /**
+     * @return - the next position the reader will take, every position before it has been released
+     */
+    public long getRead()
+    {
+        return this.read;
+    }
+
+    /**
+     * @return - the next position a writer will claim, every position before it has been claimed
+     */
+    public long getClaimed()
+    {
+        return this.write.get();
+    }
+}
@@ -0,0 +1,196 @@
+package common;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A compact representation of a Whack-A-Mole board shared by the server and the client
+ *
+ * every hole is a single bit packed into an array of longs (true is up, false is down),
+ * holes are numbered in row-major order the same way the protocol numbers them
+ *
+ * alongside the bits the board keeps a sparse index of the holes that are currently up,
+ * so even a board with a million holes can be walked by only looking at the moles that are up,
+ * and the whole board can be snapshot as (rows * cols) / 8 bytes
+ *
+ * all methods are synchronized, a board is written by several server threads at once
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class WAMBoard
+{
+    /**the amount of holes on the board*/
+    private final int size;
+    /**the packed bits, bit (hole % 64) of word (hole / 64) is the state of a hole*/
+    private final long[] bits;
+
+    /**dense list of every hole that is currently up, only the first activeCount are used*/
+    private final int[] active;
+    /**the index of each hole inside of active, -1 if the hole is down*/
+    private final int[] position;
+    /**amount of holes currently up*/
+    private int activeCount;
+
+    /**
+     * creates a new board with every hole down
+     *
+     * @param size - the amount of holes (rows * cols)
+     */
+    public WAMBoard(int size)
+    {
+        this.size = size;
+        this.bits = new long[wordsFor(size)];
+        this.active = new int[size];
+        this.position = new int[size];
+
+        for (int i = 0; i < size; i++)
+            this.position[i] = -1;
+    }
+
+    /**
+     * the amount of longs needed to hold a board
+     *
+     * @param size - the amount of holes
+     * @return - the length of the packed array
+     */
+    public static int wordsFor(int size)
+    {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * @return - the amount of holes on the board
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * checks a single hole
+     *
+     * @param hole - the row-major hole number
+     * @return - true if the mole is up
+     * @throws IndexOutOfBoundsException - if the hole is not on the board
+     */
+    public synchronized boolean get(int hole)
+    {
+        Objects.checkIndex(hole, this.size);
+        return (this.bits[hole >>> 6] & (1L << hole)) != 0;
+    }
+
+    /**
+     * changes a single hole, keeping the sparse index of up moles in step with the bits
+     *
+     * @param hole - the row-major hole number
+     * @param up - the new state of the hole
+     * @return - true if the hole actually changed, so a whack can test and clear in one step
+     * @throws IndexOutOfBoundsException - if the hole is not on the board
+     */
+    public synchronized boolean set(int hole, boolean up)
+    {
+        //the last word has room for holes past the end, they must not get into the index
+        Objects.checkIndex(hole, this.size);
+        long mask = 1L << hole;
+        boolean current = (this.bits[hole >>> 6] & mask) != 0;
+
+        if (current == up)
+            return false;
+
+        if (up)
+        {
+            this.bits[hole >>> 6] |= mask;
+            this.position[hole] = this.activeCount;
+            this.active[this.activeCount++] = hole;
+        }
+        else
+        {
+            this.bits[hole >>> 6] &= ~mask;
+
+            //move the last up hole into the removed holes place
+            int index = this.position[hole];
+            int last = this.active[--this.activeCount];
+            this.active[index] = last;
+            this.position[last] = index;
+            this.position[hole] = -1;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return - the amount of moles currently up
+     */
+    public synchronized int count()
+    {
+        return this.activeCount;
+    }
+
+    /**
+     * copies the holes that are currently up into a buffer
+     * the buffer can be reused between calls so walking the board does not allocate
+     *
+     * @param out - the buffer to fill, should be at least size() long
+     * @return - the amount of holes written into out
+     */
+    public synchronized int activeHoles(int[] out)
+    {
+        int length = Math.min(out.length, this.activeCount);
+        System.arraycopy(this.active, 0, out, 0, length);
+        return length;
+    }
+
+    /**
+     * puts every hole down
+     */
+    public synchronized void clear()
+    {
+        for (int i = 0; i < this.activeCount; i++)
+            this.position[this.active[i]] = -1;
+
+        this.activeCount = 0;
+        Arrays.fill(this.bits, 0L);
+    }
+
+    /**
+     * @return - a copy of the packed bits, the whole board in (size / 8) bytes
+     */
+    public synchronized long[] snapshot()
+    {
+        return this.bits.clone();
+    }
+
+    /**
+     * copies the packed bits into an array that is reused, the same as snapshot() without allocating
+     *
+     * @param out - at least wordsFor(size()) long
+     */
+    public synchronized void copyTo(long[] out)
+    {
+        System.arraycopy(this.bits, 0, out, 0, this.bits.length);
+    }
+
+    /**
+     * replaces the whole board with a snapshot, rebuilding the index of up moles
+     *
+     * @param words - packed bits as given by snapshot()
+     */
+    public synchronized void restore(long[] words)
+    {
+        this.clear();
+
+        for (int word = 0; word < this.bits.length && word < words.length; word++)
+        {
+            long remaining = words[word];
+            while (remaining != 0)
+            {
+                int hole = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+
+                if (hole < this.size)
+                    this.set(hole, true);
+            }
+        }
+    }
+}
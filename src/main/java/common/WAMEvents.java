@@ -0,0 +1,214 @@
+package common;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of the game, so a recording shows the game next to the GC, lock and CPU events
+ *
+ * every event is made, filled and committed only when shouldCommit() says a recording wants it,
+ * with no recording running an event is an empty object the JIT never allocates
+ *
+ *  java -XX:StartFlightRecording=filename=wam.jfr,settings=profile server.WAMServer ...
+ *  jfr print --categories Whack-A-Mole wam.jfr
+ *
+ * the events can be turned on and off by name like any other, for example wam.Mole#enabled=false
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public final class WAMEvents
+{
+    private WAMEvents() {}
+
+    /**
+     * a mole going up or down, the duration is the move and its broadcast, waiting for the server lock included
+     */
+    @Name("wam.Mole")
+    @Label("Mole Move")
+    @Category({"Whack-A-Mole", "Server"})
+    public static final class Mole extends Event
+    {
+        @Label("Game")
+        public int game;
+
+        @Label("Hole")
+        public int hole;
+
+        @Label("Up")
+        public boolean up;
+
+        @Label("Late")
+        @Description("How far past its deadline on the game clock the mole moved")
+        @Timespan(Timespan.MILLISECONDS)
+        public long late;
+    }
+
+    /**
+     * a whack being judged and scored, the duration runs from the line being read to the score changing
+     * when the listener applies it, in a pipelined game it is only the time the main thread spent on it
+     */
+    @Name("wam.Whack")
+    @Label("Whack")
+    @Category({"Whack-A-Mole", "Server"})
+    public static final class Whack extends Event
+    {
+        @Label("Game")
+        public int game;
+
+        @Label("Player")
+        public int player;
+
+        @Label("Hole")
+        public int hole;
+
+        @Label("Result")
+        @Description("hit, miss, rejected (stale or duplicate generation) or gone (player disconnected)")
+        public String result;
+
+        @Label("Pipelined")
+        public boolean pipelined;
+    }
+
+    /**
+     * a protocol sent to every player of a game
+     */
+    @Name("wam.Broadcast")
+    @Label("Broadcast")
+    @Category({"Whack-A-Mole", "Server"})
+    public static final class Broadcast extends Event
+    {
+        @Label("Game")
+        public int game;
+
+        @Label("Protocol")
+        public String protocol;
+
+        @Label("Recipients")
+        public int recipients;
+
+        @Label("Bytes")
+        @Description("Bytes written for every recipient together")
+        @DataAmount
+        public long bytes;
+    }
+
+    /**
+     * a tenth of the game clock that took too long, the clock falls behind by the difference
+     */
+    @Name("wam.TickOverrun")
+    @Label("Tick Overrun")
+    @Category({"Whack-A-Mole", "Server"})
+    @Threshold("120 ms")
+    public static final class TickOverrun extends Event
+    {
+        @Label("Game")
+        public int game;
+
+        @Label("Tick Lag")
+        @Description("How far the game clock is behind the wall clock after this tick")
+        @Timespan(Timespan.MILLISECONDS)
+        public long tickLag;
+    }
+
+    /**
+     * a player connection dropping on the server
+     */
+    @Name("wam.Disconnect")
+    @Label("Player Disconnect")
+    @Category({"Whack-A-Mole", "Server"})
+    public static final class Disconnect extends Event
+    {
+        @Label("Game")
+        public int game;
+
+        @Label("Player")
+        public int player;
+
+        @Label("Reason")
+        public String reason;
+    }
+
+    /**
+     * a players latency estimates, one for each connected player every round of PINGs
+     */
+    @Name("wam.Latency")
+    @Label("Player Latency")
+    @Category({"Whack-A-Mole", "Server"})
+    public static final class Latency extends Event
+    {
+        @Label("Game")
+        public int game;
+
+        @Label("Player")
+        public int player;
+
+        @Label("Round Trip")
+        @Description("Smoothed round trip time, -1 before the first PONG")
+        @Timespan(Timespan.MICROSECONDS)
+        public long rtt;
+
+        @Label("Jitter")
+        @Timespan(Timespan.MICROSECONDS)
+        public long jitter;
+
+        @Label("Clock Offset")
+        @Description("How far ahead the clients clock is from the servers")
+        @Timespan(Timespan.MILLISECONDS)
+        public long offset;
+
+        @Label("Samples")
+        public int samples;
+    }
+
+    /**
+     * a batch of protocols applied to the clients model and published to the view
+     */
+    @Name("wam.ClientBatch")
+    @Label("Client Batch")
+    @Category({"Whack-A-Mole", "Client"})
+    public static final class ClientBatch extends Event
+    {
+        @Label("Protocols")
+        public int protocols;
+    }
+
+    /**
+     * a whack clicked on the client, one that was not sent is a second click on the same mole
+     */
+    @Name("wam.ClientWhack")
+    @Label("Client Whack")
+    @Category({"Whack-A-Mole", "Client"})
+    public static final class ClientWhack extends Event
+    {
+        @Label("Hole")
+        public int hole;
+
+        @Label("Generation")
+        public int generation;
+
+        @Label("Sent")
+        public boolean sent;
+    }
+
+    /**
+     * the client losing its connection, the duration is the time spent getting back in
+     */
+    @Name("wam.ClientDisconnect")
+    @Label("Client Disconnect")
+    @Category({"Whack-A-Mole", "Client"})
+    public static final class ClientDisconnect extends Event
+    {
+        @Label("Reconnected")
+        public boolean reconnected;
+
+        @Label("Attempts")
+        public int attempts;
+    }
+}
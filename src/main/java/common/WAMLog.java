@@ -0,0 +1,295 @@
+package common;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous logger for the game
+ *
+ * a log call only claims a slot in a fixed size ring buffer and copies its fields into it, it never
+ * takes a lock, never blocks and never writes to the console, one background thread formats the lines
+ * and writes them out in batches
+ *
+ * the ring is a SequenceRing, if it is full the line is dropped and counted rather than slowing the game down
+ *
+ * every line can carry a game, a player and a hole as separate fields, -1 leaves a field out
+ *
+ *  -Dwam.logLevel -> DEBUG, INFO (the default), WARN or ERROR
+ *  -Dwam.log -> a file to append to instead of the console
+ *  -Dwam.logBuffer -> amount of lines the ring holds, rounded up to a power of two
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public final class WAMLog
+{
+    /**how important a line is*/
+    public enum Level {DEBUG, INFO, WARN, ERROR}
+
+    /**the -Dwam.logLevel that was asked for*/
+    private static final String LEVEL_NAME = System.getProperty("wam.logLevel", "INFO").trim().toUpperCase();
+    /**lines below this level are thrown away before they reach the ring, INFO if -Dwam.logLevel is not a level*/
+    private static final Level LEVEL = level(LEVEL_NAME);
+
+    /**the positions of the ring, the writer thread is its reader*/
+    private static final SequenceRing RING = new SequenceRing(Integer.getInteger("wam.logBuffer", 8192));
+
+    /**the fields of each slot*/
+    private static final Level[] LEVELS = new Level[RING.capacity()];
+    private static final long[] TIMES = new long[RING.capacity()];
+    private static final int[] GAMES = new int[RING.capacity()];
+    private static final int[] PLAYERS = new int[RING.capacity()];
+    private static final int[] HOLES = new int[RING.capacity()];
+    private static final String[] MESSAGES = new String[RING.capacity()];
+
+    /**every position before this one has been written out*/
+    private static volatile long written;
+    /**amount of lines thrown away because the ring was full*/
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    /**the time at the start of every line*/
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    /**where the lines go*/
+    private static final PrintStream OUT = open();
+    /**the thread writing the lines out*/
+    private static final Thread WRITER;
+
+    static
+    {
+        WRITER = new Thread(() -> WAMLog.run(), "wam-log");
+        WRITER.setDaemon(true);
+        WRITER.start();
+
+        //whatever is still in the ring is written out when the process exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> WAMLog.flush()));
+
+        if (!LEVEL.name().equals(LEVEL_NAME))
+            warn("Unknown Log Level " + LEVEL_NAME + ", Using " + LEVEL);
+    }
+
+    private WAMLog() {}
+
+    /**
+     * a level that can not be parsed must not stop every class that logs from loading
+     *
+     * @param name - the name of a level
+     * @return - the level, or INFO if there is none by that name
+     */
+    private static Level level(String name)
+    {
+        try
+        {
+            return Level.valueOf(name);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * @return - the console, or the file named by -Dwam.log
+     */
+    private static PrintStream open()
+    {
+        String file = System.getProperty("wam.log");
+        if (file == null)
+            return System.out;
+
+        try
+        {
+            return new PrintStream(new FileOutputStream(file, true), false);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Can not open log " + file + ", " + e);
+            return System.out;
+        }
+    }
+
+    /**
+     * @param level - a level
+     * @return - true if lines at the level are kept
+     */
+    public static boolean isEnabled(Level level)
+    {
+        return level.compareTo(LEVEL) >= 0;
+    }
+
+    /**
+     * puts one line in the ring, or drops it if the ring is full
+     *
+     * @param level - how important the line is
+     * @param game - the game it is about, -1 for none
+     * @param player - the player number it is about (as the players see it, from 1), -1 for none
+     * @param hole - the hole it is about, -1 for none
+     * @param message - the text of the line
+     */
+    public static void log(Level level, int game, int player, int hole, String message)
+    {
+        if (!isEnabled(level))
+            return;
+
+        long position = RING.claim();
+        if (position < 0)
+        {
+            DROPPED.incrementAndGet();
+            return;
+        }
+
+        int slot = RING.slot(position);
+        LEVELS[slot] = level;
+        TIMES[slot] = System.currentTimeMillis();
+        GAMES[slot] = game;
+        PLAYERS[slot] = player;
+        HOLES[slot] = hole;
+        MESSAGES[slot] = message;
+        RING.publish(position);
+    }
+
+    /**
+     * logs a line with no fields at DEBUG
+     *
+     * @param message - the text of the line
+     */
+    public static void debug(String message)
+    {
+        log(Level.DEBUG, -1, -1, -1, message);
+    }
+
+    /**
+     * logs a line with no fields at INFO
+     *
+     * @param message - the text of the line
+     */
+    public static void info(String message)
+    {
+        log(Level.INFO, -1, -1, -1, message);
+    }
+
+    /**
+     * logs a line with no fields at WARN
+     *
+     * @param message - the text of the line
+     */
+    public static void warn(String message)
+    {
+        log(Level.WARN, -1, -1, -1, message);
+    }
+
+    /**
+     * logs a line with no fields at ERROR
+     *
+     * @param message - the text of the line
+     */
+    public static void error(String message)
+    {
+        log(Level.ERROR, -1, -1, -1, message);
+    }
+
+    /**
+     * @return - amount of lines dropped because the ring was full
+     */
+    public static long getDropped()
+    {
+        return DROPPED.get();
+    }
+
+    /**
+     * waits up to a second for every line logged so far to be written out
+     */
+    public static void flush()
+    {
+        long target = RING.getClaimed();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+
+        while (written < target && System.nanoTime() < deadline)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * the writer loop, takes every line that is ready, writes them as one batch,
+     * and sleeps for a millisecond when there is nothing to do
+     */
+    private static void run()
+    {
+        StringBuilder batch = new StringBuilder();
+        long reported = 0;
+        ZoneId zone = ZoneId.systemDefault();
+
+        while (true)
+        {
+            long position;
+            while ((position = RING.peek()) >= 0)
+            {
+                int slot = RING.slot(position);
+                format(batch, zone, LEVELS[slot], TIMES[slot], GAMES[slot], PLAYERS[slot], HOLES[slot], MESSAGES[slot]);
+                MESSAGES[slot] = null;
+                RING.release();
+
+                if (batch.length() > 64 * 1024)
+                {
+                    write(batch);
+                    written = RING.getRead();
+                }
+            }
+
+            long dropped = DROPPED.get();
+            if (dropped != reported)
+            {
+                format(batch, zone, Level.WARN, System.currentTimeMillis(), -1, -1, -1,
+                        (dropped - reported) + " Log Lines Dropped");
+                reported = dropped;
+            }
+
+            if (batch.length() > 0)
+            {
+                write(batch);
+                written = RING.getRead();
+            }
+            else
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * adds one line to the batch
+     */
+    private static void format(StringBuilder batch, ZoneId zone, Level level, long time,
+                               int game, int player, int hole, String message)
+    {
+        TIME.formatTo(LocalTime.ofInstant(Instant.ofEpochMilli(time), zone), batch);
+        batch.append(' ').append(level);
+
+        if (game >= 0)
+            batch.append(" game=").append(game);
+        if (player >= 0)
+            batch.append(" player=").append(player);
+        if (hole >= 0)
+            batch.append(" hole=").append(hole);
+
+        batch.append(' ').append(message).append('\n');
+    }
+
+    /**
+     * writes a batch out and empties it
+     */
+    private static void write(StringBuilder batch)
+    {
+        synchronized (OUT)
+        {
+            OUT.print(batch);
+            OUT.flush();
+        }
+        batch.setLength(0);
+    }
+}
@@ -27,17 +27,22 @@ public interface WAMProtocol {
      * initially opens a {@link java.net.Socket} connection to the server.<br>
      * The dimensions of the board are sent in the request, #rows first.<br>
      * The third argument is the number of players.<br>
-     * A final, fourth argument is the player number. Players are numbered
+     * The fourth argument is the player number. Players are numbered
      * upward consecutively starting with 0 based on the time of connection.
+     * A final, fifth argument is the session token the client sends back in
+     * RESUME if its connection drops.
      *
      *  For example if there are 6 rows and 7 columns and this
-     *  is the second player of 3: "WELCOME 6 7 3 1"
+     *  is the second player of 3: "WELCOME 6 7 3 1 9f2c41d07a3be865"
      */
     public static final String WELCOME = "WELCOME";
 
     /**
      * From server: inform client that a mole has popped up.<br>
-     *     One argument: the mole number
+     *     Arguments: the mole number, the event sequence number, then the
+     *     generation of the mole, which counts its appearances in that hole.
+     *     Every mole event gets the next sequence number so clients can tell
+     *     the server which board they were looking at when they whacked.
      */
     public static final String MOLE_UP = "MOLE_UP";
 
@@ -45,7 +50,7 @@ public interface WAMProtocol {
      * From server: inform client that a mole has dropped down.
      * This message is sent even if it was whacked or if the game server
      * has pulled it down.<br>
-     *     One argument: the mole number
+     *     Arguments: the mole number, then the event sequence number.
      */
     public static final String MOLE_DOWN = "MOLE_DOWN";
 
@@ -54,7 +59,16 @@ public interface WAMProtocol {
      * (Game server must then decide if a mole was really up at that
      * location. Only then would points be awarded. If it is a miss,
      * points may be subtracted.<br>
-     *     Arguments: the mole number, the player number
+     *     Arguments: the mole number, the player number, and optionally the
+     *     sequence number of the last mole event the client had received.
+     *     With the sequence a whack on a mole that went down while the whack
+     *     was on its way can still count, within the server's lag window.
+     *     A fifth argument, the generation from the MOLE_UP that was whacked,
+     *     aims the whack at that one appearance. A whack at an appearance
+     *     that was already whacked is ignored instead of counting as a miss,
+     *     a whack at an older appearance that got away is a miss.
+     *     The player number must be the client's own, a whack as any other
+     *     player is bad protocol and the client is dropped.
      */
     public static final String WHACK = "WHACK";
 
@@ -93,4 +107,112 @@ public interface WAMProtocol {
      * displayed.
      */
     public static final String ERROR = "ERROR";
+
+    /**
+     * From client: only send mole events for a rectangular region of the board.<br>
+     *     Arguments: the top row, the left column, the number of rows and the
+     *     number of columns of the region. With no arguments the client goes
+     *     back to receiving the whole board.
+     *
+     *  For example a client showing a 20 x 30 window from row 100, column 40:
+     *  "SUBSCRIBE 100 40 20 30"
+     */
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+
+    /**
+     * From server: answer to SUBSCRIBE with the region that will be sent,
+     * clamped to the board.<br>
+     *     Arguments: top row, left column, number of rows, number of columns.
+     *     The client should put every mole in the region down, it is followed
+     *     by a MOLE_UP for every mole currently up inside the region.
+     */
+    public static final String REGION = "REGION";
+
+    /**
+     * From server: sent to every player on a schedule to measure the network.<br>
+     *     Arguments: a token the client must send back, the servers current
+     *     estimate of this clients round trip time in microseconds (-1 if
+     *     not measured yet), and how many milliseconds the game clock is
+     *     running behind the wall clock.
+     *     A lobby or gateway also PINGs the players waiting for a game, with
+     *     a token of -1, a lobby drops a player that stops answering before
+     *     the WELCOME. A client gives up on a server that sends neither a
+     *     PING nor the WELCOME for its idle timeout.
+     */
+    public static final String PING = "PING";
+
+    /**
+     * From client: answer to PING, sent as soon as the PING is read.<br>
+     *     Arguments: the token from the PING, then the clients wall clock in
+     *     milliseconds so the server can estimate the clock offset.
+     */
+    public static final String PONG = "PONG";
+
+    /**
+     * From client: the first line on a new connection from a new player, the
+     * server waits for it before the player takes a place in a game and
+     * answers with the WELCOME once the game is ready. A connection that does
+     * not send it within the server's handshake deadline is closed.<br>
+     *     Argument: the player's name, one word, which the server keeps the
+     *     high scores and ranking by. Without it the player only counts as
+     *     their session token.
+     *
+     * From gateway: the first line a gateway sends a shard for each player it
+     * routes there, everything after it belongs to the player.<br>
+     *     Arguments: the game id, the number of players in that game, the
+     *     index the player will be numbered by, starting with 0, then the name
+     *     from the player's own JOIN if they sent one.
+     *     The shard starts the game once every player of the game has joined,
+     *     a game that does not fill within the handshake deadline is dropped.
+     */
+    public static final String JOIN = "JOIN";
+
+    /**
+     * From client: the first line on a new connection from a client whose
+     * connection dropped during a game.<br>
+     *     Argument: the session token from the WELCOME.
+     *     If the player's slot is still being held the server answers with a
+     *     WELCOME for the same player number and token and a BOARD,
+     *     otherwise with an ERROR. A gateway always answers with an ERROR,
+     *     it does not know which shard the game was on.
+     */
+    public static final String RESUME = "RESUME";
+
+    /**
+     * From server: the whole board in one message, sent after every WELCOME
+     * and whenever the client asks for it.<br>
+     *     Arguments: the event sequence the board is at, the game clock in
+     *     milliseconds, the encoding (B raw bits, R run lengths, Z deflated
+     *     bits), the encoded board in base64, then the score of every player
+     *     as in SCORE. The client replaces its whole board with this one and
+     *     goes back to receiving the whole board.
+     *
+     *  For example a 3 x 3 board with only hole 4 up, at sequence 12 and 2.5
+     *  seconds in: "BOARD 12 2500 B EAA= 2 0"<br>
+     * From client: asks for a BOARD, for example after missing a mole event.
+     *     No arguments.
+     */
+    public static final String BOARD = "BOARD";
+
+    /**
+     * From client: the first line on a new connection that only wants to
+     * watch the game, sent to a game once its players are in, or to a relay.
+     * No arguments.<br>
+     *     The server answers with a WELCOME for player 0 with no session
+     *     token, then a BOARD, then every mole event, SCORE and TIME of the
+     *     game. Nothing the spectator sends after this is read.
+     *
+     *  For example: "WELCOME 6 7 3 0 -"
+     */
+    public static final String SPECTATE = "SPECTATE";
+
+    /**
+     * From server: sent to spectators on a schedule so every hop of a relay
+     * tree can tell how far behind the game it is.<br>
+     *     Arguments: the wall clock of the game server in milliseconds when it
+     *     was sent, then the game clock in milliseconds. Relays pass it on as
+     *     it is, so the lag from the game server is the receivers wall clock
+     *     minus the first argument.
+     */
+    public static final String TIME = "TIME";
 }
@@ -0,0 +1,43 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * Starts like uniform and gets faster as the game goes on,
+ * by the end moles are up and down for 40% of the time they were at the start
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class AcceleratingStrategy implements MoleStrategy
+{
+    /**how much of the time is left by the end of the game*/
+    private static final double END_SPEED = 0.4;
+
+    @Override
+    public double first(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 4, 10);
+    }
+
+    @Override
+    public double up(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 1, 2) * this.scale(game);
+    }
+
+    @Override
+    public double down(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 3, 8) * this.scale(game);
+    }
+
+    /**
+     * @return - 1 at the start of the game, falling in a straight line to END_SPEED at the end
+     */
+    private double scale(Game game)
+    {
+        double progress = Math.min(1, game.getCurrentTime() / Math.max(1, game.getGameTime()));
+        return 1 - (1 - END_SPEED) * progress;
+    }
+}
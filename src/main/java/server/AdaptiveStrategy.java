@@ -0,0 +1,54 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * Adjusts to how good the players are
+ * if they hit more than the target rate moles stay up for less time and come back sooner,
+ * if they hit less they get more time, somewhere between half and twice the uniform time
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class AdaptiveStrategy implements MoleStrategy
+{
+    /**the fraction of whacks that should hit, set in percent with -Dwam.targetHitRate*/
+    private final double target;
+
+    /**
+     * @param target - the fraction of whacks that should hit
+     */
+    public AdaptiveStrategy(double target)
+    {
+        this.target = Math.max(0.05, Math.min(0.95, target));
+    }
+
+    @Override
+    public double first(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 4, 10);
+    }
+
+    @Override
+    public double up(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 1, 2) * this.scale(game);
+    }
+
+    @Override
+    public double down(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 3, 8) * this.scale(game);
+    }
+
+    /**
+     * @return - 1 at the target hit rate, down to 0.5 when every whack hits, up to 2 when none do
+     */
+    private double scale(Game game)
+    {
+        double error = game.getHitRate() - this.target;
+        if (error > 0)
+            return 1 - 0.5 * error / (1 - this.target);
+        return 1 - error / this.target;
+    }
+}
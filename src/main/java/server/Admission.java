@@ -0,0 +1,151 @@
+package server;
+
+import common.WAMLog;
+import common.WAMProtocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control, sits between accept() and the handshake of every server socket
+ *
+ * each source address gets a token bucket of connections, and only so many connections can be in their
+ * handshake at once, a connection over either limit is sent an ERROR and closed right on the accept thread,
+ * without a thread or a read of its own, so a flood of connections costs the games that are running very little
+ *
+ * the handshake of an admitted connection has a deadline, a client that connects and never sends
+ * times out instead of holding a thread and a handshake slot forever
+ *
+ *  -Dwam.admit.burst -> connections an address can open at once (default 10)
+ *  -Dwam.admit.perSecond -> connections an address can open each second after that (default 5)
+ *  -Dwam.admit.maxPending -> connections allowed in their handshake at once (default 64)
+ *  -Dwam.handshakeTimeout -> milliseconds a connection has to finish its handshake (default 5000)
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Admission implements WAMProtocol
+{
+    /**milliseconds a connection has to finish its handshake, anything reading a handshake sets it as the timeout*/
+    public static final int DEADLINE = Integer.getInteger("wam.handshakeTimeout", 5000);
+
+    /**amount of admits between looking for addresses that have gone quiet*/
+    private static final int PRUNE = 1024;
+
+    /**what the log lines call the server socket*/
+    private final String name;
+
+    private final int burst;
+    private final double per_second;
+    private final int max_pending;
+
+    /**the bucket of each address, only the accept thread touches it*/
+    private final HashMap<InetAddress, TokenBucket> buckets;
+    /**connections admitted that have not finished their handshake*/
+    private final AtomicInteger pending;
+
+    /**amount of connections turned away, and admits since the buckets were last pruned*/
+    private long rejected;
+    private int admits;
+
+    /**
+     * @param name - what the log lines call the server socket
+     */
+    public Admission(String name)
+    {
+        this(name, Integer.getInteger("wam.admit.burst", 10), Integer.getInteger("wam.admit.perSecond", 5));
+    }
+
+    /**
+     * for a server socket whose connections all come from a few addresses, like a shard behind its gateways
+     *
+     * @param name - what the log lines call the server socket
+     * @param burst - connections an address can open at once
+     * @param per_second - connections an address can open each second after that
+     */
+    public Admission(String name, int burst, double per_second)
+    {
+        this.name = name;
+        this.burst = burst;
+        this.per_second = per_second;
+        this.max_pending = Integer.getInteger("wam.admit.maxPending", 64);
+
+        this.buckets = new HashMap<>();
+        this.pending = new AtomicInteger();
+    }
+
+    /**
+     * decides if a connection that was just accepted can go on to its handshake,
+     * only ever called by the thread accepting the connections
+     *
+     * an admitted connection counts as pending until done() is called
+     *
+     * @param socket - the new connection
+     * @return - true if it was admitted, false if it was sent an ERROR and closed
+     */
+    public boolean admit(Socket socket)
+    {
+        if (++this.admits % PRUNE == 0)
+            this.buckets.values().removeIf((TokenBucket bucket) -> bucket.isFull());
+
+        InetAddress address = socket.getInetAddress();
+        TokenBucket bucket = this.buckets.computeIfAbsent(address,
+                (InetAddress a) -> new TokenBucket(this.burst, this.per_second));
+
+        if (!bucket.tryTake())
+            return this.reject(socket, "Too Many Connections");
+
+        if (this.pending.incrementAndGet() > this.max_pending)
+        {
+            this.pending.decrementAndGet();
+            return this.reject(socket, "Server Busy");
+        }
+
+        return true;
+    }
+
+    /**
+     * called once the handshake of an admitted connection is over, whether it worked or not
+     */
+    public void done()
+    {
+        this.pending.decrementAndGet();
+    }
+
+    /**
+     * sends the ERROR and closes the connection,
+     * the ERROR fits in the sockets buffer so this never waits on the client
+     */
+    private boolean reject(Socket socket, String reason)
+    {
+        //the first one and then every thousandth, so a flood does not flood the log too
+        if (this.rejected++ % 1000 == 0)
+            WAMLog.warn(this.name + " Rejected " + socket.getInetAddress().getHostAddress() +
+                    ", " + reason + " (" + this.rejected + " rejected)");
+
+        try
+        {
+            OutputStream out = socket.getOutputStream();
+            out.write((ERROR + " " + reason + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        catch (IOException ignored) {}
+
+        close(socket);
+        return false;
+    }
+
+    private static void close(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException ignored) {}
+    }
+}
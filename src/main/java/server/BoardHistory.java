@@ -0,0 +1,205 @@
+package server;
+
+/**
+ * A bounded history of the last few ups and downs of every hole,
+ * used to judge a whack against the board the player was actually looking at
+ *
+ * each hole has a small ring of transitions (event sequence, time and state) stored in flat
+ * primitive arrays, so recording a transition or checking a whack never allocates and only
+ * looks at a fixed amount of entries no matter how big the board is
+ *
+ * every appearance of a mole also gets the next generation of its hole, a whack that names the
+ * generation it was aimed at is judged by looking at the newest two transitions only
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class BoardHistory
+{
+    /**what came of a whack aimed at a generation*/
+    public static final int MISS = 0, HIT = 1, REPEAT = 2;
+
+    /**flag for an entry where the mole came up*/
+    private static final byte UP = 1;
+    /**flag for an entry whose appearance has already been whacked by someone*/
+    private static final byte CLAIMED = 2;
+
+    /**amount of transitions kept for each hole*/
+    private final int depth;
+
+    /**the event sequence of each transition, hole * depth + slot*/
+    private final int[] sequence;
+    /**the time of each transition in milliseconds since the game started*/
+    private final int[] time;
+    /**UP and CLAIMED flags of each transition*/
+    private final byte[] flags;
+
+    /**the slot of the newest transition of each hole*/
+    private final int[] head;
+    /**amount of transitions recorded for each hole, up to depth*/
+    private final int[] length;
+    /**the generation of the newest appearance of each hole, 0 before the first one*/
+    private final int[] generation;
+
+    /**
+     * creates an empty history
+     *
+     * @param holes - amount of holes on the board
+     * @param depth - amount of transitions to keep for each hole
+     */
+    public BoardHistory(int holes, int depth)
+    {
+        this.depth = Math.max(2, depth);
+
+        this.sequence = new int[holes * this.depth];
+        this.time = new int[holes * this.depth];
+        this.flags = new byte[holes * this.depth];
+
+        this.head = new int[holes];
+        this.length = new int[holes];
+        this.generation = new int[holes];
+    }
+
+    /**
+     * records a hole moving up or down, overwriting its oldest transition
+     *
+     * @param hole - the hole that moved
+     * @param seq - the event sequence sent with the move
+     * @param now - milliseconds since the game started
+     * @param up - true if the mole came up
+     */
+    public synchronized void record(int hole, int seq, int now, boolean up)
+    {
+        int slot = (this.head[hole] + 1) % this.depth;
+        int index = hole * this.depth + slot;
+
+        this.sequence[index] = seq;
+        this.time[index] = now;
+        this.flags[index] = up ? UP : 0;
+
+        this.head[hole] = slot;
+        if (this.length[hole] < this.depth)
+            this.length[hole]++;
+        if (up)
+            this.generation[hole]++;
+    }
+
+    /**
+     * @param hole - a hole
+     * @return - the generation of the newest appearance of the hole, sent with its MOLE_UP
+     */
+    public synchronized int generation(int hole)
+    {
+        return this.generation[hole];
+    }
+
+    /**
+     * decides if a whack aimed at one appearance of a mole hits, marking it as taken if it does
+     *
+     * only the newest appearance can be hit, while it is up or within window milliseconds of going down,
+     * a whack at an appearance someone already whacked is a REPEAT, as far back as the ring remembers,
+     * anything else (an older appearance that got away, or one that has not come up yet) is a MISS
+     *
+     * @param hole - the hole that was whacked
+     * @param gen - the generation from the MOLE_UP the player whacked
+     * @param now - milliseconds since the game started
+     * @param window - how far back in milliseconds a whack is allowed to reach
+     * @return - HIT, MISS or REPEAT
+     */
+    public synchronized int claimGeneration(int hole, int gen, int now, int window)
+    {
+        if (this.length[hole] == 0 || gen <= 0 || gen > this.generation[hole])
+            return MISS;
+
+        int newest = hole * this.depth + this.head[hole];
+
+        if (gen < this.generation[hole])
+        {
+            //walk back through the ring counting appearances down to the one that was whacked
+            int appearance = this.generation[hole];
+            for (int i = 0; i < this.length[hole]; i++)
+            {
+                int index = hole * this.depth + ((this.head[hole] - i + this.depth) % this.depth);
+                if ((this.flags[index] & UP) == 0)
+                    continue;
+
+                if (appearance == gen)
+                    return (this.flags[index] & CLAIMED) != 0 ? REPEAT : MISS;
+                appearance--;
+            }
+
+            return MISS;
+        }
+
+        int up = newest;
+        boolean gone = (this.flags[newest] & UP) == 0;
+
+        //the mole has gone down since, the appearance is the transition before
+        if (gone)
+        {
+            if (this.length[hole] < 2)
+                return MISS;
+            up = hole * this.depth + ((this.head[hole] - 1 + this.depth) % this.depth);
+        }
+
+        if ((this.flags[up] & CLAIMED) != 0)
+            return REPEAT;
+        if ((this.flags[up] & UP) == 0 || (gone && now - this.time[newest] > window))
+            return MISS;
+
+        this.flags[up] |= CLAIMED;
+        return HIT;
+    }
+
+    /**
+     * decides if a whack hits, and if it does marks the appearance as taken so it only pays once
+     *
+     * a whack hits if the mole is up right now, or if it was up in the last event the player had seen
+     * and went down less than window milliseconds ago, meaning it went down while the whack was in transit
+     *
+     * @param hole - the hole that was whacked
+     * @param seq - the last event sequence the player had seen, negative if the client did not send one
+     * @param now - milliseconds since the game started
+     * @param window - how far back in milliseconds a whack is allowed to reach
+     * @return - true if the whack hit a mole nobody had whacked yet
+     */
+    public synchronized boolean claim(int hole, int seq, int now, int window)
+    {
+        if (this.length[hole] == 0)
+            return false;
+
+        //the mole is up right now
+        int newest = hole * this.depth + this.head[hole];
+        if (this.flags[newest] == UP)
+        {
+            this.flags[newest] |= CLAIMED;
+            return true;
+        }
+
+        if (seq < 0)
+            return false;
+
+        //walk back from the newest transition to the one the player was looking at
+        int after = -1;
+        for (int i = 0; i < this.length[hole]; i++)
+        {
+            int index = hole * this.depth + ((this.head[hole] - i + this.depth) % this.depth);
+
+            if (this.sequence[index] <= seq)
+            {
+                //it has to be an unclaimed appearance that went down within the window
+                if (after >= 0 && this.flags[index] == UP && now - this.time[after] <= window)
+                {
+                    this.flags[index] |= CLAIMED;
+                    return true;
+                }
+                return false;
+            }
+
+            after = index;
+        }
+
+        //the players view is older than anything kept
+        return false;
+    }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import common.SequenceRing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue of decoded player commands, written by every listener of a game and read by one thread
+ *
+ * it is a SequenceRing like the log uses, so commands are applied in the order the listeners claimed them
+ *
+ * a command is a type, a player and up to four ints, kept in flat arrays so nothing is allocated
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class CommandRing
+{
+    /**what the game thread does with each command*/
+    public interface Consumer
+    {
+        void apply(int type, int player, int a, int b, int c, int d);
+    }
+
+    /**the positions of the ring, the game thread is its reader*/
+    private final SequenceRing ring;
+    /**the fields of each slot*/
+    private final int[] types, players, as, bs, cs, ds;
+
+    /**set once the game thread stops reading, so a listener never waits on a ring nobody will drain*/
+    private volatile boolean closed;
+
+    /**
+     * @param size - amount of commands the ring holds, rounded up to a power of two
+     */
+    public CommandRing(int size)
+    {
+        this.ring = new SequenceRing(size);
+
+        this.types = new int[this.ring.capacity()];
+        this.players = new int[this.ring.capacity()];
+        this.as = new int[this.ring.capacity()];
+        this.bs = new int[this.ring.capacity()];
+        this.cs = new int[this.ring.capacity()];
+        this.ds = new int[this.ring.capacity()];
+    }
+
+    /**
+     * adds a command, waiting while the ring is full
+     * a full ring holds the listener back, so a player sending faster than the game can keep up
+     * slows down on their own connection and nothing is lost while the game is on
+     *
+     * @param type - what the command is
+     * @param player - the player index it is for
+     * @return - false if the ring was closed and the command was dropped
+     */
+    public boolean put(int type, int player, int a, int b, int c, int d)
+    {
+        long position;
+        while ((position = this.ring.claim()) < 0)
+        {
+            if (this.closed)
+                return false;
+
+            //the game thread has not caught up yet
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+
+        int slot = this.ring.slot(position);
+        this.types[slot] = type;
+        this.players[slot] = player;
+        this.as[slot] = a;
+        this.bs[slot] = b;
+        this.cs[slot] = c;
+        this.ds[slot] = d;
+        this.ring.publish(position);
+        return !this.closed;
+    }
+
+    /**
+     * called by the game thread when it stops reading, any listener waiting on a full ring gives up
+     */
+    public void close()
+    {
+        this.closed = true;
+    }
+
+    /**
+     * applies every command that is ready, in order, only ever called by the game thread
+     *
+     * @param consumer - what to do with each command
+     * @return - amount of commands applied
+     */
+    public int drain(Consumer consumer)
+    {
+        int count = 0;
+
+        long position;
+        while ((position = this.ring.peek()) >= 0)
+        {
+            int slot = this.ring.slot(position);
+            consumer.apply(this.types[slot], this.players[slot],
+                    this.as[slot], this.bs[slot], this.cs[slot], this.ds[slot]);
+
+            this.ring.release();
+            count++;
+        }
+
+        return count;
+    }
+}
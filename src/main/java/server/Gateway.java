@@ -0,0 +1,392 @@
+package server;
+
+import common.WAMLog;
+import common.WAMProtocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Whack-A-Mole gateway
+ * the one address clients connect to in front of several shard processes
+ *
+ * players are grouped into games as their JOINs come in, each game gets the next game id and goes to
+ * the shard running the fewest games, then every player is connected through to that shard and
+ * the bytes are copied both ways without being read, so the clients never know the shard is there
+ *
+ * everything can run on one machine, start a few shards on different ports and point the gateway at them
+ *
+ * the players waiting for the rest of their game are PINGed each -Dwam.pingInterval like a lobby queue, so a client
+ * waiting for its WELCOME knows the gateway is still there, the answers go through to the shard with the rest of
+ * the bytes, where a game ignores them, and a player the PING can not be written to leaves the group
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Gateway implements WAMProtocol
+{
+    /**size of the buffer each pump copies through*/
+    private static final int BUFFER = 8192;
+
+    /**the server socket clients connect to*/
+    private final ServerSocket server;
+    /**the amount of players in each game*/
+    private final int maxPlayers;
+    /**the shards and how loaded they are*/
+    private final ShardRegistry shards;
+    /**runs the pumps*/
+    private final ExecutorService pool;
+    /**limits how fast each address can connect*/
+    private final Admission admission;
+
+    /**the players waiting for the rest of their game, only touched while holding the gateway lock*/
+    private ArrayList<Socket> group;
+    /**the name each waiting player sent in their JOIN, null for one who sent none*/
+    private ArrayList<String> names;
+    /**the id of the last game routed*/
+    private int games;
+    /**milliseconds between each PING to the waiting players, set with -Dwam.pingInterval*/
+    private final int ping_interval;
+
+    /**
+     * creates the gateway
+     *
+     * @param port - the port clients connect to
+     * @param player_number - the amount of players in each game
+     * @param shards - each shard as host:port
+     * @throws IOException - if the server socket can not be opened
+     */
+    public Gateway(int port, int player_number, String[] shards) throws IOException
+    {
+        this.server = new ServerSocket(port);
+        this.maxPlayers = player_number;
+        this.shards = new ShardRegistry(shards);
+        this.pool = Executors.newCachedThreadPool();
+        this.admission = new Admission("Gateway");
+        this.group = new ArrayList<>();
+        this.names = new ArrayList<>();
+        this.ping_interval = Integer.getInteger("wam.pingInterval", 1000);
+    }
+
+    /**
+     * accepts clients forever, each one admitted has its JOIN read on the pool
+     *
+     * @throws IOException - if the server socket fails
+     */
+    public void runGateway() throws IOException
+    {
+        Thread heartbeat = new Thread(() -> this.runHeartbeat());
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+
+        try
+        {
+            while (true)
+            {
+                Socket client = this.server.accept();
+                if (!this.admission.admit(client))
+                    continue;
+
+                this.pool.execute(() ->
+                {
+                    try
+                    {
+                        this.handshake(client);
+                    }
+                    finally
+                    {
+                        this.admission.done();
+                    }
+                });
+            }
+        }
+        finally
+        {
+            this.pool.shutdown();
+            this.server.close();
+        }
+    }
+
+    /**
+     * reads the first line of a new client within the handshake deadline,
+     * a JOIN adds them to the next group, anything else is sent an ERROR,
+     * a RESUME can not be routed since the gateway does not know which shard the game was on
+     *
+     * @param client - the new connection
+     */
+    private void handshake(Socket client)
+    {
+        try
+        {
+            client.setTcpNoDelay(true);
+            client.setSoTimeout(Admission.DEADLINE);
+            String[] in = WAMServer.readLine(client.getInputStream()).split(" ");
+            client.setSoTimeout(0);
+
+            if (!in[0].equals(JOIN))
+            {
+                String reason = in[0].equals(RESUME) ? "Resume Not Supported Through Gateway" : "Expected JOIN";
+                client.getOutputStream().write((ERROR + " " + reason + "\n").getBytes(StandardCharsets.US_ASCII));
+                close(client);
+                return;
+            }
+
+            this.add(client, in.length > 1 ? in[1] : null);
+        }
+        catch (IOException e)
+        {
+            WAMLog.warn("Gateway Handshake Failed " + e);
+            close(client);
+        }
+    }
+
+    /**
+     * adds a client that has joined to the next group, routing the group once it is full
+     *
+     * @param client - the clients connection
+     * @param name - the name from their JOIN, null if they sent none
+     */
+    private synchronized void add(Socket client, String name)
+    {
+        this.group.add(client);
+        this.names.add(name);
+
+        if (this.group.size() == this.maxPlayers)
+        {
+            this.route(this.group, this.names);
+            this.group = new ArrayList<>();
+            this.names = new ArrayList<>();
+        }
+    }
+
+    /**
+     * the heartbeat loop, PINGs the waiting players each ping interval
+     */
+    private void runHeartbeat()
+    {
+        try
+        {
+            while (true)
+            {
+                Thread.sleep(this.ping_interval);
+                this.ping();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            WAMLog.error("Heartbeat Interrupted " + e);
+        }
+    }
+
+    /**
+     * sends each waiting player a PING, the token is -1 so the game they end up in does not measure the answer,
+     * a player it can not be sent to has gone and leaves the group
+     */
+    private synchronized void ping()
+    {
+        byte[] ping = (PING + " -1 0 0\n").getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = this.group.size() - 1; i >= 0; i--)
+        {
+            try
+            {
+                this.group.get(i).getOutputStream().write(ping);
+            }
+            catch (IOException e)
+            {
+                WAMLog.info("Waiting Player Dropped, " + e.getMessage());
+                close(this.group.remove(i));
+                this.names.remove(i);
+            }
+        }
+    }
+
+    /**
+     * sends a full group to the least loaded shard as one game
+     *
+     * @param group - the clients in the order they joined, the order they will be numbered
+     * @param names - the name each client sent in their JOIN, in the same order
+     */
+    private void route(ArrayList<Socket> group, ArrayList<String> names)
+    {
+        int game = ++this.games;
+        int shard = this.shards.assign();
+        Socket[] clients = group.toArray(new Socket[0]);
+        String[] identities = names.toArray(new String[0]);
+
+        this.pool.execute(() -> this.connect(clients, identities, game, shard));
+
+        WAMLog.log(WAMLog.Level.INFO, game, -1, -1, "-> Shard " + shard);
+        for (int i = 0; i < this.shards.size(); i++)
+            WAMLog.log(WAMLog.Level.INFO, game, -1, -1, this.shards.report(i));
+    }
+
+    /**
+     * connects every player of a game through to its shard, each JOIN names the players number
+     * and passes on the name the player joined with, then starts copying in both directions
+     *
+     * if any of them can not be connected the whole game is called off, every client is sent an ERROR
+     * and closed, and the shard lets go of the players it already has once its forming deadline passes
+     *
+     * @param clients - the clients connections in the order they will be numbered
+     * @param names - the name each client joined with, null for one who sent none
+     * @param game - the game id
+     * @param shard - the shard index
+     */
+    private void connect(Socket[] clients, String[] names, int game, int shard)
+    {
+        Socket[] backends = new Socket[clients.length];
+
+        try
+        {
+            for (int i = 0; i < clients.length; i++)
+            {
+                long start = System.nanoTime();
+
+                backends[i] = new Socket();
+                backends[i].connect(new InetSocketAddress(this.shards.getHost(shard), this.shards.getPort(shard)),
+                        Admission.DEADLINE);
+                backends[i].setTcpNoDelay(true);
+                backends[i].getOutputStream().write((JOIN + " " + game + " " + clients.length + " " + i
+                        + (names[i] != null ? " " + names[i] : "") + "\n").getBytes(StandardCharsets.US_ASCII));
+
+                this.shards.recordJoin(shard, System.nanoTime() - start);
+            }
+        }
+        catch (IOException e)
+        {
+            WAMLog.log(WAMLog.Level.WARN, game, -1, -1, "Shard " + shard + " " + e + ", Game Called Off");
+
+            for (int i = 0; i < clients.length; i++)
+            {
+                try
+                {
+                    clients[i].getOutputStream().write((ERROR + " Game Unavailable\n").getBytes(StandardCharsets.US_ASCII));
+                }
+                catch (IOException ignored) {}
+
+                close(clients[i]);
+                if (backends[i] != null)
+                    close(backends[i]);
+            }
+
+            this.shards.finish(shard);
+            return;
+        }
+
+        //the game is over for this shard once every connection has closed
+        AtomicInteger open = new AtomicInteger(clients.length);
+
+        for (int i = 0; i < clients.length; i++)
+        {
+            Socket client = clients[i];
+            Socket backend = backends[i];
+
+            //whichever side closes first closes the other, the second pump to stop reports it
+            AtomicInteger pumps = new AtomicInteger(2);
+            Runnable done = () ->
+            {
+                close(client);
+                close(backend);
+                if (pumps.decrementAndGet() == 0 && open.decrementAndGet() == 0)
+                    this.shards.finish(shard);
+            };
+
+            this.pool.execute(() -> pump(client, backend, done));
+            this.pool.execute(() -> pump(backend, client, done));
+        }
+    }
+
+    /**
+     * copies bytes from one socket to another until either closes
+     *
+     * @param from - where the bytes come from
+     * @param to - where the bytes go
+     * @param done - called when the copying stops
+     */
+    private static void pump(Socket from, Socket to, Runnable done)
+    {
+        byte[] buffer = new byte[BUFFER];
+
+        try
+        {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, read);
+            }
+        }
+        catch (IOException ignored)
+        {
+            //either side closing is the normal way for a game to end
+        }
+        finally
+        {
+            done.run();
+        }
+    }
+
+    /**
+     * closes a socket, ignoring any errors
+     *
+     * @param socket - the socket to close
+     */
+    private static void close(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException ignored) {}
+    }
+
+    /**
+     * creates the gateway and routes games to the shards
+     *
+     * @param args - defines the port, the players per game, then one or more shards as host:port
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 3)
+        {
+            System.out.println("Missing Command Line Arguments");
+            System.exit(-1);
+        }
+        else
+        {
+            try
+            {
+                String[] shards = new String[args.length - 2];
+                System.arraycopy(args, 2, shards, 0, shards.length);
+
+                Gateway gateway = new Gateway(
+                        Integer.parseInt(args[0]),
+                        Integer.parseInt(args[1]),
+                        shards);
+                gateway.runGateway();
+            }
+            catch (IOException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+            catch (NumberFormatException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+        }
+    }
+}
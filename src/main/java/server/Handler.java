@@ -1,16 +1,21 @@
 package server;
 
+import common.WAMEvents;
 import common.WAMProtocol;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * Handler class the handles one mole,
- * Uses the servers clock to randomly pull the mole up or down
+ * Uses the servers clock to pull the mole up or down at the times the servers strategy picks
  * one launched for each mole so they all go on their own BUT are synchronized between players
  *
  * @author Christopher Asbrock
  * @author Shakeel Farooq
  */
-public class Handler extends Thread implements WAMProtocol
+public class Handler implements Runnable, WAMProtocol
 {
     /** The mole spot */
     private int mole;
@@ -40,49 +45,69 @@ public class Handler extends Thread implements WAMProtocol
     @Override
     public void run()
     {
-        double time = server.random_range(4,10);
-        int upDown = 0;
+        MoleStrategy strategy = server.getStrategy();
+
+        //a resumed game carries on from where each mole was
+        double time = server.isResumed() ? server.getDeadlines()[mole]
+                : strategy.first(mole, server, ThreadLocalRandom.current());
+        int upDown = server.getSpots().get(mole) ? 1 : 0;
+        server.getDeadlines()[mole] = (float)time;
         int curr = 0;
 
         while (true)
         {
-            System.out.flush();
             if (server.game_over)
                 break;
 
             if (server.go)
             {
-                if (server.getCurrentTime() > time || server.getWhacked()[mole])
+                if (server.getCurrentTime() > time || server.getWhacked().get(mole))
                 {
+                    WAMEvents.Mole event = new WAMEvents.Mole();
+                    event.begin();
+
                     switch(upDown)
                     {
                         //mole is up
                         case 0:
-                            server.getSpots()[mole] = true;
-                            server.sendProtocol(MOLE_UP + " " + mole);
+                            server.moveMole(mole, true);
                             break;
 
                         //mole is down
                         case 1:
-                            server.getSpots()[mole] = false;
-                            server.sendProtocol(MOLE_DOWN + " " + mole);
+                            server.moveMole(mole, false);
                             break;
                     }
 
+                    if (event.shouldCommit())
+                    {
+                        event.game = server.getGame();
+                        event.hole = mole;
+                        event.up = upDown == 0;
+                        //a whacked mole goes down before its deadline, that is not late
+                        event.late = Math.max(0, (long)((server.getCurrentTime() - time) * 1000));
+                        event.commit();
+                    }
+
                     //If the mole is up, wait for some time
                     if (upDown == 0)
-                        time = server.getCurrentTime() + (server.random_range(1,2));
+                        time = server.getCurrentTime() + strategy.up(mole, server, ThreadLocalRandom.current());
 
                     //If the mole is down, wait for some time (longer)
                     else
-                        time = server.getCurrentTime() + (server.random_range(3,8));
+                        time = server.getCurrentTime() + strategy.down(mole, server, ThreadLocalRandom.current());
+
+                    server.getDeadlines()[mole] = (float)time;
 
                     //switch between mole up and mole down
                     upDown = upDown ^ 1;
-                    server.getWhacked()[mole] = false;
+                    server.getWhacked().set(mole, false);
 
                 }
             }
+
+            //the clock moves in tenths, looking every millisecond is plenty and leaves the cores to the listeners
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
         }
     }
 }
@@ -0,0 +1,451 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An all time high score store kept on disk
+ *
+ * every players result from every game is appended to a log file of fixed size records,
+ * and a memory mapped hash table keyed by the player keeps their best score, total and amount of games,
+ * so looking a player up is one probe into the map and never reads the history into the heap
+ *
+ * the index remembers how much of the log it has seen, so after a crash only the end of the log is
+ * read again, if the index is missing or damaged it is rebuilt from the whole log
+ *
+ * the index is marked dirty and forced to disk before any slot changes, and only once the slots are on disk
+ * is the amount of log it has seen written and the mark cleared, so an index left dirty by a crash is never
+ * trusted, growing builds the bigger index under a temporary name and moves it into place once it is complete
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class HighScoreStore implements Closeable
+{
+    /**one players totals as found in the index*/
+    public static class Record
+    {
+        /**the best score in a single game*/
+        public final int best;
+        /**amount of games played*/
+        public final int games;
+        /**amount of games won or tied for the win*/
+        public final int wins;
+        /**every score added together*/
+        public final long total;
+
+        private Record(int best, int games, int wins, long total)
+        {
+            this.best = best;
+            this.games = games;
+            this.wins = wins;
+            this.total = total;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "best " + this.best + ", " + this.games + " games, " + this.wins + " wins, total " + this.total;
+        }
+    }
+
+    /**result codes written to the log*/
+    public static final int LOST = 0, WON = 1, TIED = 2;
+
+    /**size of a log record, key, time, score and result*/
+    private static final int LOG_RECORD = 24;
+    /**size of an index slot, key, best, games, wins, pad and total*/
+    private static final int SLOT = 32;
+    /**size of the index header, magic, capacity, count, dirty mark and how much of the log it has seen*/
+    private static final int HEADER = 32;
+    /**marks a file as a high score index*/
+    private static final int MAGIC = 0x57414D48;
+    /**amount of slots a new index starts with*/
+    private static final int START_CAPACITY = 1 << 16;
+
+    /**the directory the files are kept in*/
+    private final Path dir;
+    /**amount of slots a new index starts with*/
+    private final int start_capacity;
+    /**the log of every result*/
+    private final FileChannel log;
+
+    /**the mapped index, replaced when it grows*/
+    private MappedByteBuffer index;
+    /**amount of slots in the index, always a power of two*/
+    private int capacity;
+    /**amount of players in the index*/
+    private int count;
+
+    /**
+     * opens the store, creating it if needed and catching the index up with the log
+     *
+     * @param dir - the directory to keep the files in
+     * @throws IOException - if the files can not be opened
+     */
+    public HighScoreStore(Path dir) throws IOException
+    {
+        this(dir, START_CAPACITY);
+    }
+
+    /**
+     * opens the store with a given size for a new index
+     *
+     * @param dir - the directory to keep the files in
+     * @param start_capacity - amount of slots a new index starts with, a power of two
+     * @throws IOException - if the files can not be opened
+     */
+    HighScoreStore(Path dir, int start_capacity) throws IOException
+    {
+        this.dir = dir;
+        this.start_capacity = start_capacity;
+        Files.createDirectories(dir);
+
+        this.log = FileChannel.open(dir.resolve("scores.log"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        //a record cut off by a crash is thrown away
+        long length = this.log.size() - (this.log.size() % LOG_RECORD);
+        this.log.truncate(length);
+
+        long covered = this.openIndex();
+        if (covered > length)
+        {
+            //the index is ahead of the log, it can not be trusted
+            this.install(this.newIndex(this.start_capacity), this.start_capacity, 0);
+            covered = 0;
+        }
+
+        this.replay(covered, length);
+    }
+
+    /**
+     * adds the result of one game for one player
+     *
+     * @param player - who the player is
+     * @param score - their final score
+     * @param result - LOST, WON or TIED
+     * @throws IOException - if the log can not be written
+     */
+    public synchronized void record(String player, int score, int result) throws IOException
+    {
+        long key = key(player);
+
+        ByteBuffer record = ByteBuffer.allocate(LOG_RECORD);
+        record.putLong(key).putLong(System.currentTimeMillis()).putInt(score).putInt(result).flip();
+
+        long end = this.log.size();
+        while (record.hasRemaining())
+            this.log.write(record, end + record.position());
+
+        this.begin();
+        this.apply(key, score, result);
+        this.commit(end + LOG_RECORD);
+    }
+
+    /**
+     * looks a player up
+     *
+     * @param player - who the player is
+     * @return - the players totals, or null if they have never finished a game
+     */
+    public synchronized Record lookup(String player)
+    {
+        int slot = this.find(key(player));
+        if (this.index.getLong(slot) == 0)
+            return null;
+
+        return new Record(this.index.getInt(slot + 8), this.index.getInt(slot + 12),
+                this.index.getInt(slot + 16), this.index.getLong(slot + 24));
+    }
+
+    /**
+     * @return - amount of players in the store
+     */
+    public synchronized int size()
+    {
+        return this.count;
+    }
+
+    /**
+     * writes the index out and closes the log
+     *
+     * @throws IOException - if the log can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        this.index.force();
+        this.log.force(true);
+        this.log.close();
+    }
+
+    /**
+     * maps the index file if there is a good one that was left clean
+     *
+     * @return - how much of the log the index has seen, 0 if a new index was made
+     * @throws IOException - if the index can not be opened
+     */
+    private long openIndex() throws IOException
+    {
+        Path file = this.dir.resolve("scores.idx");
+
+        //a crash while growing can leave a half built index behind
+        Files.deleteIfExists(this.dir.resolve("scores.idx.tmp"));
+
+        if (Files.exists(file) && Files.size(file) >= HEADER)
+        {
+            this.index = map(file);
+            int capacity = this.index.getInt(4);
+
+            if (this.index.getInt(0) == MAGIC && this.index.getInt(12) == 0 && Integer.bitCount(capacity) == 1
+                    && this.index.capacity() == HEADER + (long)capacity * SLOT)
+            {
+                this.capacity = capacity;
+                this.count = this.index.getInt(8);
+                return this.index.getLong(16);
+            }
+        }
+
+        this.install(this.newIndex(this.start_capacity), this.start_capacity, 0);
+        return 0;
+    }
+
+    /**
+     * makes a new empty index under a temporary name, it is marked dirty until the first commit
+     *
+     * @param capacity - amount of slots, a power of two
+     * @return - the mapped index
+     * @throws IOException - if the index can not be written
+     */
+    private MappedByteBuffer newIndex(int capacity) throws IOException
+    {
+        Path temp = this.dir.resolve("scores.idx.tmp");
+        Files.deleteIfExists(temp);
+
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.allocate(1), HEADER + (long)capacity * SLOT - 1);
+        }
+
+        MappedByteBuffer fresh = map(temp);
+        fresh.putInt(0, MAGIC);
+        fresh.putInt(4, capacity);
+        fresh.putInt(8, 0);
+        fresh.putInt(12, 1);
+        fresh.putLong(16, 0);
+        return fresh;
+    }
+
+    /**
+     * forces a complete index made by newIndex to disk, moves it into place and starts using it
+     *
+     * @param fresh - the new index
+     * @param capacity - its amount of slots
+     * @param count - its amount of players
+     * @throws IOException - if the index can not be moved
+     */
+    private void install(MappedByteBuffer fresh, int capacity, int count) throws IOException
+    {
+        fresh.force();
+        Files.move(this.dir.resolve("scores.idx.tmp"), this.dir.resolve("scores.idx"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        this.index = fresh;
+        this.capacity = capacity;
+        this.count = count;
+    }
+
+    /**
+     * marks the index dirty before its slots change
+     */
+    private void begin()
+    {
+        this.index.putInt(12, 1);
+        this.index.force();
+    }
+
+    /**
+     * forces the changed slots to disk, then writes how much of the log they cover and clears the mark
+     *
+     * @param covered - the end of the log the index has now seen
+     */
+    private void commit(long covered)
+    {
+        this.index.force();
+        this.index.putLong(16, covered);
+        this.index.putInt(12, 0);
+        this.index.force();
+    }
+
+    /**
+     * maps an index file for reading and writing
+     */
+    private static MappedByteBuffer map(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    /**
+     * adds part of the log to the index, a large buffer at a time
+     *
+     * @param from - the first byte of the log to read
+     * @param to - the end of the log
+     * @throws IOException - if the log can not be read
+     */
+    private void replay(long from, long to) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(LOG_RECORD * 4096);
+        long position = from;
+
+        this.begin();
+        while (position < to)
+        {
+            buffer.clear();
+            buffer.limit((int)Math.min(buffer.capacity(), to - position));
+
+            while (buffer.hasRemaining())
+                this.log.read(buffer, position + buffer.position());
+
+            buffer.flip();
+            while (buffer.remaining() >= LOG_RECORD)
+            {
+                long key = buffer.getLong();
+                buffer.getLong();
+                int score = buffer.getInt();
+                int result = buffer.getInt();
+                this.apply(key, score, result);
+            }
+
+            position += buffer.limit();
+        }
+
+        this.commit(to);
+    }
+
+    /**
+     * adds one result to a players slot, growing the index when it gets too full
+     */
+    private void apply(long key, int score, int result)
+    {
+        int slot = this.find(key);
+
+        if (this.index.getLong(slot) == 0)
+        {
+            if ((this.count + 1) * 10L > this.capacity * 7L)
+            {
+                this.grow();
+                slot = this.find(key);
+            }
+
+            this.index.putLong(slot, key);
+            this.index.putInt(slot + 8, score);
+            this.count++;
+            this.index.putInt(8, this.count);
+        }
+
+        this.index.putInt(slot + 8, Math.max(this.index.getInt(slot + 8), score));
+        this.index.putInt(slot + 12, this.index.getInt(slot + 12) + 1);
+        this.index.putInt(slot + 16, this.index.getInt(slot + 16) + (result != LOST ? 1 : 0));
+        this.index.putLong(slot + 24, this.index.getLong(slot + 24) + score);
+    }
+
+    /**
+     * doubles the index, copying every slot into a new file that only replaces the old one once it is complete,
+     * it stays dirty like the old one until the change that made it grow is committed
+     */
+    private void grow()
+    {
+        int capacity = this.capacity * 2;
+
+        try
+        {
+            MappedByteBuffer fresh = this.newIndex(capacity);
+
+            for (int i = 0; i < this.capacity; i++)
+            {
+                int from = HEADER + i * SLOT;
+                long key = this.index.getLong(from);
+                if (key == 0)
+                    continue;
+
+                int to = find(fresh, capacity, key);
+                for (int b = 0; b < SLOT; b += 8)
+                    fresh.putLong(to + b, this.index.getLong(from + b));
+            }
+
+            fresh.putInt(8, this.count);
+            fresh.putLong(16, this.index.getLong(16));
+            this.install(fresh, capacity, this.count);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not grow the high score index", e);
+        }
+    }
+
+    /**
+     * finds a keys slot in this index
+     *
+     * @return - the byte offset of the slot in the index
+     */
+    private int find(long key)
+    {
+        return find(this.index, this.capacity, key);
+    }
+
+    /**
+     * finds a keys slot, or the empty slot it would go in, with linear probing
+     *
+     * @param index - the mapped index
+     * @param capacity - its amount of slots
+     * @param key - the players key
+     * @return - the byte offset of the slot in the index
+     */
+    private static int find(MappedByteBuffer index, int capacity, long key)
+    {
+        int mask = capacity - 1;
+        int i = (int)(key ^ (key >>> 32)) & mask;
+
+        while (true)
+        {
+            int slot = HEADER + i * SLOT;
+            long found = index.getLong(slot);
+
+            if (found == 0 || found == key)
+                return slot;
+
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * a 64 bit FNV-1a hash of the players identity, never 0 since 0 marks an empty slot
+     *
+     * @param player - who the player is
+     * @return - the key used in the log and index
+     */
+    private static long key(String player)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : player.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash == 0 ? 1 : hash;
+    }
+}
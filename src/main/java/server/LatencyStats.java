@@ -0,0 +1,100 @@
+package server;
+
+/**
+ * Network latency estimates for one player, built up from PING and PONG exchanges
+ *
+ * round trip time is smoothed the same way TCP does it (1/8 of each new sample),
+ * jitter is the mean change between samples (1/16 of each new sample like RTP),
+ * and the clock offset compares the clients clock to the servers at the middle of the round trip
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class LatencyStats
+{
+    /**the most recent round trip in microseconds, -1 before the first PONG*/
+    private long last_rtt = -1;
+    /**smoothed round trip time in microseconds*/
+    private double rtt;
+    /**smoothed jitter in microseconds*/
+    private double jitter;
+    /**smoothed difference of the clients clock from the servers in milliseconds*/
+    private double offset;
+    /**amount of PONGs received*/
+    private int samples;
+
+    /**
+     * adds one measurement
+     *
+     * @param rtt_micros - time between sending the PING and getting the PONG
+     * @param server_millis - the servers wall clock when the PONG came back
+     * @param client_millis - the clients wall clock when it sent the PONG
+     */
+    public synchronized void sample(long rtt_micros, long server_millis, long client_millis)
+    {
+        //the client answered half way through the round trip
+        double sample_offset = client_millis - (server_millis - rtt_micros / 2000.0);
+
+        if (this.samples == 0)
+        {
+            this.rtt = rtt_micros;
+            this.offset = sample_offset;
+        }
+        else
+        {
+            this.jitter += (Math.abs(rtt_micros - this.last_rtt) - this.jitter) / 16;
+            this.rtt += (rtt_micros - this.rtt) / 8;
+            this.offset += (sample_offset - this.offset) / 8;
+        }
+
+        this.last_rtt = rtt_micros;
+        this.samples++;
+    }
+
+    /**
+     * @return - smoothed round trip time in microseconds, -1 if nothing has been measured
+     */
+    public synchronized long getRtt()
+    {
+        return this.samples == 0 ? -1 : (long)this.rtt;
+    }
+
+    /**
+     * @return - smoothed jitter in microseconds
+     */
+    public synchronized long getJitter()
+    {
+        return (long)this.jitter;
+    }
+
+    /**
+     * @return - how far ahead the clients clock is from the servers in milliseconds
+     */
+    public synchronized long getOffset()
+    {
+        return Math.round(this.offset);
+    }
+
+    /**
+     * @return - amount of PONGs measured
+     */
+    public synchronized int getSamples()
+    {
+        return this.samples;
+    }
+
+    /**
+     * @return - the stats in a form ready to be printed
+     */
+    @Override
+    public synchronized String toString()
+    {
+        if (this.samples == 0)
+            return "rtt=? jitter=? offset=?";
+
+        return "rtt=" + (this.getRtt() / 1000.0) + "ms"
+                + " jitter=" + (this.getJitter() / 1000.0) + "ms"
+                + " offset=" + this.getOffset() + "ms"
+                + " samples=" + this.samples;
+    }
+}
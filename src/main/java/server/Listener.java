@@ -1,21 +1,29 @@
 package server;
 
+import common.WAMEvents;
 import common.WAMException;
+import common.WAMLog;
 import common.WAMProtocol;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A sub class for the WAMServer
  * defines a listener thread to run and take incoming clients protocol
  *
+ * when the game is pipelined (-Dwam.pipeline) the listener only decodes,
+ * the commands are submitted to the server and applied by its main thread
+ *
  * @author Christopher Asbrock
  * @author Shakeel Farooq
  */
 
-public class Listener extends Thread implements WAMProtocol
+public class Listener implements Runnable, WAMProtocol
 {
 
     /**the scanner used to comminicate with the player*/
@@ -27,6 +35,21 @@ public class Listener extends Thread implements WAMProtocol
     /**A reference to the server class to link information with it*/
     private WAMServer server;
 
+    /**which connection of the player this listener reads, a player gets a new one each time they RESUME*/
+    private final int attach;
+
+    /**limits how fast the player can WHACK, set with -Dwam.rate.burst and -Dwam.rate.perSecond*/
+    private final TokenBucket bucket;
+    /**what happens to a WHACK over the limit, drop, penalize or disconnect, set with -Dwam.rate.policy*/
+    private static final String POLICY = policy(System.getProperty("wam.rate.policy", "drop"));
+    /**
+     * a separate budget for SUBSCRIBE, BOARD and anything else that is not a WHACK or PONG,
+     * lines over it are dropped, set with -Dwam.rate.controlBurst and -Dwam.rate.controlPerSecond
+     */
+    private final TokenBucket control;
+    /**amount of lines that went over the limit*/
+    private long limited;
+
     /**
      * Constructor for the Listener
      * Each player has it's own listener
@@ -34,51 +57,153 @@ public class Listener extends Thread implements WAMProtocol
      * @param socket client socket
      * @param referenceServer the server
      * @param player the player number that has this listener
+     * @param attach which connection of the player this is
      * @throws IOException if there are any I/O exceptions thrown
      */
-    public Listener(Socket socket, WAMServer referenceServer, int player) throws IOException
+    public Listener(Socket socket, WAMServer referenceServer, int player, int attach) throws IOException
     {
         this.server = referenceServer;
         this.player = player;
+        this.attach = attach;
 
         this.SCANNER = new Scanner(socket.getInputStream());
+
+        this.bucket = new TokenBucket(Integer.getInteger("wam.rate.burst", 20),
+                Integer.getInteger("wam.rate.perSecond", 10));
+        this.control = new TokenBucket(Integer.getInteger("wam.rate.controlBurst", 10),
+                Integer.getInteger("wam.rate.controlPerSecond", 5));
+    }
+
+    /**
+     * checks the rate limit policy once, a policy that is not known is warned about and the limit drops lines
+     *
+     * @param policy - the policy that was asked for
+     * @return - drop, penalize or disconnect
+     */
+    private static String policy(String policy)
+    {
+        switch (policy)
+        {
+            case "drop":
+            case "penalize":
+            case "disconnect":
+                return policy;
+            default:
+                WAMLog.warn("Unknown Rate Limit Policy " + policy + ", Using drop");
+                return "drop";
+        }
+    }
+
+    /**
+     * deals with a WHACK that went over the rate limit, it is never parsed
+     *
+     * drop -> the line is ignored
+     * penalize -> the line is ignored and the player loses a point, the same as a miss
+     * disconnect -> the player is dropped
+     *
+     * @throws WAMException - if the policy is disconnect
+     */
+    private void overLimit() throws WAMException
+    {
+        //the first one and then every thousandth, so a flood does not flood the log too
+        if (this.limited++ % 1000 == 0)
+            WAMLog.log(WAMLog.Level.WARN, this.server.getGame(), this.player + 1, -1,
+                    "Over Rate Limit (" + this.limited + " lines), " + POLICY);
+
+        switch (POLICY)
+        {
+            case "penalize":
+                if (this.server.isPipelined())
+                    this.server.submit(WAMServer.PENALTY_COMMAND, this.player, 0, 0, 0, 0);
+                else
+                    this.server.penalize(this.player);
+                break;
+            case "disconnect":
+                throw new WAMException("LISTENER " + (this.player + 1) + " RATE LIMITED");
+            default:
+                break;
+        }
     }
 
     /**
      * Listens for the client to send the WHACK protocol, then updates the player's score
-     * accordingly
+     * accordingly, or for SUBSCRIBE to change the region of the board the player is sent,
+     * or for BOARD to send the player the whole board again
      * @param in The string list response from the scanner
+     * @param event The whack event started when the line was read, committed if the line is a whack
      */
-    private void handleInput(String[] in) throws WAMException
+    private void handleInput(String[] in, WAMEvents.Whack event) throws WAMException
     {
         switch(in[0])
         {
             case WHACK:
-                //Get the player's current score
-                Integer player_score = this.server.getScores()[Integer.parseInt(in[2]) - 1];
-                //Check to see if the player hasn't disconnected
-                if (player_score != null)
+            {
+                int player = Integer.parseInt(in[2]) - 1;
+                int hole = Integer.parseInt(in[1]);
+
+                //a connection only ever whacks as its own player, or it could score and penalize the others
+                if (player != this.player)
                 {
-                    //Check to see if the mole is up at this mole spot
-                    if (this.server.getSpots()[Integer.parseInt(in[1])])
-                    {
-                        //Increase the player's score by 2
-                        this.server.changeScore(Integer.parseInt(in[2]) - 1, player_score + 2 );
-                        this.server.getWhacked()[Integer.parseInt(in[1])] = true;
-                        this.server.getSpots()[Integer.parseInt(in[1])] = false;
-                        this.server.send_score = true;
-                    }
-                    //mole is down at this mole spot
-                    else
-                    {
-                        //Decrease the player's score by 1
-                        this.server.changeScore(Integer.parseInt(in[2]) - 1, player_score - 1 );
-                        this.server.send_score = true;
-                    }
+                    WAMLog.log(WAMLog.Level.WARN, this.server.getGame(), this.player + 1, hole,
+                            "Whacked as Player " + (player + 1));
+                    throw new WAMException("Improper Protocol");
+                }
+                //newer clients send the last event they saw so the server can look back at that board,
+                //and the generation of the mole they whacked when they saw it come up
+                int seq = in.length > 3 ? Integer.parseInt(in[3]) : -1;
+                int generation = in.length > 4 ? Integer.parseInt(in[4]) : -1;
+
+                if (hole < 0 || hole >= this.server.getSpots().size())
+                    throw new WAMException("Improper Protocol");
+
+                if (this.server.isPipelined())
+                {
+                    //the main thread records the whack when it applies it
+                    this.server.submit(WAMServer.WHACK_COMMAND, player, hole, seq, generation, 0);
+                    break;
+                }
+
+                String result = this.server.applyWhack(player, hole, seq, generation);
+
+                if (event.shouldCommit())
+                {
+                    event.game = this.server.getGame();
+                    event.player = player + 1;
+                    event.hole = hole;
+                    event.result = result;
+                    event.commit();
                 }
                 break;
+            }
+            case BOARD:
+                if (this.server.isPipelined())
+                    this.server.submit(WAMServer.BOARD_COMMAND, this.player, 0, 0, 0, 0);
+                else
+                    this.server.sendBoard(this.player);
+                break;
+            case PONG:
+                //never queued, the round trip would include the wait
+                this.server.pong(this.player, Long.parseLong(in[1]), Long.parseLong(in[2]));
+                break;
+            case SUBSCRIBE:
+            {
+                //no arguments goes back to the whole board
+                int[] region = (in.length < 5) ? null : new int[] {
+                        Integer.parseInt(in[1]),
+                        Integer.parseInt(in[2]),
+                        Integer.parseInt(in[3]),
+                        Integer.parseInt(in[4])};
+
+                if (!this.server.isPipelined())
+                    this.server.subscribe(this.player, region);
+                else if (region == null)
+                    this.server.submit(WAMServer.SUBSCRIBE_COMMAND, this.player, -1, 0, 0, 0);
+                else
+                    this.server.submit(WAMServer.SUBSCRIBE_COMMAND, this.player, region[0], region[1], region[2], region[3]);
+                break;
+            }
             default:
-                System.out.println(ERROR);
+                WAMLog.log(WAMLog.Level.WARN, this.server.getGame(), this.player + 1, -1, ERROR + " " + in[0]);
                 throw new WAMException("Improper Protocol");
         }
     }
@@ -87,6 +212,9 @@ public class Listener extends Thread implements WAMProtocol
      * Run method for a player's specified Listener
      * will run through and listen for requests send from one client and handle it
      * accordingly
+     *
+     * a PONG is never limited, it only ever answers the servers own PING,
+     * a line that can not be parsed drops the player like any other bad protocol
      */
     public void run()
     {
@@ -99,23 +227,67 @@ public class Listener extends Thread implements WAMProtocol
                     break;
                 }
 
-                System.out.flush();
-                if (this.server.go)
+                //nothing is read until the game starts
+                if (!this.server.go)
+                {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+                else
                 {
                     if (!this.SCANNER.hasNextLine())
+                    {
+                        //the socket times out after the idle timeout, a client that is still there answers every PING
+                        if (this.SCANNER.ioException() instanceof SocketTimeoutException)
+                            throw new WAMException("LISTENER " + (this.player + 1) + " IDLE");
                         throw new WAMException("LISTENER " + (this.player + 1) +  " STOP");
+                    }
+
+                    String line = this.SCANNER.nextLine();
+                    WAMEvents.Whack event = new WAMEvents.Whack();
+                    event.begin();
 
-                    String[] in = this.SCANNER.nextLine().split(" ");
-                    this.handleInput(in);
+                    //checked before the line is even split, a flood costs as little as possible
+                    if (line.startsWith(WHACK))
+                    {
+                        if (!this.bucket.tryTake())
+                        {
+                            this.overLimit();
+                            continue;
+                        }
+                    }
+                    else if (!line.startsWith(PONG) && !this.control.tryTake())
+                    {
+                        continue;
+                    }
+
+                    try
+                    {
+                        this.handleInput(line.split(" "), event);
+                    }
+                    catch (NumberFormatException | IndexOutOfBoundsException e)
+                    {
+                        WAMLog.log(WAMLog.Level.WARN, this.server.getGame(), this.player + 1, -1, "Malformed Line " + e);
+                        throw new WAMException("Improper Protocol");
+                    }
                 }
             }
         }
         catch (WAMException e)
         {
-            //if anything goes wrong it will set the player as disconnected and close the listener
-            this.server.changeScore(this.player, null);
-            this.server.send_score = true;
-            System.out.println(e.getMessage());
+            //if anything goes wrong the player is dropped and their slot held in case they RESUME
+            //once the game is over the final scores stay as they are
+            this.server.disconnect(this.player, this.attach);
+            WAMLog.log(WAMLog.Level.DEBUG, this.server.getGame(), this.player + 1, -1, e.getMessage());
+
+            //the players all leave once the game is over, that is not a drop
+            WAMEvents.Disconnect event = new WAMEvents.Disconnect();
+            if (!this.server.game_over && event.shouldCommit())
+            {
+                event.game = this.server.getGame();
+                event.player = this.player + 1;
+                event.reason = e.getMessage();
+                event.commit();
+            }
         }
         finally
         {
@@ -129,7 +301,7 @@ public class Listener extends Thread implements WAMProtocol
     public void close()
     {
         this.SCANNER.close();
-        System.out.println("LISTENER " + (this.player + 1) + " SHUTDOWN");
+        WAMLog.log(WAMLog.Level.DEBUG, this.server.getGame(), this.player + 1, -1, "LISTENER SHUTDOWN");
     }
 
 
@@ -0,0 +1,522 @@
+package server;
+
+import common.WAMLog;
+import common.WAMProtocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whack-A-Mole lobby server
+ * keeps running game after game instead of exiting after one, players can connect at any time
+ *
+ *  accept thread -> (main thread) accepts connections as fast as they come and hands each one off
+ *
+ *  handshake tasks -> read the first line of each connection in parallel, within the handshake deadline,
+ *  a JOIN puts the player in the queue and a RESUME is handed straight back to the game it dropped out of
+ *
+ *  matchmaker thread -> takes players out of the queue and starts a game once there are enough,
+ *  or once the player who has waited the longest has waited too long and there are at least the minimum
+ *
+ *  heartbeat thread -> PINGs every queued player each -Dwam.pingInterval, and drops one that has sent
+ *  nothing back for -Dwam.idleTimeout, so a player who went away never takes a seat in the next game
+ *
+ * every game runs on one shared pool so the threads stay warm between games
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Lobby implements WAMProtocol
+{
+    /**a player waiting in the queue*/
+    private static class Waiting
+    {
+        /**the players connection*/
+        private final Socket socket;
+        /**the name from the players JOIN, null if they sent none*/
+        private final String name;
+        /**System.nanoTime() when the player joined the queue*/
+        private final long queued;
+        /**System.nanoTime() when the player last sent anything, only used while holding this players lock*/
+        private long heard;
+        /**true once the player is handed to a game, the heartbeat leaves their connection alone from then on*/
+        private boolean taken;
+        /**true if the heartbeat dropped the player, the matchmaker leaves them out*/
+        private volatile boolean dropped;
+
+        private Waiting(Socket socket, String name, long queued)
+        {
+            this.socket = socket;
+            this.name = name;
+            this.queued = queued;
+            this.heard = queued;
+        }
+    }
+
+    /**the server socket players connect to*/
+    private final ServerSocket server;
+
+    /**amount of rows each game will have*/
+    private final int rows;
+    /**amount of columns each game will have*/
+    private final int cols;
+    /**the most players a game will have*/
+    private final int maxPlayers;
+    /**the fewest players a game will start with once someone has waited too long, set with -Dwam.minPlayers*/
+    private final int minPlayers;
+    /**seconds the first player in the queue will wait before a smaller game is started, set with -Dwam.maxWait*/
+    private final int maxWait;
+    /**the length of each game*/
+    private final int game_time;
+
+    /**players that are ready and waiting for a game*/
+    private final LinkedBlockingQueue<Waiting> queue;
+    /**every player queued and not yet in a game, whether the matchmaker has taken them out of the queue or not*/
+    private final Set<Waiting> waiting;
+    /**milliseconds between each PING to the queued players, set with -Dwam.pingInterval*/
+    private final int ping_interval;
+    /**milliseconds a queued player can send nothing before they are dropped, set with -Dwam.idleTimeout, 0 for never*/
+    private final int idle_timeout;
+    /**where every games final results are kept, null if -Dwam.highscores is not set*/
+    private final HighScoreStore high_scores;
+    /**every players total score across the games in this process*/
+    private final Ranking ranking;
+    /**the game each session token belongs to, for players coming back with RESUME*/
+    private final ConcurrentHashMap<String, WAMServer> sessions;
+    /**the pool used for handshakes and every game, threads are reused between games*/
+    private final ExecutorService pool;
+    /**turns away connection floods before they reach a handshake*/
+    private final Admission admission;
+
+    /**amount of handshakes done, and their total and worst time in nanoseconds*/
+    private long handshakes, handshake_total, handshake_max;
+    /**amount of players put in a game, and their total and worst wait in nanoseconds*/
+    private long waits, wait_total, wait_max;
+    /**amount of games started*/
+    private int games;
+
+    /**
+     * creates the lobby
+     *
+     * @param port - the port number
+     * @param rows - amount of rows each board will have
+     * @param cols - amount of columns each board will have
+     * @param player_number - the most players a game will have
+     * @param game_time - the total amount of time each game will run for
+     * @throws IOException - if the server socket can not be opened
+     */
+    public Lobby(int port, int rows, int cols, int player_number, int game_time) throws IOException
+    {
+        this.server = new ServerSocket(port);
+        this.rows = rows;
+        this.cols = cols;
+        this.maxPlayers = player_number;
+        this.minPlayers = Math.max(1, Math.min(player_number, Integer.getInteger("wam.minPlayers", player_number)));
+        this.maxWait = Integer.getInteger("wam.maxWait", 30);
+        this.game_time = game_time;
+
+        this.queue = new LinkedBlockingQueue<>();
+        this.waiting = ConcurrentHashMap.newKeySet();
+        this.ping_interval = Integer.getInteger("wam.pingInterval", 1000);
+        this.idle_timeout = Integer.getInteger("wam.idleTimeout", Math.max(10000, this.ping_interval * 5));
+        this.sessions = new ConcurrentHashMap<>();
+        this.pool = Executors.newCachedThreadPool();
+        this.admission = new Admission("Lobby");
+        this.ranking = new Ranking();
+
+        String high_scores = System.getProperty("wam.highscores");
+        this.high_scores = (high_scores != null) ? new HighScoreStore(Paths.get(high_scores)) : null;
+    }
+
+    /**
+     * accepts connections forever, each one is set up on the pool so a slow client never holds up the next
+     *
+     * @throws IOException - if the server socket fails
+     */
+    public void runLobby() throws IOException
+    {
+        Thread matchmaker = new Thread(() -> this.runMatchmaker());
+        matchmaker.setDaemon(true);
+        matchmaker.start();
+
+        Thread heartbeat = new Thread(() -> this.runHeartbeat());
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+
+        WAMLog.info("Lobby open for " + this.minPlayers + " to " + this.maxPlayers + " player games");
+
+        try
+        {
+            while (true)
+            {
+                Socket socket = this.server.accept();
+                long accepted = System.nanoTime();
+
+                //a connection over the limits is turned away here, without a thread of its own
+                if (!this.admission.admit(socket))
+                    continue;
+
+                this.pool.execute(() ->
+                {
+                    try
+                    {
+                        this.handshake(socket, accepted);
+                    }
+                    finally
+                    {
+                        this.admission.done();
+                    }
+                });
+            }
+        }
+        finally
+        {
+            this.pool.shutdown();
+            this.server.close();
+        }
+    }
+
+    /**
+     * reads the first line of a new connection, a JOIN puts the player in the queue
+     * and a RESUME goes back to its game, anything else is sent an ERROR
+     * the WELCOME is sent once the game the player goes into is known
+     *
+     * @param socket - the new connection
+     * @param accepted - System.nanoTime() when the connection was accepted
+     */
+    private void handshake(Socket socket, long accepted)
+    {
+        try
+        {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+
+            //a client that connects and never sends is dropped at the deadline
+            socket.setSoTimeout(Admission.DEADLINE);
+            String[] in = WAMServer.readLine(socket.getInputStream()).split(" ");
+            socket.setSoTimeout(0);
+
+            if (in[0].equals(RESUME))
+            {
+                this.resume(socket, in);
+                return;
+            }
+
+            if (!in[0].equals(JOIN))
+            {
+                refuse(socket, "Expected JOIN");
+                return;
+            }
+
+            long now = System.nanoTime();
+            Waiting player = new Waiting(socket, in.length > 1 ? in[1] : null, now);
+            this.waiting.add(player);
+            this.queue.add(player);
+            this.recordHandshake(now - accepted);
+
+            WAMLog.info("Player Queued (" + this.queue.size() + " waiting)");
+        }
+        catch (IOException e)
+        {
+            WAMLog.warn("Handshake Failed " + e);
+            try
+            {
+                socket.close();
+            }
+            catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * gives a player their slot back in the game their session token belongs to
+     *
+     * @param socket - the new connection
+     * @param in - the RESUME line split on spaces
+     * @throws IOException - if the connection fails
+     */
+    private void resume(Socket socket, String[] in) throws IOException
+    {
+        WAMServer game = (in.length > 1) ? this.sessions.get(in[1]) : null;
+        if (game == null || !game.reattach(in[1], socket))
+            refuse(socket, "Session Expired");
+    }
+
+    /**
+     * sends a connection an ERROR and closes it
+     *
+     * @param socket - the connection
+     * @param reason - what the ERROR says
+     * @throws IOException - if the connection fails
+     */
+    private static void refuse(Socket socket, String reason) throws IOException
+    {
+        new PrintStream(socket.getOutputStream(), true).println(ERROR + " " + reason);
+        socket.close();
+    }
+
+    /**
+     * the matchmaker loop, starts a full game whenever there are enough players,
+     * or a smaller one when the first player in line has waited longer than the max wait
+     */
+    private void runMatchmaker()
+    {
+        ArrayList<Waiting> players = new ArrayList<>();
+
+        try
+        {
+            while (true)
+            {
+                //block until the first player of the next game shows up
+                if (players.isEmpty())
+                    players.add(this.queue.take());
+
+                long waited = System.nanoTime() - players.get(0).queued;
+                long left = TimeUnit.SECONDS.toNanos(this.maxWait) - waited;
+
+                //once the first player is tired keep checking, a smaller game starts as soon as there are enough,
+                //a game that is already full does not wait on the queue at all
+                if (players.size() < this.maxPlayers)
+                {
+                    Waiting next = this.queue.poll(Math.max(left, TimeUnit.MILLISECONDS.toNanos(100)), TimeUnit.NANOSECONDS);
+                    if (next != null)
+                        players.add(next);
+                }
+
+                //a player the heartbeat dropped while waiting never counts towards a game
+                players.removeIf((Waiting player) -> player.dropped);
+                if (players.isEmpty())
+                    continue;
+
+                boolean full = players.size() >= this.maxPlayers;
+                boolean tired = System.nanoTime() - players.get(0).queued >= TimeUnit.SECONDS.toNanos(this.maxWait);
+
+                if (full || (tired && players.size() >= this.minPlayers))
+                {
+                    this.startGame(players);
+                    players = new ArrayList<>();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            WAMLog.error("Matchmaker Interrupted " + e);
+        }
+    }
+
+    /**
+     * hands a group of players to a new game running on the pool
+     *
+     * @param players - the players in the order they will be numbered
+     */
+    private void startGame(ArrayList<Waiting> players)
+    {
+        //from here the heartbeat leaves them alone, one it dropped just now is left out
+        players.removeIf((Waiting player) -> !this.take(player));
+        if (players.isEmpty())
+            return;
+
+        Socket[] sockets = new Socket[players.size()];
+        String[] names = new String[players.size()];
+        long now = System.nanoTime();
+
+        for (int i = 0; i < sockets.length; i++)
+        {
+            sockets[i] = players.get(i).socket;
+            names[i] = players.get(i).name;
+            this.recordWait(now - players.get(i).queued);
+        }
+
+        int game = ++this.games;
+        WAMLog.log(WAMLog.Level.INFO, game, -1, -1, "Starting with " + sockets.length + " Players");
+        this.printStats();
+
+        this.pool.execute(() ->
+        {
+            try
+            {
+                WAMServer server = new WAMServer(sockets, this.rows, this.cols, this.game_time, this.pool);
+                server.setGame(game);
+                server.setIdentities(names);
+                server.setHighScores(this.high_scores);
+                server.setRanking(this.ranking);
+                server.setSessions(this.sessions);
+                server.runServer();
+            }
+            catch (IOException e)
+            {
+                WAMLog.log(WAMLog.Level.ERROR, game, -1, -1, e.toString());
+            }
+            WAMLog.log(WAMLog.Level.INFO, game, -1, -1, "Over, Top Players " + this.ranking.top(3));
+        });
+    }
+
+    /**
+     * takes a player out of the waiting players so they can go into a game
+     *
+     * @param player - a queued player
+     * @return - false if the heartbeat already dropped them
+     */
+    private boolean take(Waiting player)
+    {
+        synchronized (player)
+        {
+            this.waiting.remove(player);
+            player.taken = !player.dropped;
+            return player.taken;
+        }
+    }
+
+    /**
+     * the heartbeat loop, checks on every queued player each ping interval
+     */
+    private void runHeartbeat()
+    {
+        try
+        {
+            while (true)
+            {
+                Thread.sleep(this.ping_interval);
+
+                long now = System.nanoTime();
+                for (Waiting player : this.waiting)
+                    this.heartbeat(player, now);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            WAMLog.error("Heartbeat Interrupted " + e);
+        }
+    }
+
+    /**
+     * reads whatever a queued player has sent since the last PING, drops them if it has been too long,
+     * otherwise sends the next PING, the token is -1 so a game that gets a late PONG knows it is not one of its own
+     *
+     * only lines that have arrived are read, and a line at a time, so the heartbeat never waits on a player
+     * and nothing the game should read is taken from the connection
+     *
+     * @param player - a queued player
+     * @param now - System.nanoTime() of this round
+     */
+    private void heartbeat(Waiting player, long now)
+    {
+        synchronized (player)
+        {
+            if (player.taken || player.dropped)
+                return;
+
+            try
+            {
+                InputStream in = player.socket.getInputStream();
+                player.socket.setSoTimeout(this.ping_interval);
+                while (in.available() > 0)
+                {
+                    WAMServer.readLine(in);
+                    player.heard = now;
+                }
+                player.socket.setSoTimeout(0);
+
+                long silent = TimeUnit.NANOSECONDS.toMillis(now - player.heard);
+                if (this.idle_timeout > 0 && silent >= this.idle_timeout)
+                    throw new IOException("Nothing for " + silent + "ms");
+
+                player.socket.getOutputStream().write((PING + " -1 0 0\n").getBytes(StandardCharsets.US_ASCII));
+            }
+            catch (IOException e)
+            {
+                player.dropped = true;
+                this.waiting.remove(player);
+                WAMLog.info("Queued Player Dropped, " + e.getMessage() + " (" + this.waiting.size() + " waiting)");
+                try
+                {
+                    player.socket.close();
+                }
+                catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * adds the time one handshake took to the stats
+     *
+     * @param nanos - accept to the JOIN being read and the player queued
+     */
+    private synchronized void recordHandshake(long nanos)
+    {
+        this.handshakes++;
+        this.handshake_total += nanos;
+        this.handshake_max = Math.max(this.handshake_max, nanos);
+    }
+
+    /**
+     * adds the time one player waited in the queue to the stats
+     *
+     * @param nanos - queued to game start
+     */
+    private synchronized void recordWait(long nanos)
+    {
+        this.waits++;
+        this.wait_total += nanos;
+        this.wait_max = Math.max(this.wait_max, nanos);
+    }
+
+    /**
+     * prints the average and worst handshake and wait times so far
+     */
+    private synchronized void printStats()
+    {
+        WAMLog.info("Handshake avg " + (this.handshakes == 0 ? 0 : this.handshake_total / this.handshakes / 1000)
+                + "us max " + (this.handshake_max / 1000) + "us, "
+                + "Wait avg " + (this.waits == 0 ? 0 : this.wait_total / this.waits / 1_000_000)
+                + "ms max " + (this.wait_max / 1_000_000) + "ms");
+    }
+
+    /**
+     * creates the lobby and keeps starting Whack-A-Mole games
+     *
+     * @param args - defines the port, rows, cols, max players, and game time
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 5)
+        {
+            System.out.println("Missing Command Line Arguments");
+            System.exit(-1);
+        }
+        else
+        {
+            try
+            {
+                Lobby lobby = new Lobby(
+                        Integer.parseInt(args[0]),
+                        Integer.parseInt(args[1]),
+                        Integer.parseInt(args[2]),
+                        Integer.parseInt(args[3]),
+                        Integer.parseInt(args[4]));
+                lobby.runLobby();
+            }
+            catch (IOException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+            catch (NumberFormatException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+        }
+    }
+}
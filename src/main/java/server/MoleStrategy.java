@@ -0,0 +1,89 @@
+package server;
+
+import common.WAMLog;
+
+import java.util.Random;
+
+/**
+ * Decides how long each mole stays up and down
+ *
+ * the handlers (or the timeline) ask the strategy for the next time every time a hole changes,
+ * so a strategy is called thousands of times a second on a large board, they only do a little
+ * arithmetic on what they are given and never allocate
+ *
+ * pick one with -Dwam.strategy, uniform (the default), accelerating, wave or adaptive
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public interface MoleStrategy
+{
+    /**
+     * what a strategy can see of the game, the server implements it
+     */
+    interface Game
+    {
+        /**
+         * @return - seconds since the game started
+         */
+        double getCurrentTime();
+
+        /**
+         * @return - the length of the game in seconds
+         */
+        int getGameTime();
+
+        /**
+         * @return - the recent fraction of whacks that hit, between 0 and 1
+         */
+        double getHitRate();
+    }
+
+    /**
+     * @param hole - the hole
+     * @param game - the game
+     * @param random - where random numbers come from
+     * @return - seconds from the start of the game until the hole first comes up
+     */
+    double first(int hole, Game game, Random random);
+
+    /**
+     * @param hole - the hole that just came up
+     * @param game - the game
+     * @param random - where random numbers come from
+     * @return - seconds the mole stays up
+     */
+    double up(int hole, Game game, Random random);
+
+    /**
+     * @param hole - the hole that just went down
+     * @param game - the game
+     * @param random - where random numbers come from
+     * @return - seconds the hole stays empty
+     */
+    double down(int hole, Game game, Random random);
+
+    /**
+     * finds a built in strategy by name
+     *
+     * @param name - uniform, accelerating, wave or adaptive
+     * @return - the strategy, uniform if the name is not known
+     */
+    static MoleStrategy named(String name)
+    {
+        switch (name)
+        {
+            case "uniform":
+                return new UniformStrategy();
+            case "accelerating":
+                return new AcceleratingStrategy();
+            case "wave":
+                return new WaveStrategy(Integer.getInteger("wam.wavePeriod", 10));
+            case "adaptive":
+                return new AdaptiveStrategy(Integer.getInteger("wam.targetHitRate", 50) / 100.0);
+            default:
+                WAMLog.warn("Unknown Strategy " + name + ", Using uniform");
+                return new UniformStrategy();
+        }
+    }
+}
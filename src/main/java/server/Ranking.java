@@ -0,0 +1,368 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A global ranking of every player by their total score across all games
+ *
+ * players are kept in an indexable skip list ordered by score (highest first, ties by name),
+ * every link also stores how many players it skips over, so the top players, the rank of a player
+ * and the players around them are all found in O(log n)
+ *
+ * any amount of threads can read at once, updates take the write lock for a few microseconds
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Ranking
+{
+    /**one player and where they are in the ranking*/
+    public static class Entry
+    {
+        /**place in the ranking, 1 is first*/
+        public final int rank;
+        /**who the player is*/
+        public final String player;
+        /**their total score*/
+        public final long score;
+
+        private Entry(int rank, String player, long score)
+        {
+            this.rank = rank;
+            this.player = player;
+            this.score = score;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.rank + ". " + this.player + " " + this.score;
+        }
+    }
+
+    /**a node of the skip list, next and span are one per level*/
+    private static class Node
+    {
+        private final String player;
+        private final long score;
+        private final Node[] next;
+        /**how many players each link moves forward*/
+        private final int[] span;
+
+        private Node(String player, long score, int levels)
+        {
+            this.player = player;
+            this.score = score;
+            this.next = new Node[levels];
+            this.span = new int[levels];
+        }
+    }
+
+    /**the most levels a node can have, enough for billions of players*/
+    private static final int MAX_LEVEL = 32;
+
+    /**the head of the skip list, not a player*/
+    private final Node head;
+    /**the current highest level in use*/
+    private int levels;
+    /**amount of players in the list*/
+    private int size;
+
+    /**every players current total, used to find their node*/
+    private final HashMap<String, Long> totals;
+
+    /**lets any amount of readers in at once, one writer at a time*/
+    private final ReentrantReadWriteLock lock;
+
+    /**
+     * creates an empty ranking
+     */
+    public Ranking()
+    {
+        this.head = new Node(null, 0, MAX_LEVEL);
+        this.levels = 1;
+        this.totals = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * adds to a players total, putting them in the ranking if they are new
+     *
+     * @param player - who the player is
+     * @param change - the score to add
+     */
+    public void add(String player, long change)
+    {
+        this.lock.writeLock().lock();
+        try
+        {
+            Long old = this.totals.get(player);
+            if (old != null)
+                this.remove(player, old);
+
+            long score = (old == null ? 0 : old) + change;
+            this.totals.put(player, score);
+            this.insert(player, score);
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return - amount of players in the ranking
+     */
+    public int size()
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            return this.size;
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * finds where a player is
+     *
+     * @param player - who the player is
+     * @return - the players place and score, or null if they have never played
+     */
+    public Entry rank(String player)
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            Long score = this.totals.get(player);
+            if (score == null)
+                return null;
+
+            return new Entry(this.rankOf(player, score), player, score);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * the best players
+     *
+     * @param count - how many to get
+     * @return - up to count players, first place first
+     */
+    public List<Entry> top(int count)
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            return this.range(1, count);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * the players just above and below a player
+     *
+     * @param player - who the player is
+     * @param radius - how many places to get on each side
+     * @return - the players around them, including them, or an empty list if they have never played
+     */
+    public List<Entry> around(String player, int radius)
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            Long score = this.totals.get(player);
+            if (score == null)
+                return new ArrayList<>();
+
+            int rank = this.rankOf(player, score);
+            int first = Math.max(1, rank - radius);
+            return this.range(first, rank + radius - first + 1);
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * true if a goes before b, higher scores first then by name
+     */
+    private static boolean before(long score_a, String player_a, long score_b, String player_b)
+    {
+        if (score_a != score_b)
+            return score_a > score_b;
+        return player_a.compareTo(player_b) < 0;
+    }
+
+    /**
+     * picks how many levels a new node gets, each level a quarter as likely as the one below
+     */
+    private static int randomLevel()
+    {
+        int level = 1;
+        while (level < MAX_LEVEL && ThreadLocalRandom.current().nextInt(4) == 0)
+            level++;
+        return level;
+    }
+
+    /**
+     * puts a player into the skip list, keeping the spans right
+     */
+    private void insert(String player, long score)
+    {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+
+        Node x = this.head;
+        for (int i = this.levels - 1; i >= 0; i--)
+        {
+            rank[i] = (i == this.levels - 1) ? 0 : rank[i + 1];
+            while (x.next[i] != null && before(x.next[i].score, x.next[i].player, score, player))
+            {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        int level = randomLevel();
+        if (level > this.levels)
+        {
+            for (int i = this.levels; i < level; i++)
+            {
+                rank[i] = 0;
+                update[i] = this.head;
+                update[i].span[i] = this.size;
+            }
+            this.levels = level;
+        }
+
+        Node node = new Node(player, score, level);
+        for (int i = 0; i < level; i++)
+        {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+
+        //the levels above the new node now skip over one more player
+        for (int i = level; i < this.levels; i++)
+            update[i].span[i]++;
+
+        this.size++;
+    }
+
+    /**
+     * takes a player out of the skip list, keeping the spans right
+     */
+    private void remove(String player, long score)
+    {
+        Node[] update = new Node[MAX_LEVEL];
+
+        Node x = this.head;
+        for (int i = this.levels - 1; i >= 0; i--)
+        {
+            while (x.next[i] != null && before(x.next[i].score, x.next[i].player, score, player))
+                x = x.next[i];
+            update[i] = x;
+        }
+
+        Node node = x.next[0];
+        if (node == null || node.score != score || !node.player.equals(player))
+            return;
+
+        for (int i = 0; i < this.levels; i++)
+        {
+            if (update[i].next[i] == node)
+            {
+                update[i].span[i] += node.span[i] - 1;
+                update[i].next[i] = node.next[i];
+            }
+            else
+            {
+                update[i].span[i]--;
+            }
+        }
+
+        while (this.levels > 1 && this.head.next[this.levels - 1] == null)
+            this.levels--;
+
+        this.size--;
+    }
+
+    /**
+     * finds a players rank by adding up the spans on the way to their node
+     *
+     * @return - the rank, 1 is first
+     */
+    private int rankOf(String player, long score)
+    {
+        int rank = 0;
+        Node x = this.head;
+
+        for (int i = this.levels - 1; i >= 0; i--)
+        {
+            while (x.next[i] != null
+                    && (before(x.next[i].score, x.next[i].player, score, player) || x.next[i].player.equals(player)))
+            {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+
+            if (x != this.head && x.player.equals(player))
+                return rank;
+        }
+
+        return rank;
+    }
+
+    /**
+     * walks the spans down to a rank, then along the bottom level
+     *
+     * @param first - the rank to start at, 1 is first
+     * @param count - how many players to get
+     * @return - the players, in order
+     */
+    private List<Entry> range(int first, int count)
+    {
+        ArrayList<Entry> list = new ArrayList<>();
+        if (first > this.size || count <= 0)
+            return list;
+
+        int rank = 0;
+        Node x = this.head;
+        for (int i = this.levels - 1; i >= 0; i--)
+        {
+            while (x.next[i] != null && rank + x.span[i] <= first)
+            {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+        }
+
+        while (x != null && list.size() < count)
+        {
+            list.add(new Entry(rank, x.player, x.score));
+            x = x.next[0];
+            rank++;
+        }
+
+        return list;
+    }
+}
@@ -0,0 +1,556 @@
+package server;
+
+import common.BoardCodec;
+import common.WAMBoard;
+import common.WAMException;
+import common.WAMLog;
+import common.WAMProtocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Whack-A-Mole spectator relay
+ * watches a game as one spectator and passes everything it gets on to as many spectators as connect to it
+ *
+ * the bytes from upstream are copied to every viewer as they came in, a whole batch of lines with one write
+ * each, the relay only reads the lines to keep its own copy of the board, the scores and the clock,
+ * which is what a viewer who joins late is sent as a BOARD before the stream carries on from there
+ *
+ * a relay takes a SPECTATE just like a game does, so relays can watch relays and a game can be
+ * fanned out as a tree, the TIME lines from the game go down the tree untouched so every hop knows
+ * how far behind the game it is
+ *
+ * viewers are written to without blocking, what does not fit in the socket waits in a backlog
+ * and a viewer whose backlog gets too big is dropped, a slow viewer never holds up the others or the game
+ *
+ * everything can run on one machine, start a game, point a relay at its port and more relays at that one
+ *
+ *  -Dwam.relay.backlog -> bytes a viewer can fall behind before it is dropped (default 1048576)
+ *  -Dwam.relay.maxViewers -> viewers each relay takes (default 1000)
+ *  -Dwam.relay.report -> milliseconds between the lag reports in the log (default 5000)
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Relay implements WAMProtocol
+{
+    /**size of the buffer the upstream is read through*/
+    private static final int BUFFER = 65536;
+    /**milliseconds the upstream read waits before looking at the viewers anyway*/
+    private static final int POLL = 100;
+
+    /**
+     * a viewer and the bytes that have not been written to it yet,
+     * only the upstream thread touches it once it has joined
+     */
+    private static class Viewer
+    {
+        private final SocketChannel channel;
+        /**bytes waiting to be written, kept ready for reading*/
+        private ByteBuffer backlog;
+
+        private Viewer(SocketChannel channel)
+        {
+            this.channel = channel;
+            this.backlog = ByteBuffer.allocate(0);
+        }
+    }
+
+    /**the connection to the game or relay above this one*/
+    private final Socket upstream;
+    /**where the viewers connect*/
+    private final ServerSocketChannel server;
+    /**runs the handshakes*/
+    private final ExecutorService pool;
+    /**limits how fast each address can connect*/
+    private final Admission admission;
+
+    private final int max_backlog;
+    private final int max_viewers;
+    private final long report_interval;
+
+    /**viewers that have sent their SPECTATE and are waiting for the upstream thread to send them the board*/
+    private final ConcurrentLinkedQueue<SocketChannel> joining;
+    /**viewers being sent the stream, only the upstream thread touches it*/
+    private final ArrayList<Viewer> viewers;
+
+    /**the WELCOME from upstream, every viewer is sent the same one*/
+    private final String welcome;
+    private final int rows, cols;
+
+    /**the copy of the game kept for viewers who join late*/
+    private final WAMBoard board;
+    private int sequence;
+    /**the scores, each one after a space, as they go on the end of a BOARD*/
+    private String scores;
+    /**the game clock in milliseconds and System.nanoTime() when it was last heard*/
+    private long clock, clock_nanos;
+
+    /**lag from the game in milliseconds, the last and the most since the last report*/
+    private long lag, max_lag;
+    private long last_report;
+    private long dropped;
+
+    /**
+     * connects to upstream and reads the WELCOME and first BOARD, then opens the port for viewers
+     *
+     * @param host - the game or relay to watch
+     * @param upstream_port - its port
+     * @param port - the port viewers connect to
+     * @throws IOException - if either connection fails
+     * @throws WAMException - if upstream does not answer like a game
+     */
+    public Relay(String host, int upstream_port, int port) throws IOException, WAMException
+    {
+        this.max_backlog = Integer.getInteger("wam.relay.backlog", 1 << 20);
+        this.max_viewers = Integer.getInteger("wam.relay.maxViewers", 1000);
+        this.report_interval = Integer.getInteger("wam.relay.report", 5000);
+
+        this.upstream = new Socket(host, upstream_port);
+        this.upstream.setTcpNoDelay(true);
+        this.upstream.getOutputStream().write((SPECTATE + "\n").getBytes(StandardCharsets.US_ASCII));
+
+        InputStream in = this.upstream.getInputStream();
+        this.upstream.setSoTimeout(Admission.DEADLINE);
+
+        this.welcome = WAMServer.readLine(in);
+        String[] welcome = this.welcome.split(" ");
+        if (!welcome[0].equals(WELCOME))
+        {
+            this.upstream.close();
+            throw new WAMException("Upstream Refused: " + this.welcome);
+        }
+
+        this.rows = Integer.parseInt(welcome[1]);
+        this.cols = Integer.parseInt(welcome[2]);
+        this.board = new WAMBoard(this.rows * this.cols);
+        this.scores = "";
+
+        //the BOARD comes right after the WELCOME, read it here so the first viewer has a board to get
+        this.apply(WAMServer.readLine(in));
+        this.upstream.setSoTimeout(POLL);
+
+        this.joining = new ConcurrentLinkedQueue<>();
+        this.viewers = new ArrayList<>();
+        this.pool = Executors.newCachedThreadPool();
+        this.admission = new Admission("Relay " + port);
+
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(port));
+        this.last_report = System.currentTimeMillis();
+
+        WAMLog.info("Relay " + port + " Watching " + host + ":" + upstream_port +
+                " (" + this.rows + "x" + this.cols + ")");
+    }
+
+    /**
+     * accepts viewers on another thread and passes the stream on until upstream closes
+     *
+     * @throws IOException - if the upstream connection fails
+     */
+    public void runRelay() throws IOException
+    {
+        Thread accepter = new Thread(() -> this.runAccept());
+        accepter.setDaemon(true);
+        accepter.start();
+
+        try
+        {
+            this.runUpstream();
+        }
+        finally
+        {
+            this.close();
+        }
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * accepts viewers and hands each one admitted to the pool for its handshake
+     */
+    private void runAccept()
+    {
+        try
+        {
+            while (true)
+            {
+                SocketChannel channel = this.server.accept();
+                if (!this.admission.admit(channel.socket()))
+                    continue;
+
+                this.pool.execute(() ->
+                {
+                    try
+                    {
+                        this.handshake(channel);
+                    }
+                    finally
+                    {
+                        this.admission.done();
+                    }
+                });
+            }
+        }
+        catch (IOException e)
+        {
+            //the server socket is closed when upstream goes away
+        }
+    }
+
+    /**
+     * reads the SPECTATE of a new viewer and queues it to join
+     *
+     * @param channel - the viewers connection
+     */
+    private void handshake(SocketChannel channel)
+    {
+        try
+        {
+            Socket socket = channel.socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(Admission.DEADLINE);
+            String line = WAMServer.readLine(socket.getInputStream());
+
+            if (!line.equals(SPECTATE))
+            {
+                socket.getOutputStream().write((ERROR + " Spectators Only\n").getBytes(StandardCharsets.US_ASCII));
+                channel.close();
+                return;
+            }
+
+            channel.configureBlocking(false);
+            this.joining.add(channel);
+        }
+        catch (IOException e)
+        {
+            close(channel);
+        }
+    }
+
+    /**
+     * reads upstream until it closes, each batch of whole lines goes to every viewer,
+     * then into the relays own copy of the game
+     *
+     * @throws IOException - if the upstream connection fails
+     */
+    private void runUpstream() throws IOException
+    {
+        InputStream in = this.upstream.getInputStream();
+        byte[] buffer = new byte[BUFFER];
+        int length = 0;
+
+        while (true)
+        {
+            int read;
+            try
+            {
+                read = in.read(buffer, length, buffer.length - length);
+            }
+            catch (SocketTimeoutException e)
+            {
+                //nothing from upstream, still let viewers join and catch up
+                this.join();
+                this.flush();
+                continue;
+            }
+
+            if (read == -1)
+                return;
+            length += read;
+
+            int end = length;
+            while (end > 0 && buffer[end - 1] != '\n')
+                end--;
+
+            if (end == 0)
+            {
+                //a line longer than the buffer, only a huge BOARD does this
+                if (length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                continue;
+            }
+
+            //viewers joining now get the board from before this batch, then the batch itself
+            this.join();
+            this.send(buffer, end);
+
+            int start = 0;
+            for (int i = 0; i < end; i++)
+            {
+                if (buffer[i] == '\n')
+                {
+                    this.apply(new String(buffer, start, i - start, StandardCharsets.US_ASCII).trim());
+                    start = i + 1;
+                }
+            }
+
+            System.arraycopy(buffer, end, buffer, 0, length - end);
+            length -= end;
+
+            this.report();
+        }
+    }
+
+    /**
+     * keeps the relays copy of the game up to date with one line from upstream
+     *
+     * @param line - the line without its line ending
+     */
+    private void apply(String line)
+    {
+        String[] request = line.split(" ");
+
+        try
+        {
+            switch (request[0])
+            {
+                case MOLE_UP:
+                case MOLE_DOWN:
+                    this.board.set(Integer.parseInt(request[1]), request[0].equals(MOLE_UP));
+                    this.sequence = Math.max(this.sequence, Integer.parseInt(request[2]));
+                    break;
+                case SCORE:
+                    this.scores = line.substring(SCORE.length());
+                    break;
+                case BOARD:
+                    this.board.restore(BoardCodec.decode(request[3], request[4], this.rows * this.cols));
+                    this.sequence = Integer.parseInt(request[1]);
+                    this.setClock(Long.parseLong(request[2]));
+                    StringBuilder scores = new StringBuilder();
+                    for (int i = 5; i < request.length; i++)
+                        scores.append(' ').append(request[i]);
+                    this.scores = scores.toString();
+                    break;
+                case TIME:
+                    this.setClock(Long.parseLong(request[2]));
+                    this.lag = System.currentTimeMillis() - Long.parseLong(request[1]);
+                    this.max_lag = Math.max(this.max_lag, this.lag);
+                    break;
+                default:
+                    break;
+            }
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException | WAMException e)
+        {
+            WAMLog.warn("Relay Could Not Follow: " + line);
+        }
+    }
+
+    private void setClock(long clock)
+    {
+        this.clock = clock;
+        this.clock_nanos = System.nanoTime();
+    }
+
+    /**
+     * sends every viewer waiting to join the WELCOME and a BOARD made from the relays copy,
+     * the next TIME from the game comes soon enough, an old one would only make the lag look worse
+     */
+    private void join()
+    {
+        SocketChannel channel;
+        while ((channel = this.joining.poll()) != null)
+        {
+            if (this.viewers.size() >= this.max_viewers)
+            {
+                this.write(new Viewer(channel), ERROR + " Too Many Spectators\n");
+                close(channel);
+                continue;
+            }
+
+            long clock = this.clock + (System.nanoTime() - this.clock_nanos) / 1_000_000;
+            Viewer viewer = new Viewer(channel);
+
+            if (this.write(viewer, this.welcome + "\n" +
+                    BOARD + " " + this.sequence + " " + clock + " " +
+                    BoardCodec.encode(this.board.snapshot(), this.rows * this.cols) + this.scores + "\n"))
+            {
+                this.viewers.add(viewer);
+            }
+        }
+    }
+
+    /**
+     * writes a string to one viewer
+     *
+     * @return - false if the viewer was dropped
+     */
+    private boolean write(Viewer viewer, String text)
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return this.write(viewer, bytes, bytes.length);
+    }
+
+    /**
+     * writes as much as the socket takes right now and keeps the rest in the viewers backlog
+     *
+     * @param viewer - the viewer
+     * @param bytes - what to send
+     * @param length - amount of bytes from the start of bytes to send
+     * @return - false if the viewer has gone away or fallen too far behind, it has been closed
+     */
+    private boolean write(Viewer viewer, byte[] bytes, int length)
+    {
+        try
+        {
+            ByteBuffer data = ByteBuffer.wrap(bytes, 0, length);
+
+            //the backlog goes first so the viewer gets everything in order
+            if (viewer.backlog.hasRemaining())
+                viewer.channel.write(viewer.backlog);
+            if (!viewer.backlog.hasRemaining())
+                viewer.channel.write(data);
+
+            if (!data.hasRemaining())
+                return true;
+
+            int waiting = viewer.backlog.remaining() + data.remaining();
+            if (waiting > this.max_backlog)
+            {
+                this.dropped++;
+                WAMLog.warn("Relay Dropped Slow Viewer " + viewer.channel.socket().getInetAddress().getHostAddress() +
+                        " (" + waiting + " bytes behind)");
+                close(viewer.channel);
+                return false;
+            }
+
+            if (viewer.backlog.capacity() < waiting)
+            {
+                ByteBuffer backlog = ByteBuffer.allocate(Math.min(this.max_backlog, Math.max(waiting, viewer.backlog.capacity() * 2)));
+                viewer.backlog = backlog.put(viewer.backlog).flip();
+            }
+
+            viewer.backlog.compact().put(data).flip();
+            return true;
+        }
+        catch (IOException e)
+        {
+            close(viewer.channel);
+            return false;
+        }
+    }
+
+    /**
+     * sends a batch of lines to every viewer, dropping any that have gone
+     *
+     * @param bytes - the lines
+     * @param length - amount of bytes to send
+     */
+    private void send(byte[] bytes, int length)
+    {
+        this.viewers.removeIf((Viewer viewer) -> !this.write(viewer, bytes, length));
+    }
+
+    /**
+     * writes what it can of every viewers backlog
+     */
+    private void flush()
+    {
+        this.send(new byte[0], 0);
+        this.report();
+    }
+
+    /**
+     * logs how many are watching and how far behind the game this relay is, every report interval
+     */
+    private void report()
+    {
+        long now = System.currentTimeMillis();
+        if (now - this.last_report < this.report_interval)
+            return;
+
+        WAMLog.info("Relay " + this.server.socket().getLocalPort() + " " + this.viewers.size() + " Watching, Lag " +
+                this.lag + "ms (max " + this.max_lag + "ms), " + this.dropped + " Dropped");
+
+        this.last_report = now;
+        this.max_lag = this.lag;
+    }
+
+    /**
+     * closes upstream, the server socket and every viewer
+     */
+    private void close()
+    {
+        WAMLog.info("Relay " + this.server.socket().getLocalPort() + " Upstream Closed");
+
+        try
+        {
+            this.upstream.close();
+            this.server.close();
+        }
+        catch (IOException ignored) {}
+
+        for (Viewer viewer : this.viewers)
+            close(viewer.channel);
+        this.viewers.clear();
+
+        SocketChannel channel;
+        while ((channel = this.joining.poll()) != null)
+            close(channel);
+
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * closes a connection, ignoring any errors
+     *
+     * @param channel - the connection to close
+     */
+    private static void close(SocketChannel channel)
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException ignored) {}
+    }
+
+    /**
+     * creates the relay and passes the game on until it ends
+     *
+     * @param args - defines the host and port to watch, then the port viewers connect to
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 3)
+        {
+            System.out.println("Missing Command Line Arguments");
+            System.exit(-1);
+        }
+        else
+        {
+            try
+            {
+                Relay relay = new Relay(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+                relay.runRelay();
+            }
+            catch (IOException | WAMException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+            catch (NumberFormatException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+            finally
+            {
+                WAMLog.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package server;
+
+import common.WAMException;
+import common.WAMLog;
+import common.WAMProtocol;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.lang.Thread.sleep;
+
+/**
+ * Whack-A-Mole game shard
+ * one of the backend processes behind a gateway, it runs whatever games the gateway sends it
+ *
+ * every connection starts with a JOIN line from the gateway naming the game, how many players it has,
+ * the players number and the name the player joined with, once all of a games players have joined
+ * the game starts on a shared pool, a game that has not filled by the handshake deadline is dropped and the players it has are closed
+ *
+ * the connections go through admission control like every other server socket, but they all come from the gateways,
+ * so each address gets a much larger budget
+ *
+ *  -Dwam.shard.admitBurst -> connections a gateway can open at once (default 1000)
+ *  -Dwam.shard.admitPerSecond -> connections a gateway can open each second after that (default 1000)
+ *  -Dwam.shard.maxPlayers -> the most players a JOIN can say its game has (default 256)
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Shard implements WAMProtocol
+{
+    /**the server socket the gateway connects to*/
+    private final ServerSocket server;
+
+    /**amount of rows each game will have*/
+    private final int rows;
+    /**amount of columns each game will have*/
+    private final int cols;
+    /**the length of each game*/
+    private final int game_time;
+
+    /**games still waiting on players, by game id*/
+    private final HashMap<Integer, Socket[]> forming;
+    /**the names the players of each forming game joined with, only touched while holding the forming lock*/
+    private final HashMap<Integer, String[]> names;
+    /**where every games final results are kept, null if -Dwam.highscores is not set*/
+    private final HighScoreStore high_scores;
+    /**every players total score across the games in this process*/
+    private final Ranking ranking;
+    /**the pool used for joins and every game*/
+    private final ExecutorService pool;
+    /**turns away connection floods before they reach a join*/
+    private final Admission admission;
+    /**the most players a game can have, a JOIN saying more is refused before anything is made for it*/
+    private final int max_players;
+
+    /**
+     * creates the shard
+     *
+     * @param port - the port the gateway will connect to
+     * @param rows - amount of rows each board will have
+     * @param cols - amount of columns each board will have
+     * @param game_time - the total amount of time each game will run for
+     * @throws IOException - if the server socket can not be opened
+     */
+    public Shard(int port, int rows, int cols, int game_time) throws IOException
+    {
+        this.server = new ServerSocket(port);
+        this.rows = rows;
+        this.cols = cols;
+        this.game_time = game_time;
+
+        this.forming = new HashMap<>();
+        this.names = new HashMap<>();
+        this.pool = Executors.newCachedThreadPool();
+        this.ranking = new Ranking();
+        this.admission = new Admission("Shard", Integer.getInteger("wam.shard.admitBurst", 1000),
+                Integer.getInteger("wam.shard.admitPerSecond", 1000));
+        this.max_players = Integer.getInteger("wam.shard.maxPlayers", 256);
+
+        String high_scores = System.getProperty("wam.highscores");
+        this.high_scores = (high_scores != null) ? new HighScoreStore(Paths.get(high_scores)) : null;
+    }
+
+    /**
+     * accepts connections from the gateway forever
+     *
+     * @throws IOException - if the server socket fails
+     */
+    public void runShard() throws IOException
+    {
+        WAMLog.info("Shard open on port " + this.server.getLocalPort());
+
+        try
+        {
+            while (true)
+            {
+                Socket socket = this.server.accept();
+                if (!this.admission.admit(socket))
+                    continue;
+
+                this.pool.execute(() ->
+                {
+                    try
+                    {
+                        this.join(socket);
+                    }
+                    finally
+                    {
+                        this.admission.done();
+                    }
+                });
+            }
+        }
+        finally
+        {
+            this.pool.shutdown();
+            this.server.close();
+        }
+    }
+
+    /**
+     * reads the JOIN line of a new connection and adds the player to its game
+     *
+     * @param socket - the new connection from the gateway
+     */
+    private void join(Socket socket)
+    {
+        try
+        {
+            socket.setTcpNoDelay(true);
+
+            //the gateway sends the JOIN as soon as it connects, a connection that does not is dropped
+            socket.setSoTimeout(Admission.DEADLINE);
+            String[] in = WAMServer.readLine(socket.getInputStream()).split(" ");
+            socket.setSoTimeout(0);
+
+            if (!in[0].equals(JOIN) || in.length < 4)
+                throw new WAMException("Expected JOIN from gateway");
+
+            int game = Integer.parseInt(in[1]);
+            int players = Integer.parseInt(in[2]);
+            int index = Integer.parseInt(in[3]);
+            if (players < 1 || players > this.max_players || index < 0 || index >= players)
+                throw new WAMException("Bad JOIN " + index + " of " + players);
+
+            Socket[] joined;
+            Socket[] sockets = null;
+            String[] identities = null;
+
+            synchronized (this.forming)
+            {
+                joined = this.forming.get(game);
+                if (joined == null)
+                {
+                    //the first player of the game starts its deadline
+                    Socket[] created = new Socket[players];
+                    this.forming.put(game, created);
+                    this.names.put(game, new String[players]);
+                    this.pool.execute(() -> this.expire(game, created));
+                    joined = created;
+                }
+
+                if (joined.length != players || joined[index] != null)
+                    throw new WAMException("Bad JOIN " + index + " of " + players);
+
+                //the gateway numbers the players, the JOINs can come in any order
+                joined[index] = socket;
+                this.names.get(game)[index] = (in.length > 4) ? in[4] : null;
+                if (!Arrays.asList(joined).contains(null))
+                {
+                    sockets = this.forming.remove(game);
+                    identities = this.names.remove(game);
+                }
+            }
+
+            if (sockets != null)
+                this.startGame(game, sockets, identities);
+        }
+        catch (IOException | WAMException | NumberFormatException e)
+        {
+            WAMLog.warn("Join Failed " + e);
+            try
+            {
+                socket.close();
+            }
+            catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * waits out the handshake deadline of a game that is forming, one that has not filled by then
+     * was called off by the gateway, so the players it has are closed
+     *
+     * @param game - the game id given by the gateway
+     * @param joined - the players of the game, as it was when it started forming
+     */
+    private void expire(int game, Socket[] joined)
+    {
+        try
+        {
+            sleep(Admission.DEADLINE);
+        }
+        catch (InterruptedException e)
+        {
+            return;
+        }
+
+        synchronized (this.forming)
+        {
+            if (this.forming.get(game) != joined)
+                return;
+            this.forming.remove(game);
+            this.names.remove(game);
+        }
+
+        int count = 0;
+        for (Socket socket : joined)
+        {
+            if (socket == null)
+                continue;
+
+            count++;
+            try
+            {
+                socket.close();
+            }
+            catch (IOException ignored) {}
+        }
+
+        WAMLog.log(WAMLog.Level.WARN, game, -1, -1, "Called Off, " + count + " of " + joined.length + " Players Joined");
+    }
+
+    /**
+     * runs a game once all its players have joined
+     *
+     * @param game - the game id given by the gateway
+     * @param sockets - the players in the order they will be numbered
+     * @param names - the name each player joined with, null for one who sent none
+     */
+    private void startGame(int game, Socket[] sockets, String[] names)
+    {
+        WAMLog.log(WAMLog.Level.INFO, game, -1, -1, "Starting with " + sockets.length + " Players");
+
+        this.pool.execute(() ->
+        {
+            try
+            {
+                WAMServer server = new WAMServer(sockets, this.rows, this.cols, this.game_time, this.pool);
+                server.setGame(game);
+                server.setIdentities(names);
+                server.setHighScores(this.high_scores);
+                server.setRanking(this.ranking);
+                server.runServer();
+            }
+            catch (IOException e)
+            {
+                WAMLog.log(WAMLog.Level.ERROR, game, -1, -1, e.toString());
+            }
+            WAMLog.log(WAMLog.Level.INFO, game, -1, -1, "Over, Top Players " + this.ranking.top(3));
+        });
+    }
+
+    /**
+     * creates a shard and runs the games its gateway sends it
+     *
+     * @param args - defines the port, rows, cols, and game time
+     */
+    public static void main(String[] args)
+    {
+        if (args.length != 4)
+        {
+            System.out.println("Missing Command Line Arguments");
+            System.exit(-1);
+        }
+        else
+        {
+            try
+            {
+                Shard shard = new Shard(
+                        Integer.parseInt(args[0]),
+                        Integer.parseInt(args[1]),
+                        Integer.parseInt(args[2]),
+                        Integer.parseInt(args[3]));
+                shard.runShard();
+            }
+            catch (IOException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+            catch (NumberFormatException e)
+            {
+                System.out.println(e);
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package server;
+
+/**
+ * The gateways view of its shards
+ * keeps how many games each shard is running so new games go to the least loaded one,
+ * along with how many games it has been sent in total and how long routing players to it takes
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class ShardRegistry
+{
+    /**the host of each shard*/
+    private final String[] hosts;
+    /**the port of each shard*/
+    private final int[] ports;
+
+    /**games currently running on each shard*/
+    private final int[] active;
+    /**games ever sent to each shard*/
+    private final int[] total;
+
+    /**amount of players routed to each shard, and the total and worst time to connect and join in nanoseconds*/
+    private final long[] joins, join_total, join_max;
+
+    /**
+     * creates the registry
+     *
+     * @param shards - each shard as host:port
+     */
+    public ShardRegistry(String[] shards)
+    {
+        int count = shards.length;
+        this.hosts = new String[count];
+        this.ports = new int[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            int colon = shards[i].lastIndexOf(':');
+            this.hosts[i] = colon > 0 ? shards[i].substring(0, colon) : "localhost";
+            this.ports[i] = Integer.parseInt(shards[i].substring(colon + 1));
+        }
+
+        this.active = new int[count];
+        this.total = new int[count];
+        this.joins = new long[count];
+        this.join_total = new long[count];
+        this.join_max = new long[count];
+    }
+
+    /**
+     * picks the shard with the fewest running games and counts a new game on it
+     *
+     * @return - the shard index
+     */
+    public synchronized int assign()
+    {
+        int best = 0;
+        for (int i = 1; i < this.active.length; i++)
+        {
+            if (this.active[i] < this.active[best])
+                best = i;
+        }
+
+        this.active[best]++;
+        this.total[best]++;
+        return best;
+    }
+
+    /**
+     * called when every player of a game on a shard has disconnected
+     *
+     * @param shard - the shard index
+     */
+    public synchronized void finish(int shard)
+    {
+        this.active[shard]--;
+    }
+
+    /**
+     * adds the time it took to route one player to a shard
+     *
+     * @param shard - the shard index
+     * @param nanos - time to connect and send the JOIN
+     */
+    public synchronized void recordJoin(int shard, long nanos)
+    {
+        this.joins[shard]++;
+        this.join_total[shard] += nanos;
+        this.join_max[shard] = Math.max(this.join_max[shard], nanos);
+    }
+
+    /**
+     * @param shard - the shard index
+     * @return - the shards host
+     */
+    public String getHost(int shard)
+    {
+        return this.hosts[shard];
+    }
+
+    /**
+     * @param shard - the shard index
+     * @return - the shards port
+     */
+    public int getPort(int shard)
+    {
+        return this.ports[shard];
+    }
+
+    /**
+     * @return - the amount of shards
+     */
+    public int size()
+    {
+        return this.hosts.length;
+    }
+
+    /**
+     * the running and total games of one shard and its join latency
+     *
+     * @param shard - the shard index
+     * @return - one line ready to be logged
+     */
+    public synchronized String report(int shard)
+    {
+        return "Shard " + shard + " (" + this.hosts[shard] + ":" + this.ports[shard] + ")"
+                + " games " + this.active[shard] + " running " + this.total[shard] + " total,"
+                + " join avg " + (this.joins[shard] == 0 ? 0 : this.join_total[shard] / this.joins[shard] / 1000) + "us"
+                + " max " + (this.join_max[shard] / 1000) + "us";
+    }
+
+    /**
+     * one line per shard with its running and total games and its join latency
+     *
+     * @return - the report ready to be printed
+     */
+    @Override
+    public synchronized String toString()
+    {
+        String temp = "";
+
+        for (int i = 0; i < this.hosts.length; i++)
+            temp += this.report(i) + "\n";
+
+        return temp;
+    }
+}
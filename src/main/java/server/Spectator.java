@@ -0,0 +1,133 @@
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * One spectator of a game, usually a relay
+ *
+ * the game only ever adds lines to a bounded queue and a thread of the spectators own writes them out,
+ * so a spectator that stops reading can never hold up the game, once its queue is full it is closed
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Spectator implements Runnable
+{
+    /**put on the queue to say nothing more is coming, compared by reference*/
+    private static final String END = new String("END");
+
+    private final Socket socket;
+    /**the lines waiting to be written*/
+    private final ArrayBlockingQueue<String> queue;
+    private volatile boolean closed;
+
+    /**
+     * @param socket - the spectators connection
+     * @param capacity - amount of lines it can fall behind before it is closed
+     */
+    public Spectator(Socket socket, int capacity)
+    {
+        this.socket = socket;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * queues a line for the spectator, never waits
+     *
+     * @param line - the line without its line ending
+     * @return - false if the spectator has gone or fallen too far behind, it has been closed
+     */
+    public boolean offer(String line)
+    {
+        if (this.closed)
+            return false;
+
+        if (!this.queue.offer(line))
+            this.close();
+
+        return !this.closed;
+    }
+
+    /**
+     * writes everything that is queued to the spectator, then closes the connection
+     */
+    public void finish()
+    {
+        if (!this.queue.offer(END))
+            this.close();
+    }
+
+    /**
+     * closes the connection right away, anything still queued is lost
+     */
+    public void close()
+    {
+        this.closed = true;
+        this.queue.clear();
+        this.queue.offer(END);
+
+        try
+        {
+            this.socket.close();
+        }
+        catch (IOException ignored) {}
+    }
+
+    /**
+     * @return - true once the spectator has been closed
+     */
+    public boolean isClosed()
+    {
+        return this.closed;
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * writes the queued lines, everything queued at once goes out with one flush
+     */
+    @Override
+    public void run()
+    {
+        ArrayList<String> lines = new ArrayList<>();
+
+        try
+        {
+            OutputStream out = new BufferedOutputStream(this.socket.getOutputStream());
+
+            while (!this.closed)
+            {
+                lines.add(this.queue.take());
+                this.queue.drainTo(lines);
+
+                for (String line : lines)
+                {
+                    if (line == END)
+                    {
+                        out.flush();
+                        return;
+                    }
+
+                    out.write(line.getBytes(StandardCharsets.US_ASCII));
+                    out.write('\n');
+                }
+
+                out.flush();
+                lines.clear();
+            }
+        }
+        catch (IOException | InterruptedException e)
+        {
+            //the spectator went away, or the game is shutting down
+        }
+        finally
+        {
+            this.close();
+        }
+    }
+}
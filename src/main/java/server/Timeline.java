@@ -0,0 +1,173 @@
+package server;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The whole games mole schedule, worked out before the game starts
+ *
+ * every hole is timed by the same strategy the handlers would use, drawn from one seeded random,
+ * so the same seed and strategy always give the same game and the difficulty curve is known before it starts
+ *
+ * the strategy is asked with the game time the event is planned for and a hit rate that stays at the
+ * middle, so an adaptive strategy plays its normal times
+ *
+ * each event is packed into a long, the time in milliseconds in the high half then the hole and
+ * whether it comes up in the low half, so sorting the array sorts the events by time and the
+ * schedule is one primitive array the timer walks with a cursor
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class Timeline
+{
+    /**the game as it is planned, only the time moves*/
+    private static class Planned implements MoleStrategy.Game
+    {
+        private final int game_time;
+        private double time;
+
+        private Planned(int game_time)
+        {
+            this.game_time = game_time;
+        }
+
+        @Override
+        public double getCurrentTime()
+        {
+            return this.time;
+        }
+
+        @Override
+        public int getGameTime()
+        {
+            return this.game_time;
+        }
+
+        @Override
+        public double getHitRate()
+        {
+            return 0.5;
+        }
+    }
+
+    /**every event in time order*/
+    private final long[] events;
+    /**the seed the schedule was made from*/
+    private final long seed;
+
+    /**
+     * works out the schedule of every hole up to the end of the game
+     *
+     * @param holes - amount of holes on the board
+     * @param game_time - the length of the game in seconds
+     * @param seed - the seed for the random times
+     * @param strategy - decides how long each mole stays up and down
+     */
+    public Timeline(int holes, int game_time, long seed, MoleStrategy strategy)
+    {
+        this.seed = seed;
+
+        Random random = new Random(seed);
+        Planned game = new Planned(game_time);
+        int end = game_time * 1000;
+        long[] events = new long[Math.max(16, holes * 4)];
+        int count = 0;
+
+        for (int hole = 0; hole < holes; hole++)
+        {
+            boolean up = true;
+            game.time = 0;
+            int time = millis(strategy.first(hole, game, random));
+
+            while (time < end)
+            {
+                if (count == events.length)
+                    events = Arrays.copyOf(events, events.length * 2);
+
+                events[count++] = ((long)time << 32) | ((long)hole << 1) | (up ? 1 : 0);
+
+                game.time = time / 1000.0;
+                time += Math.max(1, millis(up ? strategy.up(hole, game, random) : strategy.down(hole, game, random)));
+                up = !up;
+            }
+        }
+
+        this.events = Arrays.copyOf(events, count);
+        Arrays.sort(this.events);
+    }
+
+    /**
+     * @return - seconds from a strategy as whole milliseconds
+     */
+    private static int millis(double seconds)
+    {
+        return (int)Math.round(seconds * 1000);
+    }
+
+    /**
+     * @return - the seed the schedule was made from
+     */
+    public long getSeed()
+    {
+        return this.seed;
+    }
+
+    /**
+     * @return - amount of events in the game
+     */
+    public int size()
+    {
+        return this.events.length;
+    }
+
+    /**
+     * @param i - the event index
+     * @return - the game time of the event in milliseconds
+     */
+    public int time(int i)
+    {
+        return (int)(this.events[i] >>> 32);
+    }
+
+    /**
+     * @param i - the event index
+     * @return - the hole the event is for
+     */
+    public int hole(int i)
+    {
+        return (int)this.events[i] >>> 1;
+    }
+
+    /**
+     * @param i - the event index
+     * @return - true if the mole comes up, false if it goes down
+     */
+    public boolean up(int i)
+    {
+        return (this.events[i] & 1) != 0;
+    }
+
+    /**
+     * finds where to start playing from, used when a game is resumed part way through
+     *
+     * @param millis - the game time in milliseconds
+     * @return - the index of the first event at or after the time
+     */
+    public int seek(int millis)
+    {
+        int low = 0;
+        int high = this.events.length;
+
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (this.time(middle) < millis)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,66 @@
+package server;
+
+/**
+ * A token bucket, limits how often something can happen while still allowing short bursts
+ *
+ * the bucket holds up to burst tokens and refills at a steady rate, each action takes one token,
+ * when it is empty the action is refused
+ *
+ * the tokens are worked out from the clock when they are asked for, so an idle bucket costs nothing,
+ * a bucket belongs to one thread and is not synchronized
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class TokenBucket
+{
+    /**the most tokens the bucket holds*/
+    private final double burst;
+    /**tokens added each nanosecond*/
+    private final double rate;
+
+    /**tokens in the bucket at the last refill*/
+    private double tokens;
+    /**System.nanoTime() of the last refill*/
+    private long last;
+
+    /**
+     * creates a full bucket
+     *
+     * @param burst - the most actions allowed at once
+     * @param per_second - actions allowed each second once the burst is used up
+     */
+    public TokenBucket(int burst, double per_second)
+    {
+        this.burst = Math.max(1, burst);
+        this.rate = per_second / 1_000_000_000.0;
+        this.tokens = this.burst;
+        this.last = System.nanoTime();
+    }
+
+    /**
+     * takes a token if there is one
+     *
+     * @return - true if the action is allowed
+     */
+    public boolean tryTake()
+    {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.burst, this.tokens + (now - this.last) * this.rate);
+        this.last = now;
+
+        if (this.tokens < 1)
+            return false;
+
+        this.tokens--;
+        return true;
+    }
+
+    /**
+     * @return - true if the bucket has filled back up, nothing has been taken from it for a while
+     */
+    public boolean isFull()
+    {
+        return this.tokens + (System.nanoTime() - this.last) * this.rate >= this.burst;
+    }
+}
@@ -0,0 +1,45 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * The original timing, the same all game long
+ * first up after 4 to 10 seconds, up for 1 to 2 seconds, down for 3 to 8
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class UniformStrategy implements MoleStrategy
+{
+    @Override
+    public double first(int hole, Game game, Random random)
+    {
+        return range(random, 4, 10);
+    }
+
+    @Override
+    public double up(int hole, Game game, Random random)
+    {
+        return range(random, 1, 2);
+    }
+
+    @Override
+    public double down(int hole, Game game, Random random)
+    {
+        return range(random, 3, 8);
+    }
+
+    /**
+     * picks a time the same way WAMServer.random_range does,
+     * a random whole second in the range plus a random tenth
+     *
+     * @param random - where random numbers come from
+     * @param min - min number
+     * @param max - max number
+     * @return - randomly selected number of seconds
+     */
+    static double range(Random random, int min, int max)
+    {
+        return random.nextInt(max - min) + min + random.nextInt(10) / 10.0;
+    }
+}
@@ -0,0 +1,187 @@
+package server;
+
+/**
+ * A spatial index of the regions players have subscribed to
+ *
+ * the board is cut into square tiles, each tile keeps the list of players whose region
+ * touches it, so finding who needs a mole event only looks at the one tile the hole is in
+ * instead of every player on every event
+ *
+ * players who never subscribed (or unsubscribed) see the whole board and are not in any tile
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class ViewportIndex
+{
+    /**width and height of a tile in holes*/
+    private static final int TILE = 16;
+
+    /**amount of rows on the board*/
+    private final int rows;
+    /**amount of columns on the board*/
+    private final int cols;
+    /**amount of tiles across one row of the board*/
+    private final int tileCols;
+
+    /**players watching each tile, tiles nobody watches share the empty list*/
+    private final int[][] tiles;
+
+    /**true if the player has a region, false if they get the whole board*/
+    private final boolean[] subscribed;
+    /**the region for each player, top row, left column, bottom row and right column (exclusive)*/
+    private final int[] top, left, bottom, right;
+
+    /**the list used for tiles nobody is watching*/
+    private static final int[] NOBODY = new int[0];
+
+    /**
+     * creates an index with no subscriptions, every player sees the whole board
+     *
+     * @param rows - amount of rows on the board
+     * @param cols - amount of columns on the board
+     * @param players - the max amount of players
+     */
+    public ViewportIndex(int rows, int cols, int players)
+    {
+        this.rows = rows;
+        this.cols = cols;
+        this.tileCols = (cols + TILE - 1) / TILE;
+
+        this.tiles = new int[((rows + TILE - 1) / TILE) * this.tileCols][];
+        for (int i = 0; i < this.tiles.length; i++)
+            this.tiles[i] = NOBODY;
+
+        this.subscribed = new boolean[players];
+        this.top = new int[players];
+        this.left = new int[players];
+        this.bottom = new int[players];
+        this.right = new int[players];
+    }
+
+    /**
+     * gives a player a new region, clamped to the board
+     *
+     * @param player - the player index
+     * @param row - the top row
+     * @param col - the left column
+     * @param height - amount of rows in the region
+     * @param width - amount of columns in the region
+     * @return - the clamped region as top, left, rows, cols
+     */
+    public synchronized int[] subscribe(int player, int row, int col, int height, int width)
+    {
+        this.unsubscribe(player);
+
+        int top = Math.max(0, Math.min(row, this.rows));
+        int left = Math.max(0, Math.min(col, this.cols));
+        //added up as longs so a huge height or width clamps to the edge instead of overflowing
+        int bottom = Math.max(top, (int)Math.min(this.rows, (long)row + Math.max(0, height)));
+        int right = Math.max(left, (int)Math.min(this.cols, (long)col + Math.max(0, width)));
+
+        this.top[player] = top;
+        this.left[player] = left;
+        this.bottom[player] = bottom;
+        this.right[player] = right;
+        this.subscribed[player] = true;
+
+        for (int tileRow = top / TILE; tileRow * TILE < bottom; tileRow++)
+            for (int tileCol = left / TILE; tileCol * TILE < right; tileCol++)
+                this.add(tileRow * this.tileCols + tileCol, player);
+
+        return new int[] {top, left, bottom - top, right - left};
+    }
+
+    /**
+     * removes a players region, they go back to seeing the whole board
+     *
+     * @param player - the player index
+     */
+    public synchronized void unsubscribe(int player)
+    {
+        if (!this.subscribed[player])
+            return;
+
+        for (int tileRow = this.top[player] / TILE; tileRow * TILE < this.bottom[player]; tileRow++)
+            for (int tileCol = this.left[player] / TILE; tileCol * TILE < this.right[player]; tileCol++)
+                this.remove(tileRow * this.tileCols + tileCol, player);
+
+        this.subscribed[player] = false;
+    }
+
+    /**
+     * @param player - the player index
+     * @return - true if the player only gets their own region
+     */
+    public synchronized boolean isSubscribed(int player)
+    {
+        return this.subscribed[player];
+    }
+
+    /**
+     * checks if a hole is inside of a players region
+     *
+     * @param player - the player index
+     * @param hole - the row-major hole number
+     * @return - true if the player should get events for the hole
+     */
+    public synchronized boolean contains(int player, int hole)
+    {
+        if (!this.subscribed[player])
+            return true;
+
+        int row = hole / this.cols;
+        int col = hole % this.cols;
+
+        return row >= this.top[player] && row < this.bottom[player]
+                && col >= this.left[player] && col < this.right[player];
+    }
+
+    /**
+     * the players whose region touches the tile a hole is in,
+     * they still need to be checked with contains since a region can cover part of a tile
+     *
+     * the list is never changed once handed out, so it is safe to walk without the lock
+     *
+     * @param hole - the row-major hole number
+     * @return - the players watching the holes tile
+     */
+    public synchronized int[] watchers(int hole)
+    {
+        return this.tiles[(hole / this.cols / TILE) * this.tileCols + (hole % this.cols) / TILE];
+    }
+
+    /**
+     * adds a player to a tile, copying the list so handed out lists never change
+     */
+    private void add(int tile, int player)
+    {
+        int[] old = this.tiles[tile];
+        int[] list = new int[old.length + 1];
+        System.arraycopy(old, 0, list, 0, old.length);
+        list[old.length] = player;
+        this.tiles[tile] = list;
+    }
+
+    /**
+     * removes a player from a tile, copying the list so handed out lists never change
+     */
+    private void remove(int tile, int player)
+    {
+        int[] old = this.tiles[tile];
+        if (old.length == 1)
+        {
+            this.tiles[tile] = NOBODY;
+            return;
+        }
+
+        int[] list = new int[old.length - 1];
+        int j = 0;
+        for (int watcher : old)
+        {
+            if (watcher != player && j < list.length)
+                list[j++] = watcher;
+        }
+        this.tiles[tile] = list;
+    }
+}
@@ -1,13 +1,34 @@
 package server;
 
+import common.BoardCodec;
+import common.WAMBoard;
+import common.WAMEvents;
+import common.WAMLog;
 import common.WAMProtocol;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 
 
@@ -22,175 +43,1410 @@ import static java.lang.Thread.sleep;
  *
  *  handler thread -> linked to each mole to send them out randomly to clients, the timing is random who gets it is not
  *  all players are synchronized and will get and lose the same moles
+ *  with -Dwam.timeline the handlers are replaced by one timeline thread playing a schedule made before the game,
+ *  a board with more holes than -Dwam.maxHandlers (default 4096) always uses the timeline
  *
  *  timer thread -> (this.run() launched as thread) keeps current server time by compare current time compaired to
  *  a time stamp made when the game started
  *
+ *  accept thread -> when the game has its own server socket, accepts every connection from before the first
+ *  player is seated until the game is over, each admitted one has its JOIN, RESUME or SPECTATE read on a thread
+ *  of its own, a seat only counts once its JOIN arrives, and a JOIN once the seats are full is sent an ERROR
+ *
  *  listener thread -> defined in its own class (its a bit too complicated to just launch from here), creates a
  *  thread for each client connected and waits on protocol from them
+ *  with -Dwam.pipeline the listeners only decode, they put whacks, BOARD and SUBSCRIBE requests in a command
+ *  ring and the main thread applies them one at a time in order, so whacks are judged and scored by one thread,
+ *  the handlers or the timeline still move the moles themselves, so moving a mole, knocking one down and
+ *  changing a score keep their locks in this mode too
  *
  * @author Christopher Asbrock
  * @author Shakeel Farooq
  *
  */
-public class WAMServer implements WAMProtocol
+public class WAMServer implements WAMProtocol, MoleStrategy.Game
 {
+    /**marks a file as a Whack-A-Mole checkpoint, checkpoints from before the version field used 0x57414D43*/
+    private static final int CHECKPOINT_MAGIC = 0x57414D4B;
+    /**the layout of the checkpoint, a file with any other version is not restored*/
+    private static final int CHECKPOINT_VERSION = 1;
+
     /**Time stamp for the start of the game*/
     private int game_time;
 
-    /**the server for the server*/
-    private final ServerSocket server;
+    /**the server for the server, null when the players were handed over by a lobby*/
+    private final ServerSocket server;
+    /**runs the timer, listener and handler threads, a lobby passes its pool so threads are reused between games*/
+    private final Executor executor;
+
+    /**amount of rows the game will have*/
+    private int rows;
+    /**amount of columns the game will have*/
+    private int cols;
+    /**the max amount of players the game will have*/
+    private int maxPlayers;
+    /**a gradually updated current time used to run the game and send out moves*/
+    private volatile double currtime;
+
+    /**an array of integers to hold scores, disconnected players will be null*/
+    private Integer[] scores;
+    /**a packed board representing moles, true is up, false is down*/
+    private final WAMBoard spots;
+    /**the last few moves of every hole, used to judge whacks against what the player saw*/
+    private final BoardHistory history;
+    /**sequence number of the last mole event sent, whacks send back the last one they saw*/
+    private int sequence;
+    /**System.nanoTime() when the server was created, the base of the history times*/
+    private final long start_nanos;
+    /**how far back in milliseconds a whack is allowed to reach, set with -Dwam.lagWindow*/
+    private final int lag_window;
+
+    /**round trip, jitter and clock offset estimates for each player*/
+    private final LatencyStats[] latency;
+    /**milliseconds between each round of PINGs, set with -Dwam.pingInterval*/
+    private final int ping_interval;
+    /**milliseconds a player can send nothing before they are dropped, set with -Dwam.idleTimeout, 0 for never*/
+    private final int idle_timeout;
+    /**milliseconds a write to a player can be stuck before they are dropped, set with -Dwam.writeTimeout*/
+    private final int write_timeout;
+    /**System.nanoTime() when the game clock started, used to see how far the clock falls behind*/
+    private long go_nanos;
+
+    /**decides how long moles stay up and down, set with -Dwam.strategy*/
+    private final MoleStrategy strategy;
+    /**an average of the recent whacks, 1 for a hit and 0 for a miss, each whack counts for 1/16*/
+    private volatile double hit_rate;
+
+    /**the whole games mole schedule when -Dwam.timeline is set, null when each hole has a handler*/
+    private final Timeline timeline;
+    /**the thread playing the timeline, woken by whacks*/
+    private volatile Thread timer;
+
+    /**the game time each mole will next move at, kept by the handlers so a checkpoint can save it*/
+    private final float[] deadlines;
+    /**where the game is checkpointed, null if it is not*/
+    private Path checkpoint;
+    /**seconds between checkpoints, set with -Dwam.checkpointInterval*/
+    private int checkpoint_interval;
+    /**true if this game was picked back up from a checkpoint*/
+    private boolean resumed;
+
+    /**the session token of each player, sent in the WELCOME and given back in a RESUME*/
+    private final String[] tokens;
+    /**the name each player sent in their JOIN, null if they sent none or another player already had it*/
+    private final String[] identities;
+    /**false while a player is between connections, their slot and score are held for the grace period*/
+    private final boolean[] connected;
+    /**how many times each player has connected, a listener for an older connection can not drop the newer one*/
+    private final int[] attaches;
+    /**seconds a dropped player's slot is held, set with -Dwam.gracePeriod*/
+    private final int grace_period;
+    /**where a lobby finds the game a session token belongs to, null if there is no lobby*/
+    private Map<String, WAMServer> sessions;
+
+    /**where final results are kept between games, null if they are not kept*/
+    private HighScoreStore high_scores;
+    /**the ranking of every player by total score, null if there is none*/
+    private Ranking ranking;
+
+    /**the regions of the board each player has subscribed to*/
+    private final ViewportIndex viewports;
+    /**an array of sockets for each player connected*/
+    private final Socket[] SOCKET;
+    /**an array of output streams for each player*/
+    private final PrintStream[] PRINTER;
+    /**what each players PRINTER writes through, shows how long a write to them has been stuck*/
+    private final WatchedOutputStream[] OUTPUT;
+    /**the spectators watching the game, usually relays, only changed while holding the server lock*/
+    private final ArrayList<Spectator> spectators;
+    /**the most spectators the game sends to directly, set with -Dwam.maxSpectators, more go through relays*/
+    private final int max_spectators;
+    /**lines a spectator can fall behind before it is dropped, set with -Dwam.spectatorQueue*/
+    private final int spectator_queue;
+
+    /**helper check, if a mole was whacked it will restart the loop to start the process over*/
+    private final WAMBoard whacked;
+    /**helper check, tells the server to start*/
+    protected volatile boolean go;
+    /**helper check, will break all the loops in every thread signalling the end of the game*/
+    protected volatile boolean game_over;
+    /**helper check, used by listener to tell the handler when to send scores out*/
+    protected volatile boolean send_score;
+
+    /**the id a lobby or shard gave this game for its log lines, -1 for a single game*/
+    private int game = -1;
+
+    /**turns away connection floods on the games own server socket, null when a lobby accepted the players*/
+    private final Admission admission;
+    /**a permit for each player seated by a JOIN on the games own server socket, taken in seat order*/
+    private final Semaphore seated;
+
+    /**the commands of the -Dwam.pipeline option, null when the listeners apply their own commands*/
+    private final CommandRing commands;
+
+    /**command types in the ring*/
+    protected static final int WHACK_COMMAND = 0, PENALTY_COMMAND = 1, BOARD_COMMAND = 2, SUBSCRIBE_COMMAND = 3;
+
+    /**
+     * constructor for the server class
+     * initializes the information needed to run one full game of Whack-A-Mole
+     *
+     * @param port - the port number
+     * @param rows - amount of rows the board will have
+     * @param cols - amount of columns the board will have
+     * @param player_number - the number of players
+     * @param game_time - the total amount of time the game will run for
+     * @throws IOException - if there are any I/O errors thrown
+     */
+    public WAMServer(int port, int rows, int cols, int player_number, int game_time) throws IOException
+    {
+        this(new ServerSocket(port), null, rows, cols, player_number, game_time,
+                (Runnable task) -> new Thread(task).start());
+    }
+
+    /**
+     * constructor for a game whose players have already connected
+     * used by the lobby, which accepts the players and hands them over once it has enough for a game
+     *
+     * @param players - the connected sockets, one for each player in the order they will be numbered
+     * @param rows - amount of rows the board will have
+     * @param cols - amount of columns the board will have
+     * @param game_time - the total amount of time the game will run for
+     * @param executor - runs the threads of the game
+     */
+    public WAMServer(Socket[] players, int rows, int cols, int game_time, Executor executor)
+    {
+        this(null, players, rows, cols, players.length, game_time, executor);
+    }
+
+    /**
+     * shared constructor, either the server socket or the players will be null
+     */
+    private WAMServer(ServerSocket server, Socket[] players, int rows, int cols, int player_number, int game_time,
+                      Executor executor)
+    {
+        this.game_time = game_time;
+        this.rows = rows;
+        this.cols = cols;
+        this.maxPlayers = player_number;
+
+        this.server = server;
+        this.executor = executor;
+        this.admission = (server != null) ? new Admission("Game") : null;
+        this.seated = new Semaphore(0);
+
+        this.spots = new WAMBoard(rows * cols);
+        this.scores = new Integer[maxPlayers];
+        for (int i = 0; i < this.scores.length; i++)
+            this.scores[i] = 0;
+
+        this.go = false;
+        this.game_over = false;
+
+        this.whacked = new WAMBoard(rows * cols);
+        this.send_score = true;
+
+        this.SOCKET = (players != null) ? players.clone() : new Socket[maxPlayers];
+        this.PRINTER = new PrintStream[maxPlayers];
+        this.OUTPUT = new WatchedOutputStream[maxPlayers];
+        this.spectators = new ArrayList<>();
+        this.max_spectators = Integer.getInteger("wam.maxSpectators", 8);
+        this.spectator_queue = Integer.getInteger("wam.spectatorQueue", 65536);
+        this.viewports = new ViewportIndex(rows, cols, maxPlayers);
+
+        this.history = new BoardHistory(rows * cols, Integer.getInteger("wam.historyDepth", 4));
+        this.lag_window = Integer.getInteger("wam.lagWindow", 150);
+        this.start_nanos = System.nanoTime();
+
+        this.latency = new LatencyStats[maxPlayers];
+        for (int i = 0; i < this.latency.length; i++)
+            this.latency[i] = new LatencyStats();
+        this.ping_interval = Integer.getInteger("wam.pingInterval", 1000);
+        //every client answers each PING, so a few intervals of silence means the player is gone
+        this.idle_timeout = Integer.getInteger("wam.idleTimeout", Math.max(10000, this.ping_interval * 5));
+        this.write_timeout = Integer.getInteger("wam.writeTimeout", 10000);
+
+        this.deadlines = new float[rows * cols];
+
+        SecureRandom random = new SecureRandom();
+        this.tokens = new String[maxPlayers];
+        for (int i = 0; i < this.tokens.length; i++)
+            this.tokens[i] = Long.toHexString(random.nextLong() | Long.MIN_VALUE);
+
+        this.identities = new String[maxPlayers];
+        this.connected = new boolean[maxPlayers];
+        this.attaches = new int[maxPlayers];
+        this.grace_period = Integer.getInteger("wam.gracePeriod", 15);
+
+        this.strategy = MoleStrategy.named(System.getProperty("wam.strategy", "uniform"));
+        this.hit_rate = 0.5;
+
+        this.commands = Boolean.getBoolean("wam.pipeline")
+                ? new CommandRing(Integer.getInteger("wam.pipelineSize", 4096)) : null;
+
+        //a handler is a thread, a board bigger than the cap is played from a timeline by one thread instead
+        int max_handlers = Integer.getInteger("wam.maxHandlers", 4096);
+        if (!Boolean.getBoolean("wam.timeline") && rows * cols > max_handlers)
+            WAMLog.warn(rows * cols + " Holes is More Than wam.maxHandlers (" + max_handlers + "), Using a Timeline");
+
+        if (Boolean.getBoolean("wam.timeline") || rows * cols > max_handlers)
+        {
+            long seed = Long.getLong("wam.seed", random.nextLong());
+            this.timeline = new Timeline(rows * cols, game_time, seed, this.strategy);
+            WAMLog.info("Timeline of " + this.timeline.size() + " Events, Seed " + seed);
+        }
+        else
+        {
+            this.timeline = null;
+        }
+    }
+
+    /**
+     * gives the server a store to add every players final result to
+     *
+     * @param high_scores - the store, shared by every game in the process
+     */
+    public void setHighScores(HighScoreStore high_scores)
+    {
+        this.high_scores = high_scores;
+    }
+
+    /**
+     * gives the server a ranking to add every players final score to
+     *
+     * @param ranking - the ranking, shared by every game in the process
+     */
+    public void setRanking(Ranking ranking)
+    {
+        this.ranking = ranking;
+    }
+
+    /**
+     * gives the game an id, put on every line it logs
+     *
+     * @param game - the id
+     */
+    public void setGame(int game)
+    {
+        this.game = game;
+    }
+
+    /**
+     * @return - the id of the game for its log lines, -1 if it has none
+     */
+    public int getGame()
+    {
+        return this.game;
+    }
+
+    /**
+     * logs a line about this game
+     *
+     * @param player - the player index it is about, -1 for none
+     * @param message - the text of the line
+     */
+    protected void log(int player, String message)
+    {
+        WAMLog.log(WAMLog.Level.INFO, this.game, player < 0 ? -1 : player + 1, -1, message);
+    }
+
+    /**
+     * registers the session tokens of this game so a lobby can hand reconnecting players back to it,
+     * they are taken out again when the game closes
+     *
+     * @param sessions - every running games tokens, shared by the lobby
+     */
+    public void setSessions(Map<String, WAMServer> sessions)
+    {
+        this.sessions = sessions;
+        for (String token : this.tokens)
+            sessions.put(token, this);
+    }
+
+    /**
+     * gives every player the name from their JOIN, used by a lobby or shard that read the JOINs
+     *
+     * @param names - the name of each player in the order they are numbered, null for a player who sent none
+     */
+    public void setIdentities(String[] names)
+    {
+        for (int i = 0; i < names.length && i < this.maxPlayers; i++)
+            this.setIdentity(i, names[i]);
+    }
+
+    /**
+     * gives a player the name from their JOIN,
+     * a name another player of this game already has is not used, so two players never count as one
+     *
+     * @param player - the player index
+     * @param name - the name, null if they sent none
+     */
+    protected synchronized void setIdentity(int player, String name)
+    {
+        if (name == null || name.isEmpty() || name.length() > 64)
+            return;
+
+        for (String other : this.identities)
+        {
+            if (name.equals(other))
+                return;
+        }
+
+        this.identities[player] = name;
+    }
+
+    /**
+     * who a player is across games, the name they sent in their JOIN,
+     * or their session token if they sent none, which only ever stands for this one game
+     *
+     * @param player - the player index
+     * @return - the players identity, null if they never came back to a resumed game
+     */
+    protected synchronized String getIdentity(int player)
+    {
+        if (this.SOCKET[player] == null)
+            return null;
+
+        return (this.identities[player] != null) ? this.identities[player] : this.tokens[player];
+    }
+
+    /**
+     * checkpoints the game to a file every few seconds, if the file is already there the game
+     * picks up where the checkpoint left off and holds the slots of the players that were still connected
+     * until they RESUME
+     *
+     * @param file - the checkpoint file
+     * @throws IOException - if there is a checkpoint and it can not be read
+     */
+    public void setCheckpoint(Path file) throws IOException
+    {
+        this.checkpoint = file;
+        this.checkpoint_interval = Integer.getInteger("wam.checkpointInterval", 5);
+
+        if (Files.exists(file))
+            this.restore(file);
+    }
+
+    /**
+     * gets the game times each mole will next move at
+     * each handler keeps its own moles time up to date
+     *
+     * @return - the deadline of every hole
+     */
+    protected float[] getDeadlines()
+    {
+        return this.deadlines;
+    }
+
+    /**
+     * @return - true if the game was picked back up from a checkpoint
+     */
+    protected boolean isResumed()
+    {
+        return this.resumed;
+    }
+
+    protected WAMBoard getWhacked()
+    {
+        return this.whacked;
+    }
+
+    protected WAMBoard getSpots()
+    {
+        return this.spots;
+    }
+
+    @Override
+    public double getCurrentTime()
+    {
+        return this.currtime;
+    }
+
+    @Override
+    public int getGameTime()
+    {
+        return this.game_time;
+    }
+
+    @Override
+    public double getHitRate()
+    {
+        return this.hit_rate;
+    }
+
+    /**
+     * adds a whack to the recent hit rate
+     *
+     * @param hit - true if the whack hit a mole
+     */
+    private synchronized void recordHit(boolean hit)
+    {
+        this.hit_rate += ((hit ? 1 : 0) - this.hit_rate) / 16;
+    }
+
+    /**
+     * @return - the strategy deciding how long moles stay up and down
+     */
+    protected MoleStrategy getStrategy()
+    {
+        return this.strategy;
+    }
+
+    /**
+     * @return - milliseconds since the server was created, the clock used by the board history
+     */
+    protected int getMillis()
+    {
+        return (int)((System.nanoTime() - this.start_nanos) / 1_000_000);
+    }
+
+    /**
+     * judges a whack against the board the player was looking at,
+     * a mole that went down while the whack was in transit still counts if it was within the lag window
+     *
+     * a whack that names the generation of the mole it was aimed at can only hit that appearance,
+     * a repeat of a whack at an appearance that was already whacked is rejected and is not a miss either,
+     * a whack at an appearance that is stale or already down is a miss like any other
+     *
+     * @param hole - the hole that was whacked
+     * @param seq - the last event sequence the player saw, negative if the client did not send one
+     * @param generation - the generation from the MOLE_UP that was whacked, negative if the client did not send one
+     * @return - BoardHistory.HIT if the mole is knocked down and nobody else can get it, MISS or REPEAT
+     */
+    protected int whack(int hole, int seq, int generation)
+    {
+        int result;
+        if (generation >= 0)
+            result = this.history.claimGeneration(hole, generation, this.getMillis(), this.lag_window);
+        else
+            result = this.history.claim(hole, seq, this.getMillis(), this.lag_window) ? BoardHistory.HIT : BoardHistory.MISS;
+
+        if (result == BoardHistory.REPEAT)
+            return result;
+
+        if (result == BoardHistory.MISS)
+        {
+            this.recordHit(false);
+            return result;
+        }
+
+        this.recordHit(true);
+
+        //if it is still up, knock it down and let its handler send it down and restart
+        if (this.spots.set(hole, false))
+        {
+            this.whacked.set(hole, true);
+
+            Thread timer = this.timer;
+            if (timer != null)
+                LockSupport.unpark(timer);
+        }
+
+        return BoardHistory.HIT;
+    }
+    /**
+     * A method that will be launched as a thread
+     * it will simply create a start time then change the servers time based on the time elapsed
+     *
+     * when the times up it will change the state of the game to over
+     */
+    private void run()
+    {
+        //a resumed clock already has time on it
+        this.go_nanos = System.nanoTime() - (long)(this.currtime * 1_000_000_000L);
+        this.go = true;
+        double time = 0;
+        try
+        {
+            while (true)
+            {
+                if (game_over)
+                    break;
+
+                //only a tick over the events threshold is recorded
+                WAMEvents.TickOverrun overrun = new WAMEvents.TickOverrun();
+                overrun.begin();
+
+                sleep(100);
+                this.currtime += (0.1);
+
+                if (overrun.shouldCommit())
+                {
+                    overrun.game = this.game;
+                    overrun.tickLag = this.getTickLag();
+                    overrun.commit();
+                }
+
+                if (currtime >= game_time)
+                {
+                    this.game_over = true;
+                    break;
+                }
+            }
+        }
+                catch (InterruptedException e)
+        {
+            e.printStackTrace();
+        }
+        this.log(-1, "TIME'S UP");
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * plays the timeline in place of the handlers, one thread for the whole board
+     *
+     * a cursor walks the events as the game clock passes them, an event that would not change its hole
+     * is skipped, that is how a whack moves a mole down early without changing the rest of the schedule,
+     * the scheduled down after it finds the hole already down
+     *
+     * whacked moles are found through the sparse index of the whacked board and sent down right away,
+     * whack() wakes the thread so it does not wait for the next event
+     */
+    private void runTimeline()
+    {
+        this.timer = Thread.currentThread();
+        int[] buffer = new int[this.rows * this.cols];
+
+        try
+        {
+            //a resumed game starts from its clock
+            int cursor = this.timeline.seek((int)(this.currtime * 1000));
+
+            while (!this.game_over)
+            {
+                int count = this.whacked.activeHoles(buffer);
+                for (int i = 0; i < count; i++)
+                {
+                    this.moveMole(buffer[i], false);
+                    this.whacked.set(buffer[i], false);
+                }
+
+                if (!this.go)
+                {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                    continue;
+                }
+
+                int now = (int)(this.currtime * 1000);
+                while (cursor < this.timeline.size() && this.timeline.time(cursor) <= now)
+                {
+                    int hole = this.timeline.hole(cursor);
+                    boolean up = this.timeline.up(cursor);
+
+                    if (this.spots.get(hole) != up)
+                    {
+                        WAMEvents.Mole event = new WAMEvents.Mole();
+                        event.begin();
+                        this.moveMole(hole, up);
+
+                        if (event.shouldCommit())
+                        {
+                            event.game = this.game;
+                            event.hole = hole;
+                            event.up = up;
+                            event.late = now - this.timeline.time(cursor);
+                            event.commit();
+                        }
+                    }
+                    cursor++;
+                }
+
+                //the clock moves in tenths, a few looks per tenth keeps the events close to it
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            }
+        }
+        finally
+        {
+            this.timer = null;
+        }
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * sends a PING to every connected player each ping interval until the game is over
+     */
+    private void runPings()
+    {
+        try
+        {
+            while (!this.game_over)
+            {
+                sleep(this.ping_interval);
+                this.sendPings();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            WAMLog.log(WAMLog.Level.ERROR, this.game, -1, -1, "Pings Interrupted " + e);
+        }
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * drops any player a write has been stuck on for longer than the write timeout
+     *
+     * the stuck write holds the server lock, so the socket is closed without it,
+     * that lets the write go and the players listener drops them the same as any lost connection
+     */
+    private void runWriteWatchdog()
+    {
+        try
+        {
+            while (!this.game_over)
+            {
+                sleep(Math.max(100, Math.min(1000, this.write_timeout / 4)));
+
+                long now = System.nanoTime();
+                for (int i = 0; i < this.maxPlayers; i++)
+                {
+                    WatchedOutputStream output = this.OUTPUT[i];
+                    Socket socket = this.SOCKET[i];
+                    if (output == null || socket == null || output.stalledFor(now) < this.write_timeout)
+                        continue;
+
+                    this.log(i, "Write Stuck for " + output.stalledFor(now) + "ms, Closing");
+                    try
+                    {
+                        socket.close();
+                    }
+                    catch (IOException ignored) {}
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            WAMLog.log(WAMLog.Level.ERROR, this.game, -1, -1, "Write Watchdog Interrupted " + e);
+        }
+    }
+
+    /**
+     * sends each connected player a PING with a token (the servers clock in nanoseconds),
+     * the players last measured round trip and the current tick lag,
+     * a recording gets each players latency estimates every round too
+     */
+    private synchronized void sendPings()
+    {
+        long token = System.nanoTime() - this.start_nanos;
+        long lag = this.getTickLag();
+
+        this.sendSpectators(TIME + " " + System.currentTimeMillis() + " " + (long)(this.currtime * 1000));
+
+        for (int i = 0; i < this.maxPlayers; i++)
+        {
+            if (this.isConnected(i))
+            {
+                this.PRINTER[i].println(PING + " " + token + " " + this.latency[i].getRtt() + " " + lag);
+
+                WAMEvents.Latency event = new WAMEvents.Latency();
+                if (event.shouldCommit())
+                {
+                    event.game = this.game;
+                    event.player = i + 1;
+                    event.rtt = this.latency[i].getRtt();
+                    event.jitter = this.latency[i].getJitter();
+                    event.offset = this.latency[i].getOffset();
+                    event.samples = this.latency[i].getSamples();
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * called by a listener when its player answers a PING
+     * a negative token is a late answer to a PING the lobby sent while the player was queued, it is not measured
+     *
+     * @param player - the player index
+     * @param token - the token sent in the PING
+     * @param client_millis - the clients wall clock when it answered
+     */
+    protected void pong(int player, long token, long client_millis)
+    {
+        if (token < 0)
+            return;
+
+        long rtt = (System.nanoTime() - this.start_nanos - token) / 1000;
+        this.latency[player].sample(rtt, System.currentTimeMillis(), client_millis);
+    }
+
+    /**
+     * @return - how many milliseconds the game clock has fallen behind the wall clock, 0 before the game starts
+     */
+    public long getTickLag()
+    {
+        if (!this.go)
+            return 0;
+
+        return Math.max(0, (System.nanoTime() - this.go_nanos) / 1_000_000 - (long)(this.currtime * 1000));
+    }
+
+    /**
+     * prints the latency of every player and how far the game clock fell behind
+     */
+    private void printLatency()
+    {
+        for (int i = 0; i < this.latency.length; i++)
+        {
+            this.log(i, this.latency[i].toString());
+        }
+        this.log(-1, "Tick Lag " + this.getTickLag() + "ms");
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * writes a checkpoint every checkpoint interval until the game is over,
+     * the game keeps running while it writes and one failed write does not stop the next
+     */
+    private void runCheckpoints()
+    {
+        try
+        {
+            while (!this.game_over)
+            {
+                sleep(this.checkpoint_interval * 1000L);
+
+                try
+                {
+                    if (!this.game_over)
+                        this.writeCheckpoint();
+                }
+                catch (IOException e)
+                {
+                    WAMLog.log(WAMLog.Level.ERROR, this.game, -1, -1, "Checkpoint Failed " + e);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            WAMLog.log(WAMLog.Level.ERROR, this.game, -1, -1, "Checkpoints Interrupted " + e);
+        }
+    }
+
+    /**
+     * writes the game to a temporary file then moves it over the last checkpoint,
+     * so the checkpoint on disk is always a whole one
+     *
+     * the format is a header (magic, version, rows, cols, players, game time), the clock and event sequence,
+     * the scores (a flag for disconnected players), session tokens and names,
+     * the packed board and each holes deadline
+     *
+     * @throws IOException - if the file can not be written
+     */
+    private void writeCheckpoint() throws IOException
+    {
+        Path temp = this.checkpoint.resolveSibling(this.checkpoint.getFileName() + ".tmp");
+        Integer[] scores = this.getScores().clone();
+        String[] identities;
+        synchronized (this)
+        {
+            identities = this.identities.clone();
+        }
+        long[] board = this.spots.snapshot();
+
+        FileOutputStream file = new FileOutputStream(temp.toFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file)))
+        {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeInt(this.rows);
+            out.writeInt(this.cols);
+            out.writeInt(this.maxPlayers);
+            out.writeInt(this.game_time);
+            out.writeDouble(this.currtime);
+            out.writeInt(this.sequence);
+
+            for (int i = 0; i < scores.length; i++)
+            {
+                out.writeBoolean(scores[i] != null);
+                out.writeInt(scores[i] != null ? scores[i] : 0);
+                out.writeUTF(this.tokens[i]);
+                out.writeBoolean(identities[i] != null);
+                out.writeUTF(identities[i] != null ? identities[i] : "");
+            }
+
+            for (long word : board)
+                out.writeLong(word);
+
+            for (float deadline : this.deadlines)
+                out.writeFloat(deadline);
+
+            out.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temp, this.checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * picks a game back up from a checkpoint
+     * every mole that was up starts a new appearance in the history, so whacks at it can be judged
+     *
+     * @param file - the checkpoint file
+     * @throws IOException - if it can not be read or is for a different game
+     */
+    private void restore(Path file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION)
+                throw new IOException("Checkpoint " + file + " is not a checkpoint this version can read");
+
+            if (in.readInt() != this.rows || in.readInt() != this.cols
+                    || in.readInt() != this.maxPlayers || in.readInt() != this.game_time)
+                throw new IOException("Checkpoint " + file + " is not for this game");
+
+            this.currtime = in.readDouble();
+            this.sequence = in.readInt();
+
+            for (int i = 0; i < this.maxPlayers; i++)
+            {
+                boolean connected = in.readBoolean();
+                int score = in.readInt();
+                this.scores[i] = connected ? score : null;
+                this.tokens[i] = in.readUTF();
+                boolean named = in.readBoolean();
+                String identity = in.readUTF();
+                this.identities[i] = named ? identity : null;
+            }
+
+            long[] board = new long[WAMBoard.wordsFor(this.rows * this.cols)];
+            for (int i = 0; i < board.length; i++)
+                board[i] = in.readLong();
+            this.spots.restore(board);
+
+            int[] up = new int[this.spots.count()];
+            int count = this.spots.activeHoles(up);
+            for (int i = 0; i < count; i++)
+                this.history.record(up[i], this.sequence, this.getMillis(), true);
+
+            for (int i = 0; i < this.deadlines.length; i++)
+                this.deadlines[i] = in.readFloat();
+        }
+
+        this.resumed = true;
+        this.log(-1, "Resuming Game at " + (int)this.currtime + "s from " + file);
+    }
+
+    /**
+     * sets up a new listener thread for all clients connected
+     * sends them a welcome massage containing the information needed to set up a board
+     *
+     * if a lobby already accepted the players they are welcomed right away,
+     * if the game was resumed nobody is waited for, the players still connected at the checkpoint
+     * have their slots held until they RESUME
+     *
+     * @throws IOException - if there are any I/O exceptions
+     */
+    private void setUpListeners() throws IOException
+    {
+        for (int i = 0; i < maxPlayers; i++)
+        {
+            if (this.scores[i] == null)
+                continue;
+
+            if (this.resumed)
+            {
+                this.disconnect(i, this.attaches[i]);
+                continue;
+            }
+
+            if (this.server != null)
+            {
+                //seats are handed out in order, so once a permit is taken this seat is filled
+                this.log(i, "Waiting to Connect...");
+                this.seated.acquireUninterruptibly();
+            }
+
+            this.setOutput(i, this.SOCKET[i]);
+            this.welcome(i);
+            this.sendBoard(i);
+            this.connected[i] = true;
+
+            Listener b = new Listener(this.SOCKET[i], this, i, this.attaches[i]);
+            this.executor.execute(b);
+
+            this.log(i, "Connected");
+        }
+    }
+
+    /**
+     * gives a player who sent a JOIN the next open seat
+     * seats are only handed out while a new game on its own server socket is filling up
+     *
+     * @param socket - the players connection
+     * @param name - the name the player sent in their JOIN, null if they sent none
+     * @return - the seat, or -1 if every seat is taken
+     */
+    private synchronized int seat(Socket socket, String name)
+    {
+        if (this.resumed)
+            return -1;
+
+        for (int i = 0; i < this.maxPlayers; i++)
+        {
+            if (this.scores[i] == null || this.SOCKET[i] != null)
+                continue;
+
+            this.SOCKET[i] = socket;
+            this.setIdentity(i, name);
+            this.seated.release();
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * sets up a new connection of a player, the reads on it time out after the idle timeout
+     * and the writes to it are watched
+     *
+     * @param player - the player index
+     * @param socket - the players connection
+     * @throws IOException - if the connection can not be used
+     */
+    private void setOutput(int player, Socket socket) throws IOException
+    {
+        socket.setSoTimeout(this.idle_timeout);
+        socket.setKeepAlive(true);
+
+        this.OUTPUT[player] = new WatchedOutputStream(socket.getOutputStream());
+        this.PRINTER[player] = new PrintStream(this.OUTPUT[player]);
+    }
+
+    /**
+     * sends a player the WELCOME with their session token
+     *
+     * @param player - the player index
+     */
+    private void welcome(int player)
+    {
+        this.PRINTER[player].println(WELCOME +
+                " " + rows +
+                " " + cols +
+                " " + maxPlayers +
+                " " + (player + 1) +
+                " " + this.tokens[player]);
+    }
+
+    /**
+     * @param player - the player index
+     * @return - true if the player is in the game and their connection is up
+     */
+    private boolean isConnected(int player)
+    {
+        return this.scores[player] != null && this.connected[player];
+    }
+
+    /**
+     * called by a listener when its connection drops,
+     * the players slot and score are held for the grace period in case they RESUME
+     *
+     * @param player - the player index
+     * @param attach - which connection of the player dropped, older ones are ignored
+     */
+    protected synchronized void disconnect(int player, int attach)
+    {
+        if (this.game_over || this.attaches[player] != attach || this.scores[player] == null)
+            return;
+
+        this.connected[player] = false;
+        if (this.SOCKET[player] != null)
+        {
+            try
+            {
+                this.SOCKET[player].close();
+            }
+            catch (IOException ignored) {}
+        }
+
+        if (this.grace_period <= 0)
+        {
+            this.scores[player] = null;
+            this.send_score = true;
+            return;
+        }
+
+        this.log(player, "Dropped, Holding Slot for " + this.grace_period + "s");
+        this.executor.execute(() -> this.expire(player, attach));
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * waits out the grace period of a dropped player, if they have not come back they are disconnected
+     *
+     * @param player - the player index
+     * @param attach - the connection that dropped
+     */
+    private void expire(int player, int attach)
+    {
+        try
+        {
+            sleep(this.grace_period * 1000L);
+        }
+        catch (InterruptedException e)
+        {
+            WAMLog.log(WAMLog.Level.ERROR, this.game, player + 1, -1, "Grace Period Interrupted " + e);
+        }
+
+        synchronized (this)
+        {
+            if (this.game_over || this.attaches[player] != attach || this.connected[player])
+                return;
+
+            this.scores[player] = null;
+            this.send_score = true;
+            this.log(player, "Disconnected");
+        }
+    }
+
+    /**
+     * gives a player their slot back on a new connection
+     * their old connection is closed if the server had not noticed it drop yet, then they are sent
+     * the WELCOME and a BOARD before any new event can reach them
+     *
+     * @param token - the session token the player sent in the RESUME
+     * @param socket - the new connection
+     * @return - true if the player is back in the game, false if the token is unknown or the slot is gone
+     * @throws IOException - if the new connection can not be used
+     */
+    protected synchronized boolean reattach(String token, Socket socket) throws IOException
+    {
+        if (this.game_over)
+            return false;
+
+        for (int i = 0; i < this.maxPlayers; i++)
+        {
+            if (!this.tokens[i].equals(token) || this.scores[i] == null)
+                continue;
+
+            if (this.SOCKET[i] != null)
+            {
+                try
+                {
+                    this.SOCKET[i].close();
+                }
+                catch (IOException ignored) {}
+            }
+
+            this.attaches[i]++;
+            this.SOCKET[i] = socket;
+            this.setOutput(i, socket);
+
+            this.welcome(i);
+            this.sendBoard(i);
+            this.connected[i] = true;
+
+            this.executor.execute(new Listener(socket, this, i, this.attaches[i]));
+            this.log(i, "Reconnected");
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * A method that will be launched as a thread
+     * keeps accepting connections on the games own server socket from before the first player is seated
+     * until the game is over, each one admitted has its handshake read on a thread of its own,
+     * so a connection that never sends holds up nobody but itself until the handshake deadline
+     */
+    private void runAccept()
+    {
+        try
+        {
+            while (!this.game_over)
+            {
+                Socket socket = this.server.accept();
+                if (!this.admission.admit(socket))
+                    continue;
+
+                this.executor.execute(() ->
+                {
+                    try
+                    {
+                        this.handshake(socket, Admission.DEADLINE);
+                    }
+                    finally
+                    {
+                        this.admission.done();
+                    }
+                });
+            }
+        }
+        catch (IOException e)
+        {
+            //the server socket is closed when the game is over
+        }
+    }
+
+    /**
+     * reads the first line of a new connection
+     * a JOIN takes the next open seat, a RESUME gives the player their slot back, a SPECTATE starts watching the game,
+     * a JOIN once every seat is taken and anything else is sent an ERROR and closed
+     *
+     * @param socket - the new connection
+     * @param timeout - milliseconds to wait for the first line
+     */
+    private void handshake(Socket socket, int timeout)
+    {
+        try
+        {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeout);
+            String[] in = readLine(socket.getInputStream()).split(" ");
+            socket.setSoTimeout(0);
+
+            if (in[0].equals(JOIN))
+            {
+                if (this.seat(socket, in.length > 1 ? in[1] : null) >= 0)
+                    return;
 
-    /**amount of rows the game will have*/
-    private int rows;
-    /**amount of columns the game will have*/
-    private int cols;
-    /**the max amount of players the game will have*/
-    private int maxPlayers;
-    /**a gradually updated current time used to run the game and send out moves*/
-    private double currtime;
+                new PrintStream(socket.getOutputStream(), true).println(ERROR + " Game Full");
+                socket.close();
+                return;
+            }
 
-    /**an array of integers to hold scores, disconnected players will be null*/
-    private Integer[] scores;
-    /**a boolean list representing moles, true is up, false is down*/
-    private boolean[] spots;
-    /**an array of sockets for each player connected*/
-    private final Socket[] SOCKET;
-    /**an array of output streams for each player*/
-    private final PrintStream[] PRINTER;
+            if (in[0].equals(RESUME) && in.length > 1 && this.reattach(in[1], socket))
+                return;
 
-    /**helper check, if a mole was whacked it will restart the loop to start the process over*/
-    private boolean[] whacked;
-    /**helper check, tells the server to start*/
-    protected boolean go;
-    /**helper check, will break all the loops in every thread signalling the end of the game*/
-    protected boolean game_over;
-    /**helper check, used by listener to tell the handler when to send scores out*/
-    protected boolean send_score;
+            if (in[0].equals(SPECTATE))
+            {
+                if (this.spectate(socket))
+                    return;
+
+                new PrintStream(socket.getOutputStream(), true).println(ERROR + " Too Many Spectators");
+                socket.close();
+                return;
+            }
+
+            new PrintStream(socket.getOutputStream(), true).println(ERROR + " Session Expired");
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            this.log(-1, "Handshake Failed " + e);
+            try
+            {
+                socket.close();
+            }
+            catch (IOException ignored) {}
+        }
+    }
 
     /**
-     * constructor for the server class
-     * initializes the information needed to run one full game of Whack-A-Mole
+     * reads one line a byte at a time, so nothing after it is taken away from whatever reads the connection next
      *
-     * @param port - the port number
-     * @param rows - amount of rows the board will have
-     * @param cols - amount of columns the board will have
-     * @param player_number - the number of players
-     * @param game_time - the total amount of time the game will run for
-     * @throws IOException - if there are any I/O errors thrown
+     * @param in - the connections input
+     * @return - the line without its line ending
+     * @throws IOException - if the connection closes first
      */
-    public WAMServer(int port, int rows, int cols, int player_number, int game_time) throws IOException
+    protected static String readLine(InputStream in) throws IOException
     {
-        this.game_time = game_time;
-        this.rows = rows;
-        this.cols = cols;
-        this.maxPlayers = player_number;
+        StringBuilder line = new StringBuilder();
+        int c;
 
-        this.server = new ServerSocket(port);
+        while ((c = in.read()) != '\n')
+        {
+            if (c == -1)
+                throw new IOException("Connection closed before the first line");
+            if (c != '\r')
+                line.append((char)c);
+        }
 
-        this.spots = new boolean[rows * cols];
-        this.scores = new Integer[maxPlayers];
-        for (int i = 0; i < this.scores.length; i++)
-            this.scores[i] = 0;
+        return line.toString().trim();
+    }
 
-        this.go = false;
-        this.game_over = false;
+    /**
+     * A method to sendProtocol to connected players
+     *
+     * @param protocol - the protocol being sent
+     */
+    protected synchronized void sendProtocol(String protocol)
+    {
+        WAMEvents.Broadcast event = new WAMEvents.Broadcast();
+        event.begin();
+        int recipients = 0;
 
-        this.whacked = new boolean[rows * cols];
-        this.send_score = true;
+        for (int i = 0; i < this.maxPlayers; i++)
+        {
+            if (this.isConnected(i))
+            {
+                this.PRINTER[i].println(protocol);
+                recipients++;
+            }
+        }
 
-        this.SOCKET = new Socket[maxPlayers];
-        this.PRINTER = new PrintStream[maxPlayers];
+        this.sendSpectators(protocol);
+
+        if (event.shouldCommit())
+        {
+            int space = protocol.indexOf(' ');
+            event.game = this.game;
+            event.protocol = space < 0 ? protocol : protocol.substring(0, space);
+            event.recipients = recipients + this.spectators.size();
+            event.bytes = (long)event.recipients * (protocol.length() + 1);
+            event.commit();
+        }
     }
 
-    protected synchronized boolean[]getWhacked()
+    /**
+     * queues a protocol for every spectator, one that has gone away or fallen too far behind is dropped
+     *
+     * @param protocol - the protocol being sent
+     */
+    private synchronized void sendSpectators(String protocol)
     {
-        return this.whacked;
+        if (this.spectators.isEmpty())
+            return;
+
+        if (this.spectators.removeIf((Spectator spectator) -> !spectator.offer(protocol)))
+            this.log(-1, "Spectator Left (" + this.spectators.size() + " watching)");
     }
 
-    protected synchronized boolean[] getSpots()
+    /**
+     * adds a spectator, who gets a WELCOME for player 0 and the whole board, then every event after it
+     * synchronized with the senders so the spectator gets every event after the BOARD and none before it
+     *
+     * @param socket - the spectators connection
+     * @return - false if the game already has as many spectators as it allows
+     * @throws IOException - if the connection fails
+     */
+    protected synchronized boolean spectate(Socket socket) throws IOException
     {
-        return this.spots;
+        if (this.spectators.size() >= this.max_spectators || this.game_over)
+            return false;
+
+        socket.setTcpNoDelay(true);
+        Spectator spectator = new Spectator(socket, this.spectator_queue);
+        spectator.offer(WELCOME + " " + this.rows + " " + this.cols + " " + this.maxPlayers + " 0 -");
+        spectator.offer(this.boardProtocol());
+        spectator.offer(TIME + " " + System.currentTimeMillis() + " " + (long)(this.currtime * 1000));
+
+        this.executor.execute(spectator);
+        this.spectators.add(spectator);
+        this.log(-1, "Spectator Joined (" + this.spectators.size() + " watching)");
+        return true;
     }
 
-    public double getCurrentTime()
+    /**
+     * moves a mole up or down and sends it to the players who can see it
+     * every move gets the next event sequence, which is recorded in the history so late whacks can be judged,
+     * and every MOLE_UP carries the generation of the appearance for whacks to name
+     *
+     * @param hole - the hole that moved
+     * @param up - true if the mole came up
+     */
+    protected synchronized void moveMole(int hole, boolean up)
     {
-        return this.currtime;
+        this.spots.set(hole, up);
+        this.sequence++;
+        this.history.record(hole, this.sequence, this.getMillis(), up);
+
+        this.sendMoleProtocol(hole, up ? MOLE_UP + " " + hole + " " + this.sequence + " " + this.history.generation(hole)
+                : MOLE_DOWN + " " + hole + " " + this.sequence);
     }
+
     /**
-     * A method that will be launched as a thread
-     * it will simply create a start time then change the servers time based on the time elapsed
+     * A method to send a mole event to the connected players who can see the hole
+     * players without a region get every event, players with one are found through the viewport index
+     * so the amount sent to a player depends on the size of their region and not the board
      *
-     * when the times up it will change the state of the game to over
+     * @param hole - the hole the event is for
+     * @param protocol - the protocol being sent
      */
-    private void run()
+    protected synchronized void sendMoleProtocol(int hole, String protocol)
     {
-        this.go = true;
-        double time = 0;
-        try
+        this.sendSpectators(protocol);
+
+        for (int i = 0; i < this.maxPlayers; i++)
         {
-            while (true)
+            if (this.isConnected(i) && !this.viewports.isSubscribed(i))
             {
-                if (game_over)
-                    break;
-
-                sleep(100);
-                this.currtime += (0.1);
-
-                if (currtime >= game_time)
-                {
-                    this.game_over = true;
-                    break;
-                }
+                this.PRINTER[i].println(protocol);
             }
         }
-                catch (InterruptedException e)
+
+        for (int player : this.viewports.watchers(hole))
         {
-            e.printStackTrace();
+            if (this.isConnected(player) && this.viewports.contains(player, hole))
+            {
+                this.PRINTER[player].println(protocol);
+            }
         }
-        System.out.println("TIME'S UP");
     }
 
     /**
-     * sets up a new listener thread for all clients connected
-     * sends them a welcome massage containing the information needed to set up a board
+     * changes the region of the board a player gets mole events for,
+     * then answers with the clamped region and the moles currently up inside of it
      *
-     * @throws IOException - if there are any I/O exceptions
+     * synchronized with the senders so no mole event can slip in between the region and its snapshot
+     *
+     * @param player - the player index
+     * @param region - top row, left column, rows and columns, or null for the whole board
      */
-    private void setUpListeners() throws IOException
+    protected synchronized void subscribe(int player, int[] region)
     {
-        for (int i = 0; i < maxPlayers; i++)
+        if (region == null)
+        {
+            this.viewports.unsubscribe(player);
+            region = new int[] {0, 0, this.rows, this.cols};
+        }
+        else
         {
-            System.out.println("Waiting for Player " + (i + 1) + " to connect...");
-            this.SOCKET[i] = server.accept();
-            this.PRINTER[i] = new PrintStream(SOCKET[i].getOutputStream());
-            this.PRINTER[i].println("WELCOME" +
-                    " " + rows +
-                    " " + cols +
-                    " " + maxPlayers +
-                    " " + (i+1));
+            region = this.viewports.subscribe(player, region[0], region[1], region[2], region[3]);
+        }
 
-            Listener b = new Listener(this.SOCKET[i], this, i);
-            b.start();
+        this.PRINTER[player].println(REGION + " " + region[0] + " " + region[1] + " " + region[2] + " " + region[3]);
+
+        //walk whichever is smaller, the cells of the region or the moles that are up
+        if (region[2] * region[3] <= this.spots.count())
+        {
+            for (int row = region[0]; row < region[0] + region[2]; row++)
+            {
+                for (int col = region[1]; col < region[1] + region[3]; col++)
+                {
+                    if (this.spots.get(row * this.cols + col))
+                        this.PRINTER[player].println(MOLE_UP + " " + (row * this.cols + col) + " " + this.sequence +
+                                " " + this.history.generation(row * this.cols + col));
+                }
+            }
+        }
+        else
+        {
+            int[] up = new int[this.spots.count()];
+            int count = this.spots.activeHoles(up);
 
-            System.out.println("Player " + (i + 1) + " Connected");
+            for (int i = 0; i < count; i++)
+            {
+                if (this.viewports.contains(player, up[i]))
+                    this.PRINTER[player].println(MOLE_UP + " " + up[i] + " " + this.sequence +
+                            " " + this.history.generation(up[i]));
+            }
         }
     }
 
     /**
-     * A method to sendProtocol to connected players
+     * sends a player the whole board, the clock and the scores in one BOARD
+     * synchronized with the senders so the player gets every event after it and none before it
      *
-     * @param protocol - the protocol being sent
+     * @param player - the player index
      */
-    protected synchronized void sendProtocol(String protocol)
+    protected synchronized void sendBoard(int player)
     {
-        for (int i = 0; i < this.maxPlayers; i++)
-        {
-            if (this.scores[i] != null)
-            {
-                this.PRINTER[i].println(protocol);
-            }
-        }
+        this.viewports.unsubscribe(player);
+        this.PRINTER[player].println(this.boardProtocol());
+    }
+
+    /**
+     * @return - the BOARD protocol for the board as it is now
+     */
+    private synchronized String boardProtocol()
+    {
+        return BOARD +
+                " " + this.sequence +
+                " " + (long)(this.currtime * 1000) +
+                " " + BoardCodec.encode(this.spots.snapshot(), this.rows * this.cols) +
+                this;
     }
 
     /**
@@ -214,10 +1470,128 @@ public class WAMServer implements WAMProtocol
             return false;
     }
 
+    /**
+     * @return - true if listeners hand their commands to the main thread instead of applying them
+     */
+    protected boolean isPipelined()
+    {
+        return this.commands != null;
+    }
+
+    /**
+     * hands a decoded command to the main thread, called by listeners when the game is pipelined,
+     * once the game is over the command is dropped instead of waiting for a main thread that has stopped
+     *
+     * @param type - WHACK_COMMAND, PENALTY_COMMAND, BOARD_COMMAND or SUBSCRIBE_COMMAND
+     * @param player - the player index
+     */
+    protected void submit(int type, int player, int a, int b, int c, int d)
+    {
+        this.commands.put(type, player, a, b, c, d);
+    }
+
+    /**
+     * applies one command from the ring, only ever called by the main thread
+     *
+     *  WHACK_COMMAND -> hole, sequence, generation
+     *  PENALTY_COMMAND -> nothing
+     *  BOARD_COMMAND -> nothing
+     *  SUBSCRIBE_COMMAND -> top row, left column, rows, cols, or a negative row for the whole board
+     */
+    private void apply(int type, int player, int a, int b, int c, int d)
+    {
+        switch (type)
+        {
+            case WHACK_COMMAND:
+            {
+                WAMEvents.Whack event = new WAMEvents.Whack();
+                event.begin();
+                String result = this.applyWhack(player, a, b, c);
+
+                if (event.shouldCommit())
+                {
+                    event.game = this.game;
+                    event.player = player + 1;
+                    event.hole = a;
+                    event.result = result;
+                    event.pipelined = true;
+                    event.commit();
+                }
+                break;
+            }
+            case PENALTY_COMMAND:
+                this.penalize(player);
+                break;
+            case BOARD_COMMAND:
+                this.sendBoard(player);
+                break;
+            case SUBSCRIBE_COMMAND:
+                this.subscribe(player, a < 0 ? null : new int[] {a, b, c, d});
+                break;
+        }
+    }
+
+    /**
+     * judges a whack and changes the players score, 2 for a hit and -1 for a miss,
+     * a rejected repeat (see whack()) changes nothing
+     *
+     * @param player - the player index the whack is scored for
+     * @param hole - the hole that was whacked
+     * @param seq - the last event sequence the player saw, negative if the client did not send one
+     * @param generation - the generation of the mole that was whacked, negative if the client did not send one
+     * @return - what came of it, hit, miss, rejected, or gone if the player had disconnected
+     */
+    protected String applyWhack(int player, int hole, int seq, int generation)
+    {
+        //Check to see if the player hasn't disconnected
+        if (this.getScores()[player] == null)
+            return "gone";
+
+        int result = this.whack(hole, seq, generation);
+
+        if (result == BoardHistory.REPEAT)
+        {
+            //a duplicate, the score and everyone's SCORE stay as they are
+            WAMLog.log(WAMLog.Level.DEBUG, this.game, player + 1, hole, "Rejected");
+            return "rejected";
+        }
+
+        boolean hit = result == BoardHistory.HIT;
+
+        WAMLog.log(WAMLog.Level.DEBUG, this.game, player + 1, hole, hit ? "Hit" : "Miss");
+
+        synchronized (this)
+        {
+            if (this.scores[player] != null)
+            {
+                this.scores[player] += hit ? 2 : -1;
+                this.send_score = true;
+            }
+        }
+
+        return hit ? "hit" : "miss";
+    }
+
+    /**
+     * takes a point from a player, the same as a miss, used when they go over the rate limit
+     *
+     * @param player - the player index
+     */
+    protected synchronized void penalize(int player)
+    {
+        if (this.scores[player] != null)
+        {
+            this.scores[player] -= 1;
+            this.send_score = true;
+        }
+    }
+
     /**
      * the main loop the handler will run
      * it simply runs through sending out random moves to the clients based
      * on the server time
+     *
+     * when the game is pipelined it also applies the players commands, every one that came in since the last pass
      */
     private void runGameControl()
     {
@@ -226,6 +1600,9 @@ public class WAMServer implements WAMProtocol
             if (this.game_over)
                 break;
 
+            if (this.commands != null)
+                this.commands.drain(this::apply);
+
             if (this.send_score)
             {
                 this.sendProtocol(SCORE + this);
@@ -234,13 +1611,17 @@ public class WAMServer implements WAMProtocol
 
             if (this.noPlayers())
             {
-                System.out.println("All Players Disconnected From Server");
+                this.log(-1, "All Players Disconnected From Server");
                 this.game_over = true;
                 break;
             }
 
-            System.out.flush();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
         }
+
+        //nothing drains the ring from here on
+        if (this.commands != null)
+            this.commands.close();
     }
 
     /**
@@ -253,13 +1634,26 @@ public class WAMServer implements WAMProtocol
      */
     public void runServer() throws IOException
     {
+        if (this.server != null)
+            this.executor.execute(() -> this.runAccept());
         this.setUpListeners();
 
-        new Thread(() -> this.run()).start();
+        this.executor.execute(() -> this.run());
+        this.executor.execute(() -> this.runPings());
+        this.executor.execute(() -> this.runWriteWatchdog());
+        if (this.checkpoint != null)
+            this.executor.execute(() -> this.runCheckpoints());
 
-        for (int i = 0; i < (rows * cols); i++)
+        if (this.timeline != null)
+        {
+            this.executor.execute(() -> this.runTimeline());
+        }
+        else
         {
-            new Handler(i, this).start();
+            for (int i = 0; i < (rows * cols); i++)
+            {
+                this.executor.execute(new Handler(i, this));
+            }
         }
 
         try
@@ -268,9 +1662,14 @@ public class WAMServer implements WAMProtocol
         }
         finally
         {
+            this.printLatency();
             this.go = false;
             this.calculateScores();
             this.close();
+
+            //the game finished, there is nothing left to resume
+            if (this.checkpoint != null)
+                Files.deleteIfExists(this.checkpoint);
         }
     }
 
@@ -282,7 +1681,8 @@ public class WAMServer implements WAMProtocol
      */
     private void calculateScores()
     {
-        Integer[] total_scores = this.scores;
+        //a copy, players leaving while the results go out keep the score they finished with
+        Integer[] total_scores = this.getScores().clone();
 
         ArrayList<Integer> winner = new ArrayList<>();
         int maxScore = -1000;
@@ -316,6 +1716,44 @@ public class WAMServer implements WAMProtocol
         {
             updatePlayers(total_scores, winner, GAME_WON);
         }
+
+        this.recordScores(total_scores, winner, winner.size() > 1 ? HighScoreStore.TIED : HighScoreStore.WON);
+    }
+
+    /**
+     * adds every connected players final score to the high score store and the ranking, if there are any
+     *
+     * @param total_scores - A reference to the array with all the scores
+     * @param winner - an array list of all the winners
+     * @param result - the result the winners get, WON or TIED
+     */
+    private void recordScores(Integer[] total_scores, ArrayList<Integer> winner, int result)
+    {
+        for (int i = 0; i < total_scores.length; i++)
+        {
+            if (this.getIdentity(i) == null)
+                continue;
+
+            if (total_scores[i] != null && this.ranking != null)
+            {
+                this.ranking.add(this.getIdentity(i), total_scores[i]);
+                this.log(i, "Rank " + this.ranking.rank(this.getIdentity(i)));
+            }
+
+            if (total_scores[i] != null && this.high_scores != null)
+            {
+                try
+                {
+                    this.high_scores.record(this.getIdentity(i), total_scores[i],
+                            winner.contains(i) ? result : HighScoreStore.LOST);
+                    this.log(i, this.high_scores.lookup(this.getIdentity(i)).toString());
+                }
+                catch (IOException e)
+                {
+                    WAMLog.log(WAMLog.Level.ERROR, this.game, i + 1, -1, "High Score Not Saved " + e);
+                }
+            }
+        }
     }
 
     /**
@@ -333,26 +1771,29 @@ public class WAMServer implements WAMProtocol
         {
             if (total_scores[i] != null)
             {
-                this.PRINTER[i].println(SCORE + this);
+                //a player still between connections misses the message but keeps their result
+                PrintStream printer = this.connected[i] ? this.PRINTER[i] : new PrintStream(OutputStream.nullOutputStream());
+
+                printer.println(SCORE + this);
                 if (winner.contains(i))
                 {
-                    this.PRINTER[i].println(protocol);
+                    printer.println(protocol);
                     if (protocol.equals(GAME_TIED))
-                        System.out.println("Player " + (i + 1) + " Tied!");
+                        this.log(i, "Tied!");
                     else
-                        System.out.println("Player " + (i + 1) + " Won!");
+                        this.log(i, "Won!");
                 }
                 else
                 {
-                    this.PRINTER[i].println(GAME_LOST);
-                    System.out.println("Player " + (i + 1) + " Lost!");
+                    printer.println(GAME_LOST);
+                    this.log(i, "Lost!");
                 }
             }
         }
     }
 
     /**
-     * closes all sockets, printers, and the server itself
+     * closes all sockets, printers, and the server itself (if this game has its own)
      * handles each individually, if an error is thrown it will continue to loop
      * to try and close the rest of the sockets
      *
@@ -362,19 +1803,38 @@ public class WAMServer implements WAMProtocol
     {
         for(int i = 0; i < maxPlayers; i++)
         {
+            //a resumed game never reconnects players that were already gone
+            if (this.SOCKET[i] == null)
+                continue;
+
             try
             {
-                this.PRINTER[i].close();
+                if (this.PRINTER[i] != null)
+                    this.PRINTER[i].close();
                 this.SOCKET[i].close();
             }
             catch (IOException e)
             {
-                System.out.println(e);
+                WAMLog.log(WAMLog.Level.WARN, this.game, i + 1, -1, e.toString());
             }
         }
 
-        this.server.close();
-        System.out.println("SERVER SHUTDOWN");
+        if (this.sessions != null)
+        {
+            for (String token : this.tokens)
+                this.sessions.remove(token);
+        }
+
+        synchronized (this)
+        {
+            for (Spectator spectator : this.spectators)
+                spectator.finish();
+            this.spectators.clear();
+        }
+
+        if (this.server != null)
+            this.server.close();
+        this.log(-1, "SERVER SHUTDOWN");
     }
 
     /**
@@ -467,6 +1927,15 @@ public class WAMServer implements WAMProtocol
                         Integer.parseInt(args[2]),
                         Integer.parseInt(args[3]),
                         Integer.parseInt(args[4]));
+
+                String checkpoint = System.getProperty("wam.checkpoint");
+                if (checkpoint != null)
+                    server.setCheckpoint(Paths.get(checkpoint));
+
+                String high_scores = System.getProperty("wam.highscores");
+                if (high_scores != null)
+                    server.setHighScores(new HighScoreStore(Paths.get(high_scores)));
+
                 server.runServer();
             }
             catch (IOException e)
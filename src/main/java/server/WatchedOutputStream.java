@@ -0,0 +1,80 @@
+package server;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that remembers when the write it is in started
+ *
+ * a write to a player who has stopped reading blocks once their socket buffer is full,
+ * another thread can see how long it has been stuck and close the socket to let it go
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class WatchedOutputStream extends FilterOutputStream
+{
+    /**System.nanoTime() when the write in progress started, 0 when nothing is being written*/
+    private volatile long since;
+
+    /**
+     * @param out - the stream being written to, usually a sockets
+     */
+    public WatchedOutputStream(OutputStream out)
+    {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        this.since = System.nanoTime();
+        try
+        {
+            this.out.write(b);
+        }
+        finally
+        {
+            this.since = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        this.since = System.nanoTime();
+        try
+        {
+            this.out.write(b, off, len);
+        }
+        finally
+        {
+            this.since = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        this.since = System.nanoTime();
+        try
+        {
+            this.out.flush();
+        }
+        finally
+        {
+            this.since = 0;
+        }
+    }
+
+    /**
+     * @param now - System.nanoTime()
+     * @return - milliseconds the write in progress has been waiting, 0 if there is none
+     */
+    public long stalledFor(long now)
+    {
+        long since = this.since;
+        return since == 0 ? 0 : (now - since) / 1_000_000;
+    }
+}
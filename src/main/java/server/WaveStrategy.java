@@ -0,0 +1,48 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * Sends moles across the board in waves
+ * the time a hole stays down rises and falls on a sine wave, and each hole is a little behind the one
+ * before it, so busy stretches sweep over the board and quiet ones follow
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class WaveStrategy implements MoleStrategy
+{
+    /**how far behind each hole is from the one before it, in radians*/
+    private static final double HOLE_PHASE = 0.15;
+
+    /**radians per second of game time*/
+    private final double speed;
+
+    /**
+     * @param period - seconds from one busy stretch to the next, set with -Dwam.wavePeriod
+     */
+    public WaveStrategy(int period)
+    {
+        this.speed = 2 * Math.PI / Math.max(1, period);
+    }
+
+    @Override
+    public double first(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 4, 10);
+    }
+
+    @Override
+    public double up(int hole, Game game, Random random)
+    {
+        return UniformStrategy.range(random, 1, 2);
+    }
+
+    @Override
+    public double down(int hole, Game game, Random random)
+    {
+        //between a third and the whole of the uniform time
+        double wave = Math.sin(game.getCurrentTime() * this.speed - hole * HOLE_PHASE);
+        return UniformStrategy.range(random, 3, 8) * (2 + wave) / 3;
+    }
+}
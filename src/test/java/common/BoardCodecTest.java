@@ -0,0 +1,162 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for encoding BOARD snapshots and reading them back
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class BoardCodecTest
+{
+    /**
+     * encodes a board, checks the encoding that was picked and decodes it again
+     */
+    private static void roundTrip(WAMBoard board, char expected) throws WAMException
+    {
+        String[] encoded = BoardCodec.encode(board.snapshot(), board.size()).split(" ");
+        assertEquals(String.valueOf(expected), encoded[0]);
+        assertArrayEquals(board.snapshot(), BoardCodec.decode(encoded[0], encoded[1], board.size()));
+    }
+
+    private static String base64(int... bytes)
+    {
+        byte[] data = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++)
+            data[i] = (byte)bytes[i];
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    @Test
+    public void emptyAndFullBoardsUseRuns() throws WAMException
+    {
+        WAMBoard board = new WAMBoard(1000);
+        roundTrip(board, BoardCodec.RUNS);
+
+        for (int i = 0; i < board.size(); i++)
+            board.set(i, true);
+        roundTrip(board, BoardCodec.RUNS);
+    }
+
+    @Test
+    public void aFewMolesUseRuns() throws WAMException
+    {
+        WAMBoard board = new WAMBoard(100_000);
+        board.set(0, true);
+        board.set(63, true);
+        board.set(64, true);
+        board.set(99_999, true);
+
+        roundTrip(board, BoardCodec.RUNS);
+    }
+
+    @Test
+    public void aRepeatingPatternIsDeflated() throws WAMException
+    {
+        WAMBoard board = new WAMBoard(10_000);
+        for (int i = 0; i < board.size(); i += 3)
+            board.set(i, true);
+
+        roundTrip(board, BoardCodec.DEFLATED);
+    }
+
+    @Test
+    public void aRandomBoardIsSentRaw() throws WAMException
+    {
+        WAMBoard board = new WAMBoard(4099);
+        Random random = new Random(7);
+        for (int i = 0; i < board.size(); i++)
+            board.set(i, random.nextBoolean());
+
+        roundTrip(board, BoardCodec.RAW);
+    }
+
+    @Test
+    public void sizesThatAreNotWholeBytes() throws WAMException
+    {
+        for (int size : new int[] {1, 7, 9, 63, 65, 130})
+        {
+            WAMBoard board = new WAMBoard(size);
+            board.set(size - 1, true);
+
+            String[] encoded = BoardCodec.encode(board.snapshot(), size).split(" ");
+            assertArrayEquals(board.snapshot(), BoardCodec.decode(encoded[0], encoded[1], size));
+            assertArrayEquals(board.snapshot(), BoardCodec.decode("B", base64Raw(board), size));
+        }
+    }
+
+    /**
+     * the raw encoding of a board made by hand, little endian bytes
+     */
+    private static String base64Raw(WAMBoard board)
+    {
+        long[] words = board.snapshot();
+        byte[] bytes = new byte[(board.size() + 7) / 8];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte)(words[i / 8] >>> (8 * (i % 8)));
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    @Test
+    public void brokenDataIsRejected()
+    {
+        assertThrows(WAMException.class, () -> BoardCodec.decode("B", "not base64!", 8));
+        assertThrows(WAMException.class, () -> BoardCodec.decode("X", base64(0), 8));
+    }
+
+    @Test
+    public void rawOfTheWrongSizeIsRejected()
+    {
+        assertThrows(WAMException.class, () -> BoardCodec.decode("B", base64(0, 0), 8));
+        assertThrows(WAMException.class, () -> BoardCodec.decode("B", base64(), 8));
+    }
+
+    @Test
+    public void runsPastTheEndAreRejected() throws WAMException
+    {
+        //5 down then 3 up fills an 8 hole board
+        assertArrayEquals(new long[] {0b11100000}, BoardCodec.decode("R", base64(5, 3), 8));
+
+        assertThrows(WAMException.class, () -> BoardCodec.decode("R", base64(5, 4), 8));
+        //a varint that never ends
+        assertThrows(WAMException.class, () -> BoardCodec.decode("R", base64(0x80, 0x80), 8));
+        //a varint too long for an int
+        assertThrows(WAMException.class,
+                () -> BoardCodec.decode("R", base64(0xff, 0xff, 0xff, 0xff, 0xff, 0x01), 8));
+    }
+
+    @Test
+    public void brokenDeflateIsRejected()
+    {
+        assertThrows(WAMException.class, () -> BoardCodec.decode("Z", base64(1, 2, 3, 4), 64));
+
+        //deflated data that is fine but too short for the board
+        assertThrows(WAMException.class, () -> BoardCodec.decode("Z", deflatedZeros(10), 8000));
+    }
+
+    /**
+     * deflated zero bytes
+     */
+    private static String deflatedZeros(int length)
+    {
+        Deflater deflater = new Deflater();
+        deflater.setInput(new byte[length]);
+        deflater.finish();
+        byte[] out = new byte[64];
+        int n = deflater.deflate(out);
+        deflater.end();
+
+        byte[] data = new byte[n];
+        System.arraycopy(out, 0, data, 0, n);
+        return Base64.getEncoder().encodeToString(data);
+    }
+}
@@ -0,0 +1,120 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the positions of the lock free ring buffer
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class SequenceRingTest
+{
+    @Test
+    public void sizeIsRoundedUpToAPowerOfTwo()
+    {
+        assertEquals(2, new SequenceRing(0).capacity());
+        assertEquals(8, new SequenceRing(5).capacity());
+        assertEquals(8, new SequenceRing(8).capacity());
+    }
+
+    @Test
+    public void nothingToReadUntilPublished()
+    {
+        SequenceRing ring = new SequenceRing(4);
+
+        long first = ring.claim();
+        long second = ring.claim();
+        assertEquals(0, first);
+        assertEquals(1, second);
+
+        //the second is published first, the reader still waits for the first
+        ring.publish(second);
+        assertEquals(-1, ring.peek());
+
+        ring.publish(first);
+        assertEquals(0, ring.peek());
+        ring.release();
+        assertEquals(1, ring.peek());
+        ring.release();
+        assertEquals(-1, ring.peek());
+        assertEquals(2, ring.getRead());
+    }
+
+    @Test
+    public void aFullRingRefusesUntilReleased()
+    {
+        SequenceRing ring = new SequenceRing(4);
+        for (int i = 0; i < 4; i++)
+            ring.publish(ring.claim());
+
+        assertEquals(-1, ring.claim());
+        assertEquals(4, ring.getClaimed());
+
+        ring.peek();
+        ring.release();
+
+        //the freed slot comes back on the next lap
+        long position = ring.claim();
+        assertEquals(4, position);
+        assertEquals(0, ring.slot(position));
+    }
+
+    @Test
+    public void everyClaimIsReadOnceAcrossThreads() throws InterruptedException
+    {
+        SequenceRing ring = new SequenceRing(64);
+        long[] values = new long[ring.capacity()];
+        int writers = 4;
+        int each = 20_000;
+
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++)
+        {
+            int writer = w;
+            Thread thread = new Thread(() ->
+            {
+                for (int i = 0; i < each; i++)
+                {
+                    long position;
+                    while ((position = ring.claim()) < 0)
+                        Thread.onSpinWait();
+
+                    values[ring.slot(position)] = (long)writer * each + i;
+                    ring.publish(position);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        AtomicLongArray seen = new AtomicLongArray(writers * each);
+        int read = 0;
+        while (read < writers * each)
+        {
+            long position = ring.peek();
+            if (position < 0)
+            {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            seen.incrementAndGet((int)values[ring.slot(position)]);
+            ring.release();
+            read++;
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        for (int i = 0; i < seen.length(); i++)
+            assertEquals(1, seen.get(i));
+        assertTrue(ring.peek() < 0);
+    }
+}
@@ -0,0 +1,146 @@
+package common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the packed board and its sparse index of up moles
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class WAMBoardTest
+{
+    /**
+     * @param board - the board
+     * @return - the up holes in order
+     */
+    private static int[] up(WAMBoard board)
+    {
+        int[] holes = new int[board.size()];
+        int count = board.activeHoles(holes);
+        int[] sorted = Arrays.copyOf(holes, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    @Test
+    public void startsDown()
+    {
+        WAMBoard board = new WAMBoard(100);
+
+        assertEquals(100, board.size());
+        assertEquals(0, board.count());
+        for (int i = 0; i < board.size(); i++)
+            assertFalse(board.get(i));
+    }
+
+    @Test
+    public void setReportsChanges()
+    {
+        WAMBoard board = new WAMBoard(10);
+
+        assertTrue(board.set(3, true));
+        assertFalse(board.set(3, true));
+        assertTrue(board.get(3));
+        assertTrue(board.set(3, false));
+        assertFalse(board.set(3, false));
+        assertFalse(board.get(3));
+    }
+
+    @Test
+    public void indexFollowsTheBits()
+    {
+        WAMBoard board = new WAMBoard(200);
+
+        board.set(0, true);
+        board.set(63, true);
+        board.set(64, true);
+        board.set(199, true);
+        board.set(100, true);
+        assertEquals(5, board.count());
+        assertArrayEquals(new int[] {0, 63, 64, 100, 199}, up(board));
+
+        //taking one out of the middle moves the last one into its place
+        board.set(63, false);
+        board.set(0, false);
+        assertArrayEquals(new int[] {64, 100, 199}, up(board));
+
+        board.clear();
+        assertEquals(0, board.count());
+        assertFalse(board.get(64));
+    }
+
+    @Test
+    public void activeHolesFillsOnlyTheBuffer()
+    {
+        WAMBoard board = new WAMBoard(10);
+        for (int i = 0; i < 10; i++)
+            board.set(i, true);
+
+        assertEquals(4, board.activeHoles(new int[4]));
+    }
+
+    @Test
+    public void snapshotRestores()
+    {
+        WAMBoard board = new WAMBoard(130);
+        board.set(1, true);
+        board.set(65, true);
+        board.set(129, true);
+
+        long[] words = board.snapshot();
+        assertEquals(WAMBoard.wordsFor(130), words.length);
+
+        WAMBoard copy = new WAMBoard(130);
+        copy.set(7, true);
+        copy.restore(words);
+
+        assertArrayEquals(new int[] {1, 65, 129}, up(copy));
+        assertFalse(copy.get(7));
+
+        long[] reused = new long[words.length];
+        copy.copyTo(reused);
+        assertArrayEquals(words, reused);
+    }
+
+    @Test
+    public void restoreIgnoresBitsPastTheEnd()
+    {
+        WAMBoard board = new WAMBoard(70);
+        board.restore(new long[] {1L, -1L});
+
+        //only holes 64 to 69 of the second word are on the board
+        assertEquals(7, board.count());
+    }
+
+    @Test
+    public void holesOffTheBoardThrow()
+    {
+        WAMBoard board = new WAMBoard(70);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> board.get(70));
+        assertThrows(IndexOutOfBoundsException.class, () -> board.get(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> board.set(127, true));
+        assertThrows(IndexOutOfBoundsException.class, () -> board.set(-5, false));
+        assertEquals(0, board.count());
+    }
+
+    @Test
+    public void millionHoles()
+    {
+        WAMBoard board = new WAMBoard(1_000_000);
+        board.set(999_999, true);
+        board.set(0, true);
+
+        assertEquals(2, board.count());
+        assertEquals(15625, board.snapshot().length);
+    }
+}
@@ -0,0 +1,151 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for judging whacks against the history of each hole
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class BoardHistoryTest
+{
+    private static final int WINDOW = 150;
+
+    @Test
+    public void nothingToClaimBeforeTheFirstMole()
+    {
+        BoardHistory history = new BoardHistory(4, 4);
+
+        assertFalse(history.claim(0, 0, 0, WINDOW));
+        assertFalse(history.claim(0, -1, 0, WINDOW));
+        assertEquals(0, history.generation(0));
+    }
+
+    @Test
+    public void anUpMoleIsClaimedOnce()
+    {
+        BoardHistory history = new BoardHistory(4, 4);
+        history.record(1, 1, 100, true);
+
+        assertTrue(history.claim(1, -1, 120, WINDOW));
+        assertFalse(history.claim(1, 1, 121, WINDOW));
+        //other holes are not touched
+        assertFalse(history.claim(2, 1, 121, WINDOW));
+    }
+
+    @Test
+    public void aMoleThatWentDownInTransitStillCounts()
+    {
+        BoardHistory history = new BoardHistory(4, 4);
+        history.record(0, 1, 100, true);
+        history.record(0, 2, 200, false);
+
+        //the player had only seen sequence 1, when the mole was up
+        assertTrue(history.claim(0, 1, 200 + WINDOW, WINDOW));
+        assertFalse(history.claim(0, 1, 200 + WINDOW, WINDOW));
+    }
+
+    @Test
+    public void theWindowLimitsHowFarBack()
+    {
+        BoardHistory history = new BoardHistory(4, 4);
+        history.record(0, 1, 100, true);
+        history.record(0, 2, 200, false);
+
+        assertFalse(history.claim(0, 1, 201 + WINDOW, WINDOW));
+    }
+
+    @Test
+    public void aPlayerWhoSawTheDownMisses()
+    {
+        BoardHistory history = new BoardHistory(4, 4);
+        history.record(0, 1, 100, true);
+        history.record(0, 2, 200, false);
+
+        assertFalse(history.claim(0, 2, 210, WINDOW));
+        assertFalse(history.claim(0, -1, 210, WINDOW));
+    }
+
+    @Test
+    public void aViewOlderThanTheRingMisses()
+    {
+        BoardHistory history = new BoardHistory(1, 2);
+        history.record(0, 1, 0, true);
+        history.record(0, 2, 10, false);
+        history.record(0, 3, 20, true);
+        history.record(0, 4, 30, false);
+
+        assertFalse(history.claim(0, 1, 40, WINDOW));
+        assertTrue(history.claim(0, 3, 40, WINDOW));
+    }
+
+    @Test
+    public void generationsCountAppearances()
+    {
+        BoardHistory history = new BoardHistory(2, 4);
+        history.record(0, 1, 0, true);
+        history.record(0, 2, 10, false);
+        history.record(0, 3, 20, true);
+
+        assertEquals(2, history.generation(0));
+        assertEquals(0, history.generation(1));
+    }
+
+    @Test
+    public void theNewestGenerationIsHitOnceThenRepeats()
+    {
+        BoardHistory history = new BoardHistory(2, 4);
+        history.record(0, 1, 100, true);
+
+        assertEquals(BoardHistory.HIT, history.claimGeneration(0, 1, 110, WINDOW));
+        assertEquals(BoardHistory.REPEAT, history.claimGeneration(0, 1, 111, WINDOW));
+
+        //still a repeat once it has gone down
+        history.record(0, 2, 120, false);
+        assertEquals(BoardHistory.REPEAT, history.claimGeneration(0, 1, 121, WINDOW));
+    }
+
+    @Test
+    public void aGenerationThatWentDownInTransitStillCounts()
+    {
+        BoardHistory history = new BoardHistory(2, 4);
+        history.record(0, 1, 100, true);
+        history.record(0, 2, 200, false);
+
+        assertEquals(BoardHistory.MISS, history.claimGeneration(0, 1, 201 + WINDOW, WINDOW));
+        assertEquals(BoardHistory.HIT, history.claimGeneration(0, 1, 200 + WINDOW, WINDOW));
+    }
+
+    @Test
+    public void anOlderGenerationMissesUnlessItWasWhacked()
+    {
+        BoardHistory history = new BoardHistory(2, 8);
+        history.record(0, 1, 0, true);
+        assertEquals(BoardHistory.HIT, history.claimGeneration(0, 1, 10, WINDOW));
+        history.record(0, 2, 20, false);
+        history.record(0, 3, 30, true);
+        history.record(0, 4, 40, false);
+        history.record(0, 5, 50, true);
+
+        //generation 1 was whacked, generation 2 got away
+        assertEquals(BoardHistory.REPEAT, history.claimGeneration(0, 1, 60, WINDOW));
+        assertEquals(BoardHistory.MISS, history.claimGeneration(0, 2, 60, WINDOW));
+        assertEquals(BoardHistory.HIT, history.claimGeneration(0, 3, 60, WINDOW));
+    }
+
+    @Test
+    public void aGenerationThatHasNotComeUpMisses()
+    {
+        BoardHistory history = new BoardHistory(2, 4);
+
+        assertEquals(BoardHistory.MISS, history.claimGeneration(0, 1, 0, WINDOW));
+        history.record(0, 1, 0, true);
+        assertEquals(BoardHistory.MISS, history.claimGeneration(0, 2, 0, WINDOW));
+        assertEquals(BoardHistory.MISS, history.claimGeneration(0, 0, 0, WINDOW));
+    }
+}
@@ -0,0 +1,124 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the queue of player commands the pipelined game thread applies
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class CommandRingTest
+{
+    @Test
+    public void commandsComeOutInOrderWithTheirFields()
+    {
+        CommandRing ring = new CommandRing(8);
+        ring.put(1, 0, 10, 11, 12, 13);
+        ring.put(2, 1, 20, 21, 22, 23);
+
+        ArrayList<String> applied = new ArrayList<>();
+        int count = ring.drain((int type, int player, int a, int b, int c, int d) ->
+                applied.add(type + " " + player + " " + a + " " + b + " " + c + " " + d));
+
+        assertEquals(2, count);
+        assertEquals("1 0 10 11 12 13", applied.get(0));
+        assertEquals("2 1 20 21 22 23", applied.get(1));
+        assertEquals(0, ring.drain((int type, int player, int a, int b, int c, int d) -> {}));
+    }
+
+    @Test
+    public void aFullRingWaitsForTheGameThread() throws InterruptedException
+    {
+        CommandRing ring = new CommandRing(2);
+        ring.put(0, 0, 0, 0, 0, 0);
+        ring.put(0, 0, 1, 0, 0, 0);
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread listener = new Thread(() ->
+        {
+            ring.put(0, 0, 2, 0, 0, 0);
+            done.set(true);
+        });
+        listener.start();
+
+        Thread.sleep(50);
+        assertFalse(done.get());
+
+        int[] last = new int[1];
+        ring.drain((int type, int player, int a, int b, int c, int d) -> last[0] = a);
+        listener.join(1000);
+        assertTrue(done.get());
+
+        ring.drain((int type, int player, int a, int b, int c, int d) -> last[0] = a);
+        assertEquals(2, last[0]);
+    }
+
+    @Test
+    public void closingLetsAWaitingListenerGo() throws InterruptedException
+    {
+        CommandRing ring = new CommandRing(2);
+        ring.put(0, 0, 0, 0, 0, 0);
+        ring.put(0, 0, 0, 0, 0, 0);
+
+        boolean[] accepted = {true};
+        Thread listener = new Thread(() -> accepted[0] = ring.put(0, 0, 0, 0, 0, 0));
+        listener.start();
+
+        Thread.sleep(20);
+        ring.close();
+        listener.join(1000);
+
+        assertFalse(listener.isAlive());
+        assertFalse(accepted[0]);
+        assertFalse(ring.put(0, 0, 0, 0, 0, 0));
+    }
+
+    @Test
+    public void everyListenersCommandsStayInTheirOrder() throws InterruptedException
+    {
+        CommandRing ring = new CommandRing(16);
+        int players = 4;
+        int each = 10_000;
+
+        ArrayList<Thread> listeners = new ArrayList<>();
+        for (int p = 0; p < players; p++)
+        {
+            int player = p;
+            Thread listener = new Thread(() ->
+            {
+                for (int i = 0; i < each; i++)
+                    ring.put(0, player, i, 0, 0, 0);
+            });
+            listeners.add(listener);
+            listener.start();
+        }
+
+        int[] next = new int[players];
+        boolean[] ordered = {true};
+        int applied = 0;
+        while (applied < players * each)
+        {
+            applied += ring.drain((int type, int player, int a, int b, int c, int d) ->
+            {
+                if (a != next[player])
+                    ordered[0] = false;
+                next[player]++;
+            });
+        }
+
+        for (Thread listener : listeners)
+            listener.join();
+
+        assertTrue(ordered[0]);
+        for (int p = 0; p < players; p++)
+            assertEquals(each, next[p]);
+    }
+}
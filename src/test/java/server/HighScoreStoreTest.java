@@ -0,0 +1,208 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for the on disk high score store and replaying its log
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class HighScoreStoreTest
+{
+    @TempDir
+    Path dir;
+
+    /**
+     * writes one int into the index header, as a crash could have left it
+     */
+    private void poke(int offset, int value) throws IOException
+    {
+        try (FileChannel index = FileChannel.open(this.dir.resolve("scores.idx"), StandardOpenOption.WRITE))
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(4).putInt(value);
+            buffer.flip();
+            index.write(buffer, offset);
+        }
+    }
+
+    @Test
+    public void recordsAreAddedUp() throws IOException
+    {
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 10, HighScoreStore.WON);
+            store.record("alice", 4, HighScoreStore.LOST);
+            store.record("bob", 7, HighScoreStore.TIED);
+
+            HighScoreStore.Record alice = store.lookup("alice");
+            assertEquals(10, alice.best);
+            assertEquals(2, alice.games);
+            assertEquals(1, alice.wins);
+            assertEquals(14, alice.total);
+            assertEquals(1, store.lookup("bob").wins);
+            assertNull(store.lookup("carol"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    public void reopeningDoesNotCountTwice() throws IOException
+    {
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 10, HighScoreStore.WON);
+        }
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(1, store.lookup("alice").games);
+            store.record("alice", 12, HighScoreStore.WON);
+        }
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(2, store.lookup("alice").games);
+            assertEquals(12, store.lookup("alice").best);
+        }
+    }
+
+    @Test
+    public void aMissingIndexIsRebuilt() throws IOException
+    {
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 10, HighScoreStore.WON);
+            store.record("bob", 3, HighScoreStore.LOST);
+        }
+
+        Files.delete(this.dir.resolve("scores.idx"));
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(10, store.lookup("alice").best);
+            assertEquals(1, store.lookup("bob").games);
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    public void aDirtyIndexIsRebuilt() throws IOException
+    {
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 10, HighScoreStore.WON);
+        }
+
+        //a crash part way through changing the slots leaves the dirty mark set
+        this.poke(12, 1);
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(1, store.lookup("alice").games);
+        }
+    }
+
+    @Test
+    public void aCutOffRecordIsDropped() throws IOException
+    {
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 10, HighScoreStore.WON);
+        }
+
+        Path log = this.dir.resolve("scores.log");
+        Files.write(log, new byte[] {1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(1, store.lookup("alice").games);
+            store.record("alice", 2, HighScoreStore.LOST);
+        }
+
+        assertEquals(48, Files.size(log));
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(2, store.lookup("alice").games);
+        }
+    }
+
+    @Test
+    public void theEndOfTheLogIsReplayed() throws IOException
+    {
+        Path index = this.dir.resolve("scores.idx");
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 10, HighScoreStore.WON);
+        }
+        byte[] behind = Files.readAllBytes(index);
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 20, HighScoreStore.WON);
+            store.record("bob", 5, HighScoreStore.LOST);
+        }
+
+        //put back the index from before the last two records, as if it never saw them
+        Files.write(index, behind);
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(2, store.lookup("alice").games);
+            assertEquals(20, store.lookup("alice").best);
+            assertEquals(1, store.lookup("bob").games);
+        }
+    }
+
+    @Test
+    public void growingKeepsEveryPlayer() throws IOException
+    {
+        try (HighScoreStore store = new HighScoreStore(this.dir, 4))
+        {
+            for (int i = 0; i < 100; i++)
+                store.record("player" + i, i, HighScoreStore.LOST);
+
+            assertEquals(100, store.size());
+            assertEquals(42, store.lookup("player42").best);
+        }
+
+        assertFalse(Files.exists(this.dir.resolve("scores.idx.tmp")));
+
+        try (HighScoreStore store = new HighScoreStore(this.dir, 4))
+        {
+            assertEquals(100, store.size());
+            for (int i = 0; i < 100; i++)
+                assertEquals(1, store.lookup("player" + i).games);
+        }
+    }
+
+    @Test
+    public void aHalfBuiltIndexIsIgnored() throws IOException
+    {
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            store.record("alice", 10, HighScoreStore.WON);
+        }
+
+        Files.write(this.dir.resolve("scores.idx.tmp"), new byte[100]);
+
+        try (HighScoreStore store = new HighScoreStore(this.dir))
+        {
+            assertEquals(1, store.lookup("alice").games);
+        }
+        assertFalse(Files.exists(this.dir.resolve("scores.idx.tmp")));
+    }
+}
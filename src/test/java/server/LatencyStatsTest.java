@@ -0,0 +1,64 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests for the round trip, jitter and clock offset estimates of a player
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class LatencyStatsTest
+{
+    @Test
+    public void nothingIsMeasuredBeforeThePong()
+    {
+        LatencyStats stats = new LatencyStats();
+
+        assertEquals(-1, stats.getRtt());
+        assertEquals(0, stats.getJitter());
+        assertEquals(0, stats.getSamples());
+        assertEquals("rtt=? jitter=? offset=?", stats.toString());
+    }
+
+    @Test
+    public void theFirstSampleIsTakenAsIs()
+    {
+        LatencyStats stats = new LatencyStats();
+
+        //a 10ms round trip, the client answered at the middle of it with its clock 100ms ahead
+        stats.sample(10_000, 1_000_000, 1_000_000 - 5 + 100);
+
+        assertEquals(10_000, stats.getRtt());
+        assertEquals(0, stats.getJitter());
+        assertEquals(100, stats.getOffset());
+        assertEquals(1, stats.getSamples());
+    }
+
+    @Test
+    public void laterSamplesAreSmoothed()
+    {
+        LatencyStats stats = new LatencyStats();
+        stats.sample(10_000, 1_000_000, 1_000_000);
+        stats.sample(18_000, 2_000_000, 2_000_000);
+
+        //an eighth of the way to the new round trip, a sixteenth of the change for the jitter
+        assertEquals(11_000, stats.getRtt());
+        assertEquals(500, stats.getJitter());
+        assertEquals(2, stats.getSamples());
+    }
+
+    @Test
+    public void aSteadyRoundTripHasNoJitter()
+    {
+        LatencyStats stats = new LatencyStats();
+        for (int i = 0; i < 100; i++)
+            stats.sample(4_000, 1_000_000 + i, 1_000_000 + i - 2);
+
+        assertEquals(4_000, stats.getRtt());
+        assertEquals(0, stats.getJitter());
+        assertEquals(0, stats.getOffset());
+    }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the global ranking of players by their total score
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class RankingTest
+{
+    @Test
+    public void emptyRanking()
+    {
+        Ranking ranking = new Ranking();
+
+        assertEquals(0, ranking.size());
+        assertNull(ranking.rank("alice"));
+        assertTrue(ranking.top(3).isEmpty());
+        assertTrue(ranking.around("alice", 2).isEmpty());
+    }
+
+    @Test
+    public void higherScoresFirstThenByName()
+    {
+        Ranking ranking = new Ranking();
+        ranking.add("carol", 5);
+        ranking.add("bob", 9);
+        ranking.add("alice", 5);
+
+        List<Ranking.Entry> top = ranking.top(3);
+        assertEquals("bob", top.get(0).player);
+        assertEquals("alice", top.get(1).player);
+        assertEquals("carol", top.get(2).player);
+        assertEquals(3, top.get(2).rank);
+    }
+
+    @Test
+    public void addingMovesAPlayer()
+    {
+        Ranking ranking = new Ranking();
+        ranking.add("alice", 5);
+        ranking.add("bob", 9);
+        ranking.add("alice", 10);
+
+        assertEquals(2, ranking.size());
+        assertEquals(1, ranking.rank("alice").rank);
+        assertEquals(15, ranking.rank("alice").score);
+        assertEquals(2, ranking.rank("bob").rank);
+
+        //a negative game can drop them again
+        ranking.add("alice", -7);
+        assertEquals(2, ranking.rank("alice").rank);
+    }
+
+    @Test
+    public void aroundIsCutOffAtTheTop()
+    {
+        Ranking ranking = new Ranking();
+        for (int i = 0; i < 10; i++)
+            ranking.add("p" + i, i);
+
+        List<Ranking.Entry> around = ranking.around("p8", 2);
+        assertEquals(4, around.size());
+        assertEquals("p9", around.get(0).player);
+        assertEquals("p6", around.get(3).player);
+
+        assertEquals(5, ranking.around("p4", 2).size());
+        assertEquals(3, ranking.around("p0", 2).size());
+    }
+
+    @Test
+    public void matchesASortedList()
+    {
+        Ranking ranking = new Ranking();
+        HashMap<String, Long> totals = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 5000; i++)
+        {
+            String player = "p" + random.nextInt(500);
+            long change = random.nextInt(200) - 50;
+            ranking.add(player, change);
+            totals.merge(player, change, Long::sum);
+        }
+
+        ArrayList<Map.Entry<String, Long>> sorted = new ArrayList<>(totals.entrySet());
+        sorted.sort(Comparator.<Map.Entry<String, Long>>comparingLong((Map.Entry<String, Long> e) -> -e.getValue())
+                .thenComparing(Map.Entry::getKey));
+
+        assertEquals(sorted.size(), ranking.size());
+        List<Ranking.Entry> all = ranking.top(sorted.size());
+        for (int i = 0; i < sorted.size(); i++)
+        {
+            assertEquals(sorted.get(i).getKey(), all.get(i).player);
+            assertEquals(i + 1, all.get(i).rank);
+            assertEquals(i + 1, ranking.rank(sorted.get(i).getKey()).rank);
+        }
+    }
+}
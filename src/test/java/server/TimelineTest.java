@@ -0,0 +1,103 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the mole schedule worked out before the game starts
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class TimelineTest
+{
+    /**
+     * @return - true if both timelines have the same events in the same order
+     */
+    private static boolean same(Timeline a, Timeline b)
+    {
+        if (a.size() != b.size())
+            return false;
+
+        for (int i = 0; i < a.size(); i++)
+        {
+            if (a.time(i) != b.time(i) || a.hole(i) != b.hole(i) || a.up(i) != b.up(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    @Test
+    public void theSameSeedGivesTheSameGame()
+    {
+        for (String name : new String[] {"uniform", "accelerating", "wave", "adaptive"})
+        {
+            Timeline first = new Timeline(50, 30, 1234, MoleStrategy.named(name));
+            Timeline second = new Timeline(50, 30, 1234, MoleStrategy.named(name));
+
+            assertTrue(same(first, second), name);
+            assertEquals(1234, first.getSeed());
+        }
+    }
+
+    @Test
+    public void anotherSeedGivesAnotherGame()
+    {
+        Timeline first = new Timeline(50, 30, 1, new UniformStrategy());
+        Timeline second = new Timeline(50, 30, 2, new UniformStrategy());
+
+        assertFalse(same(first, second));
+    }
+
+    @Test
+    public void eventsAreInTimeOrderWithinTheGame()
+    {
+        Timeline timeline = new Timeline(200, 20, 99, new UniformStrategy());
+
+        assertTrue(timeline.size() > 0);
+        for (int i = 0; i < timeline.size(); i++)
+        {
+            assertTrue(timeline.time(i) >= 0 && timeline.time(i) < 20_000);
+            assertTrue(timeline.hole(i) >= 0 && timeline.hole(i) < 200);
+            if (i > 0)
+                assertTrue(timeline.time(i - 1) <= timeline.time(i));
+        }
+    }
+
+    @Test
+    public void eachHoleAlternatesStartingUp()
+    {
+        Timeline timeline = new Timeline(30, 20, 5, new AcceleratingStrategy());
+        int[] last = new int[30];
+        boolean[] up = new boolean[30];
+
+        for (int i = 0; i < timeline.size(); i++)
+        {
+            int hole = timeline.hole(i);
+            assertNotEquals(up[hole], timeline.up(i), "hole " + hole + " moved the same way twice");
+            assertTrue(timeline.time(i) >= last[hole]);
+
+            up[hole] = timeline.up(i);
+            last[hole] = timeline.time(i);
+        }
+    }
+
+    @Test
+    public void seekFindsTheFirstEventAtOrAfter()
+    {
+        Timeline timeline = new Timeline(100, 30, 8, new UniformStrategy());
+
+        assertEquals(0, timeline.seek(0));
+        assertEquals(timeline.size(), timeline.seek(30_000));
+
+        int middle = timeline.size() / 2;
+        int at = timeline.seek(timeline.time(middle));
+        assertEquals(timeline.time(middle), timeline.time(at));
+        assertTrue(at == 0 || timeline.time(at - 1) < timeline.time(middle));
+    }
+}
@@ -0,0 +1,66 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the token bucket behind the per player rate limit
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class TokenBucketTest
+{
+    @Test
+    public void aFullBucketAllowsTheBurst()
+    {
+        TokenBucket bucket = new TokenBucket(5, 0);
+
+        assertTrue(bucket.isFull());
+        for (int i = 0; i < 5; i++)
+            assertTrue(bucket.tryTake());
+
+        assertFalse(bucket.tryTake());
+        assertFalse(bucket.isFull());
+    }
+
+    @Test
+    public void theBurstIsAtLeastOne()
+    {
+        TokenBucket bucket = new TokenBucket(0, 0);
+
+        assertTrue(bucket.tryTake());
+        assertFalse(bucket.tryTake());
+    }
+
+    @Test
+    public void itRefillsOverTime() throws InterruptedException
+    {
+        TokenBucket bucket = new TokenBucket(2, 1000);
+        bucket.tryTake();
+        bucket.tryTake();
+
+        //a millisecond a token, 20 is plenty to fill both back up
+        Thread.sleep(20);
+        assertTrue(bucket.isFull());
+        assertTrue(bucket.tryTake());
+        assertTrue(bucket.tryTake());
+    }
+
+    @Test
+    public void itNeverHoldsMoreThanTheBurst() throws InterruptedException
+    {
+        TokenBucket bucket = new TokenBucket(3, 1000);
+
+        //50 tokens worth of time, but only 3 fit
+        Thread.sleep(50);
+        int taken = 0;
+        while (bucket.tryTake())
+            taken++;
+
+        //a token can come back while the loop runs
+        assertTrue(taken >= 3 && taken <= 4, "took " + taken);
+    }
+}
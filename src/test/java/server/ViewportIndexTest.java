@@ -0,0 +1,112 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the tiled index of subscribed regions
+ *
+ * @author Christopher Asbrock
+ * @author Shakeel Farooq
+ */
+public class ViewportIndexTest
+{
+    /**
+     * @return - true if the player is in the list
+     */
+    private static boolean watching(int[] watchers, int player)
+    {
+        return Arrays.stream(watchers).anyMatch((int watcher) -> watcher == player);
+    }
+
+    @Test
+    public void unsubscribedSeesEverything()
+    {
+        ViewportIndex index = new ViewportIndex(40, 40, 2);
+
+        assertFalse(index.isSubscribed(0));
+        assertTrue(index.contains(0, 0));
+        assertTrue(index.contains(0, 40 * 40 - 1));
+        assertEquals(0, index.watchers(0).length);
+    }
+
+    @Test
+    public void regionIsClampedToTheBoard()
+    {
+        ViewportIndex index = new ViewportIndex(40, 50, 1);
+
+        assertArrayEquals(new int[] {30, 45, 10, 5}, index.subscribe(0, 30, 45, 20, 20));
+        assertArrayEquals(new int[] {0, 0, 5, 5}, index.subscribe(0, -3, -3, 8, 8));
+        assertArrayEquals(new int[] {40, 50, 0, 0}, index.subscribe(0, 100, 100, 10, 10));
+        assertArrayEquals(new int[] {2, 2, 0, 0}, index.subscribe(0, 2, 2, -1, -1));
+        assertArrayEquals(new int[] {1, 1, 39, 49},
+                index.subscribe(0, 1, 1, Integer.MAX_VALUE, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void containsOnlyTheRegion()
+    {
+        ViewportIndex index = new ViewportIndex(40, 40, 1);
+        index.subscribe(0, 10, 20, 5, 3);
+
+        assertTrue(index.isSubscribed(0));
+        assertTrue(index.contains(0, 10 * 40 + 20));
+        assertTrue(index.contains(0, 14 * 40 + 22));
+        assertFalse(index.contains(0, 15 * 40 + 20));
+        assertFalse(index.contains(0, 10 * 40 + 23));
+        assertFalse(index.contains(0, 9 * 40 + 21));
+    }
+
+    @Test
+    public void watchersAreFoundByTile()
+    {
+        ViewportIndex index = new ViewportIndex(64, 64, 3);
+        index.subscribe(0, 0, 0, 10, 10);
+        index.subscribe(1, 8, 8, 20, 20);
+
+        //hole (5, 5) is in the first tile, which both regions touch
+        assertTrue(watching(index.watchers(5 * 64 + 5), 0));
+        assertTrue(watching(index.watchers(5 * 64 + 5), 1));
+        //hole (20, 20) is only in the second region
+        assertFalse(watching(index.watchers(20 * 64 + 20), 0));
+        assertTrue(watching(index.watchers(20 * 64 + 20), 1));
+        assertEquals(0, index.watchers(60 * 64 + 60).length);
+    }
+
+    @Test
+    public void unsubscribeLeavesEveryTile()
+    {
+        ViewportIndex index = new ViewportIndex(64, 64, 2);
+        index.subscribe(0, 0, 0, 64, 64);
+        index.subscribe(1, 0, 0, 64, 64);
+
+        int[] before = index.watchers(0);
+        index.unsubscribe(0);
+
+        //a list already handed out never changes
+        assertEquals(2, before.length);
+        for (int hole = 0; hole < 64 * 64; hole += 17)
+        {
+            assertFalse(watching(index.watchers(hole), 0));
+            assertTrue(watching(index.watchers(hole), 1));
+        }
+        assertFalse(index.isSubscribed(0));
+    }
+
+    @Test
+    public void resubscribeMovesTheRegion()
+    {
+        ViewportIndex index = new ViewportIndex(64, 64, 1);
+        index.subscribe(0, 0, 0, 16, 16);
+        index.subscribe(0, 48, 48, 16, 16);
+
+        assertEquals(0, index.watchers(0).length);
+        assertTrue(watching(index.watchers(50 * 64 + 50), 0));
+    }
+}